@@ -0,0 +1,45 @@
+package org.example.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out of one chat line to every member of a room, including the per-member queue offer.
+ * Half the members speak the text protocol, so each broadcast pays for both encodings once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    private static final byte[] FRAME = new byte[32 * 1024];
+
+    @Param({"10", "1000", "10000"})
+    int members;
+
+    private Room room;
+    private final byte[] prefix = "alice: ".getBytes(StandardCharsets.UTF_8);
+    private final byte[] text = "hello everyone, how is the stream looking?".getBytes(StandardCharsets.UTF_8);
+
+    @Setup
+    public void setUp() {
+        room = new Room("bench", new QueueConnection(true));
+        for (int i = 1; i < members; i++) {
+            room.join(new QueueConnection(i % 2 == 0));
+        }
+    }
+
+    @Benchmark
+    public void chat() {
+        room.broadcast(OutboundMessage.chat(prefix, text, 0, text.length));
+    }
+
+    @Benchmark
+    public void videoFrame() {
+        room.broadcastFrame(FRAME, 0, FRAME.length);
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Join/leave against a populated {@link Membership}, alone and while another thread broadcasts
+ * over the same members.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+    @Param({"10", "1000", "10000"})
+    int members;
+
+    private Membership membership;
+    private QueueConnection visitor;
+    private final int[] visited = new int[1];
+
+    @Setup
+    public void setUp() {
+        membership = new Membership();
+        for (int i = 0; i < members; i++) {
+            membership.add(new QueueConnection(true));
+        }
+        visitor = new QueueConnection(true);
+    }
+
+    @Benchmark
+    @Group("alone")
+    public boolean joinLeave() {
+        membership.add(visitor);
+        return membership.remove(visitor);
+    }
+
+    @Benchmark
+    @Group("withBroadcast")
+    @GroupThreads(1)
+    public boolean churn() {
+        membership.add(visitor);
+        return membership.remove(visitor);
+    }
+
+    @Benchmark
+    @Group("withBroadcast")
+    @GroupThreads(1)
+    public int broadcast() {
+        membership.forEach(connection -> visited[0]++);
+        return visited[0];
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inbound bytes to handled command: decoding plus {@link ClientHandler} dispatch, for both
+ * protocols. The client owns a room of its own so a chat line goes through the room as well. The
+ * client has no rate limits, so every message is handled rather than refused.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    private static final AtomicInteger ROOM_IDS = new AtomicInteger();
+
+    @Param({"binary", "text"})
+    String protocol;
+
+    private InboundDecoder decoder;
+    private byte[] chat;
+    private byte[] roomListRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean binary = protocol.equals("binary");
+        QueueConnection connection = new QueueConnection(false);
+        ClientHandler handler = new ClientHandler(connection, null, null, false);
+        decoder = new InboundDecoder(connection, handler);
+        String room = "dispatch-" + ROOM_IDS.incrementAndGet();
+
+        ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+        if (binary) {
+            handshake.write(FrameCodec.preamble());
+            handshake.write(FrameCodec.encode(FrameType.HELLO, "bench"));
+            handshake.write(FrameCodec.encode(FrameType.CREATE_ROOM, room));
+        } else {
+            handshake.write(("bench\nCREATE_ROOM:" + room + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        feed(handshake.toByteArray());
+
+        String message = "hello everyone, how is the stream looking?";
+        chat = binary ? FrameCodec.encode(FrameType.CHAT, message) : (message + "\n").getBytes(StandardCharsets.UTF_8);
+        roomListRequest = binary
+                ? FrameCodec.encode(FrameType.ROOM_LIST_REQUEST, "")
+                : "REQUEST_ROOM_LIST\n".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void chat() throws IOException {
+        feed(chat);
+    }
+
+    @Benchmark
+    public void roomListRequest() throws IOException {
+        feed(roomListRequest);
+    }
+
+    private void feed(byte[] bytes) throws IOException {
+        decoder.decode(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.server;
+
+/**
+ * In-memory stand-in for a socket: messages go through a real {@link OutboundQueue} and are
+ * consumed straight away, as if the peer read everything instantly.
+ */
+final class QueueConnection extends Connection {
+    private final OutboundQueue queue = new OutboundQueue();
+    long sentBytes;
+
+    QueueConnection(boolean binary) {
+        if (binary) {
+            useBinaryProtocol();
+        }
+    }
+
+    @Override
+    void send(EncodedMessage message) {
+        queue.offer(message);
+        queue.consume(message.length());
+        sentBytes += message.length();
+    }
+
+    @Override
+    OutboundQueue outboundQueue() {
+        return queue;
+    }
+
+    @Override
+    boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    void close() {
+        queue.close();
+    }
+}
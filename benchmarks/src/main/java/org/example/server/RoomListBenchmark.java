@@ -0,0 +1,49 @@
+package org.example.server;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the room-list messages: a full snapshot (sent on request, and to text clients on every
+ * tick) against the per-tick delta binary clients get.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomListBenchmark {
+    @Param({"2000"})
+    int rooms;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> added = List.of("new-room");
+    private final List<String> removed = List.of("room-17");
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < rooms; i++) {
+            names.add("room-" + i);
+        }
+    }
+
+    @Benchmark
+    public void snapshotBinary(Blackhole bh) {
+        bh.consume(OutboundMessage.roomList(1, names).encoded(true));
+    }
+
+    @Benchmark
+    public void snapshotText(Blackhole bh) {
+        bh.consume(OutboundMessage.roomList(1, names).encoded(false));
+    }
+
+    @Benchmark
+    public void delta(Blackhole bh) {
+        bh.consume(OutboundMessage.roomListDelta(2, added, removed).encoded(true));
+    }
+}
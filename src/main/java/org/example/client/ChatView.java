@@ -0,0 +1,114 @@
+package org.example.client;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The chat panel. Lines can be appended from any thread; they are collected and handed to the EDT
+ * once per tick as one batch. The panel keeps only the last {@code client.chatHistory} lines in a
+ * ring buffer and is a fixed-row-height {@link JList}, so Swing lays out and paints only the
+ * visible rows no matter how much chat has gone by.
+ */
+class ChatView {
+    private static final int HISTORY = Integer.getInteger("client.chatHistory", 5000);
+    private static final int TICK_MS = Integer.getInteger("client.chatTickMs", 16);
+
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private final RingModel model = new RingModel(HISTORY);
+    private final JList<String> list = new JList<>(model);
+    private final JScrollPane scrollPane = new JScrollPane(list);
+
+    ChatView() {
+        list.setBackground(Color.WHITE);
+        list.setForeground(Color.DARK_GRAY);
+        list.setFont(new Font("Arial", Font.PLAIN, 14));
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 2);
+        // A fixed width too, or JList measures every row to find the widest; rows then track the viewport
+        list.setFixedCellWidth(1);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                setToolTipText((String) value);
+                return this;
+            }
+        });
+        new Timer(TICK_MS, e -> drain()).start();
+    }
+
+    JComponent component() {
+        return scrollPane;
+    }
+
+    /** Safe from any thread. */
+    void append(String line) {
+        synchronized (pending) {
+            // Lines beyond the history would be evicted as soon as they were shown
+            if (pending.size() == HISTORY) {
+                pending.removeFirst();
+            }
+            pending.addLast(line);
+        }
+    }
+
+    private void drain() {
+        List<String> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight();
+        model.addAll(batch);
+        if (atBottom) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+
+    /** Fixed-capacity list model; appending past capacity evicts the oldest lines. EDT only. */
+    private static final class RingModel extends AbstractListModel<String> {
+        private final String[] ring;
+        private int start;
+        private int size;
+
+        RingModel(int capacity) {
+            ring = new String[Math.max(1, capacity)];
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return ring[(start + index) % ring.length];
+        }
+
+        void addAll(List<String> lines) {
+            int count = Math.min(lines.size(), ring.length);
+            int evicted = Math.max(0, size + count - ring.length);
+            if (evicted > 0) {
+                for (int i = 0; i < evicted; i++) {
+                    ring[(start + i) % ring.length] = null;
+                }
+                start = (start + evicted) % ring.length;
+                size -= evicted;
+                fireIntervalRemoved(this, 0, evicted - 1);
+            }
+            int first = size;
+            for (String line : lines.subList(lines.size() - count, lines.size())) {
+                ring[(start + size) % ring.length] = line;
+                size++;
+            }
+            fireIntervalAdded(this, first, size - 1);
+        }
+    }
+}
@@ -1,18 +1,41 @@
 package org.example.client;
 
+import org.example.media.FrameSource;
+import org.example.media.SimulcastEncoder;
+import org.example.media.VideoPublisher;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
-import java.net.*;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class Client {
     private static final int SERVER_PORT = 12345;
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    // Video published while owning a room: camera:<index>, file:<path> or synthetic
+    private static final String VIDEO_SOURCE = System.getProperty("client.videoSource", "camera:0");
+    private static final int VIDEO_WIDTH = Integer.getInteger("client.videoWidth", 1280);
+    private static final int VIDEO_HEIGHT = Integer.getInteger("client.videoHeight", 720);
+    private static final int VIDEO_FPS = Integer.getInteger("client.videoFps", 30);
+    private static final int JPEG_QUALITY = Integer.getInteger("client.jpegQuality", 80);
+    // Quality layers the server can choose from for each viewer; 1 sends a single stream
+    private static final int SIMULCAST_LAYERS = Integer.getInteger("client.simulcastLayers", 3);
+    // Send only changed tiles of this size (0 = whole JPEG frames), with a full keyframe every N frames
+    private static final int TILE_SIZE = Integer.getInteger("client.tileSize", 0);
+    private static final int KEYFRAME_INTERVAL = Integer.getInteger("client.keyframeInterval", 30);
+    // After losing the server, reconnect after a random delay up to base * 2^attempt, capped at max
+    private static final long RECONNECT_BASE_MS = Long.getLong("client.reconnectBaseMs", 500);
+    private static final long RECONNECT_MAX_MS = Long.getLong("client.reconnectMaxMs", 30_000);
+    private final ServerConnection.Session session = new ServerConnection.Session();
+    private volatile ServerConnection connection;
+    private volatile boolean reconnecting;
+    private String serverAddress;
+    private String username;
+    private VideoPublisher videoPublisher;
     private JFrame frame;
-    private JTextArea chatArea;
+    private final ChatView chatView = new ChatView();
     private JTextField inputField;
     private JTextField serverAddressField;
     private JTextField usernameField;
@@ -21,13 +44,14 @@ public class Client {
     private JButton closeRoomButton;
     private JButton sendButton;
     private JButton joinRoomButton;
+    private JButton playButton;
     private JComboBox<String> roomList;
-    private DefaultComboBoxModel<String> roomListModel;
+    private RoomListModel roomListModel;
     private JPanel mainPanel;
-    private JLabel imageLabel;
+    private VideoPanel videoPanel;
     private JLabel roomNameLabel;
-    private String currentRoom;
-    private boolean isRoomOwner;
+    private volatile String currentRoom;
+    private volatile boolean isRoomOwner;
 
     public Client() {
         frame = new JFrame("Live Stream Client");
@@ -89,21 +113,14 @@ public class Client {
         JPanel leftPanel = new JPanel(new BorderLayout());
         leftPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Live Camera"));
 
-        imageLabel = new JLabel("Camera Feed", SwingConstants.CENTER);
-        imageLabel.setPreferredSize(new Dimension(400, 400));
-        leftPanel.add(imageLabel, BorderLayout.CENTER);
+        videoPanel = new VideoPanel("Camera Feed");
+        leftPanel.add(videoPanel, BorderLayout.CENTER);
 
         JPanel rightPanel = new JPanel(new BorderLayout());
         rightPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Chat Live"));
 
-        chatArea = new JTextArea();
-        chatArea.setEditable(false);
-        chatArea.setBackground(Color.WHITE);
-        chatArea.setForeground(Color.DARK_GRAY);
-        chatArea.setFont(new Font("Arial", Font.PLAIN, 14));
-        JScrollPane scrollPane = new JScrollPane(chatArea);
 
-        rightPanel.add(scrollPane, BorderLayout.CENTER);
+        rightPanel.add(chatView.component(), BorderLayout.CENTER);
 
         topPanel.add(leftPanel);
         topPanel.add(rightPanel);
@@ -119,8 +136,9 @@ public class Client {
         closeRoomButton = new JButton("Close Room");
         joinRoomButton = new JButton("Join Room");
         sendButton = new JButton("Send");
+        playButton = new JButton("Play Recording");
 
-        roomListModel = new DefaultComboBoxModel<>();
+        roomListModel = new RoomListModel();
         roomList = new JComboBox<>(roomListModel);
         roomList.setPreferredSize(new Dimension(150, 30));
 
@@ -159,6 +177,8 @@ public class Client {
         bottomPanel.add(joinRoomButton, gbc);
         gbc.gridx = 4;
         bottomPanel.add(closeRoomButton, gbc);
+        gbc.gridx = 5;
+        bottomPanel.add(playButton, gbc);
 
         mainPanel.add(roomNameLabel, BorderLayout.NORTH);
         mainPanel.add(bottomPanel, BorderLayout.SOUTH);
@@ -169,11 +189,12 @@ public class Client {
         joinRoomButton.addActionListener(e -> joinRoom());
         closeRoomButton.addActionListener(e -> closeRoom());
         sendButton.addActionListener(e -> sendMessage());
+        playButton.addActionListener(e -> playRecording());
 
-        roomList.addActionListener(e -> currentRoom = (String) roomList.getSelectedItem());
+        roomList.addActionListener(e -> setCurrentRoom((String) roomList.getSelectedItem()));
     }
 
-    private void joinRoom() {
+    void joinRoom() {
         String roomName = (String) roomList.getSelectedItem();
         if (roomName == null || roomName.isEmpty()) {
             JOptionPane.showMessageDialog(frame, "Please select a room to join.");
@@ -181,10 +202,10 @@ public class Client {
         }
 
         if (currentRoom != null) {
-            out.println("LEAVE_ROOM:" + currentRoom);
+            connection.leaveRoom(currentRoom);
         }
 
-        out.println("JOIN_ROOM:" + roomName);
+        connection.joinRoom(roomName);
         currentRoom = roomName;
         isRoomOwner = false;
         appendMessage("Joined room: " + roomName);
@@ -192,14 +213,14 @@ public class Client {
         roomNameLabel.setText("Current Room: " + roomName);
     }
 
-    private void connectToServer(String serverAddress, String username) {
+    void connectToServer(String serverAddress, String username) {
+        this.serverAddress = serverAddress;
+        this.username = username;
         try {
-            socket = new Socket(serverAddress, SERVER_PORT);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            connection = new ServerConnection(serverAddress, SERVER_PORT, session);
 
-            out.println(username);
-            out.println("REQUEST_ROOM_LIST");
+            connection.hello(username);
+            connection.requestRoomList();
 
             new Thread(new ServerListener()).start();
         } catch (IOException e) {
@@ -207,78 +228,174 @@ public class Client {
         }
     }
 
-    private void createRoom() {
+    void createRoom() {
         String roomName = roomNameField.getText();
         if (roomName.isEmpty()) {
             JOptionPane.showMessageDialog(frame, "Please enter a room name.");
             return;
         }
 
-        out.println("CREATE_ROOM:" + roomName);
+        connection.createRoom(roomName);
         currentRoom = roomName;
         isRoomOwner = true;
         appendMessage("Created room: " + roomName);
         updateUIForRoomOwner();
-        out.println("REQUEST_ROOM_LIST");
+        startPublishing();
         roomNameLabel.setText("Current Room: " + roomName);
     }
 
-    private void closeRoom() {
+    void closeRoom() {
         if (!isRoomOwner) {
             JOptionPane.showMessageDialog(frame, "You are not the owner of this room.");
             return;
         }
 
-        out.println("CLOSE_ROOM:" + currentRoom);
+        stopPublishing();
+        connection.closeRoom(currentRoom);
         currentRoom = null;
         isRoomOwner = false;
         appendMessage("Room closed.");
         updateUIForRoomOwner();
-        out.println("REQUEST_ROOM_LIST");
         roomNameLabel.setText("No room selected");
     }
 
-    private void sendMessage() {
+    /**
+     * Plays the recording named in the room name field, optionally followed by a speed and a start
+     * second; with the field empty, asks the server which recordings there are.
+     */
+    void playRecording() {
+        String request = roomNameField.getText().trim();
+        if (request.isEmpty()) {
+            connection.playback("");
+            return;
+        }
+        connection.playback(request);
+        currentRoom = "replay:" + request.split("\\s+")[0];
+        appendMessage("Playing recording: " + request);
+        updateUIForRoomOwner();
+        roomNameLabel.setText("Current Room: " + currentRoom);
+    }
+
+    void sendMessage() {
         String message = inputField.getText();
         if (message.isEmpty() || currentRoom == null) {
             JOptionPane.showMessageDialog(frame, "You must join a room before sending messages.");
             return;
         }
-        out.println(message);
+        connection.sendChat(message);
         inputField.setText("");
     }
 
+    private void startPublishing() {
+        FrameSource source = FrameSource.open(VIDEO_SOURCE, VIDEO_WIDTH, VIDEO_HEIGHT);
+        videoPublisher = new VideoPublisher(source, new SimulcastEncoder(SIMULCAST_LAYERS, JPEG_QUALITY, TILE_SIZE, KEYFRAME_INTERVAL), layers -> {
+            try {
+                connection.sendLayers(layers);
+            } catch (IOException e) {
+                // Frames are dropped until the connection is back
+                if (!reconnecting) {
+                    throw e;
+                }
+            }
+            videoPanel.submit(layers[0], 0, layers[0].length);
+        }, VIDEO_FPS);
+        videoPublisher.start();
+    }
+
+    private void stopPublishing() {
+        if (videoPublisher != null) {
+            videoPublisher.stop();
+            videoPublisher = null;
+        }
+    }
+
+    void setCurrentRoom(String roomName) {
+        currentRoom = roomName;
+    }
+
     private void appendMessage(String message) {
-        SwingUtilities.invokeLater(() -> chatArea.append(message + "\n"));
+        chatView.append(message);
     }
 
     private void updateUIForRoomOwner() {
         createRoomButton.setEnabled(!isRoomOwner);
         closeRoomButton.setEnabled(isRoomOwner);
         joinRoomButton.setEnabled(!isRoomOwner);
+        playButton.setEnabled(!isRoomOwner);
         roomNameField.setEnabled(!isRoomOwner);
     }
 
-    private class ServerListener implements Runnable {
-        public void run() {
-            String line;
+    /**
+     * Reconnects until it succeeds, with full-jitter exponential backoff so that clients dropped
+     * together do not all come back at once. The new connection resumes the session if the
+     * server gave one, otherwise says hello again and rejoins or recreates the room.
+     */
+    private boolean reconnect() {
+        reconnecting = true;
+        for (int attempt = 0; ; attempt++) {
+            long ceiling = Math.min(RECONNECT_MAX_MS, RECONNECT_BASE_MS << Math.min(attempt, 20));
             try {
-                while ((line = in.readLine()) != null) {
-                    if (line.startsWith("ROOM_LIST:")) {
-                        String[] rooms = line.substring("ROOM_LIST:".length()).split(",");
-                        SwingUtilities.invokeLater(() -> {
-                            roomListModel.removeAllElements();
-                            for (String room : rooms) {
-                                roomListModel.addElement(room);
-                            }
-                        });
-                    } else {
-                        appendMessage(line);
-                    }
-                }
+                TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            ServerConnection next;
+            try {
+                next = new ServerConnection(serverAddress, SERVER_PORT, session);
             } catch (IOException e) {
-                JOptionPane.showMessageDialog(frame, "Connection lost: " + e.getMessage());
+                continue;
+            }
+            connection.close();
+            connection = next;
+            String room = currentRoom;
+            if (next.canResume()) {
+                next.resume(username, room, isRoomOwner);
+            } else {
+                next.hello(username);
+                if (room != null && isRoomOwner) {
+                    next.createRoom(room);
+                } else if (room != null) {
+                    next.joinRoom(room);
+                }
             }
+            next.requestRoomList();
+            reconnecting = false;
+            appendMessage("Reconnected to the server.");
+            return true;
+        }
+    }
+
+    private class ServerListener implements Runnable, ServerConnection.Listener {
+        public void run() {
+            do {
+                try {
+                    connection.receive(this);
+                    appendMessage("Connection lost; reconnecting...");
+                } catch (IOException e) {
+                    appendMessage("Connection lost: " + e.getMessage() + "; reconnecting...");
+                }
+            } while (reconnect());
+        }
+
+        @Override
+        public void onText(String line) {
+            appendMessage(line);
+        }
+
+        @Override
+        public void onRoomList(List<String> rooms) {
+            SwingUtilities.invokeLater(() -> roomListModel.replaceAll(rooms));
+        }
+
+        @Override
+        public void onRoomListDelta(List<String> added, List<String> removed) {
+            SwingUtilities.invokeLater(() -> roomListModel.apply(added, removed));
+        }
+
+        @Override
+        public void onVideoFrame(byte[] data, int offset, int length) {
+            videoPanel.submit(data, offset, length);
         }
     }
 
@@ -3,10 +3,11 @@ package org.example.client;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.util.List;
 
 public class ClientView {
     private JFrame frame;
-    private JTextArea chatArea;
+    private final ChatView chatView = new ChatView();
     private JTextField inputField;
     private JTextField serverAddressField;
     private JTextField usernameField;
@@ -16,8 +17,8 @@ public class ClientView {
     private JButton sendButton;
     private JButton joinRoomButton;
     private JComboBox<String> roomList;
-    private DefaultComboBoxModel<String> roomListModel;
-    private JLabel imageLabel;
+    private RoomListModel roomListModel;
+    private VideoPanel videoPanel;
     private JPanel mainPanel;
 
     public ClientView(Client client) {
@@ -83,22 +84,15 @@ public class ClientView {
         JPanel leftPanel = new JPanel(new BorderLayout());
         leftPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Live Camera"));
 
-        imageLabel = new JLabel("Camera Feed", SwingConstants.CENTER);
-        imageLabel.setPreferredSize(new Dimension(400, 400));
-        leftPanel.add(imageLabel, BorderLayout.CENTER);
+        videoPanel = new VideoPanel("Camera Feed");
+        leftPanel.add(videoPanel, BorderLayout.CENTER);
 
         // Panel for chat
         JPanel rightPanel = new JPanel(new BorderLayout());
         rightPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Chat"));
 
-        chatArea = new JTextArea();
-        chatArea.setEditable(false);
-        chatArea.setBackground(Color.WHITE);
-        chatArea.setForeground(Color.DARK_GRAY);
-        chatArea.setFont(new Font("Arial", Font.PLAIN, 14));
-        JScrollPane scrollPane = new JScrollPane(chatArea);
 
-        rightPanel.add(scrollPane, BorderLayout.CENTER);
+        rightPanel.add(chatView.component(), BorderLayout.CENTER);
 
         topPanel.add(leftPanel);
         topPanel.add(rightPanel);
@@ -116,7 +110,7 @@ public class ClientView {
         joinRoomButton = new JButton("Join Room");
         sendButton = new JButton("Send");
 
-        roomListModel = new DefaultComboBoxModel<>();
+        roomListModel = new RoomListModel();
         roomList = new JComboBox<>(roomListModel);
         roomList.setPreferredSize(new Dimension(150, 30));
 
@@ -165,17 +159,20 @@ public class ClientView {
     }
 
     public void appendMessage(String message) {
-        SwingUtilities.invokeLater(() -> chatArea.append(message + "\n"));
+        chatView.append(message);
     }
 
-    public void updateRoomList(String roomListStr) {
-        String[] rooms = roomListStr.split(",");
-        SwingUtilities.invokeLater(() -> {
-            roomListModel.removeAllElements();
-            for (String room : rooms) {
-                roomListModel.addElement(room);
-            }
-        });
+    /** Called from the network thread. */
+    void showVideoFrame(byte[] data, int offset, int length) {
+        videoPanel.submit(data, offset, length);
+    }
+
+    public void updateRoomList(List<String> rooms) {
+        SwingUtilities.invokeLater(() -> roomListModel.replaceAll(rooms));
+    }
+
+    public void applyRoomListDelta(List<String> added, List<String> removed) {
+        SwingUtilities.invokeLater(() -> roomListModel.apply(added, removed));
     }
 
     public void updateUIForRoomOwner(boolean isRoomOwner) {
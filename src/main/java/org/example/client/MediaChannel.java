@@ -0,0 +1,95 @@
+package org.example.client;
+
+import org.example.protocol.JitterBuffer;
+import org.example.protocol.MediaPacket;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client's end of the UDP media transport ({@link MediaPacket}), used with
+ * {@code -Dclient.mediaTransport=udp} when the server offers it. An owner's frames go out as
+ * packets with parity; the room's video comes back through a {@link JitterBuffer} on the
+ * "media-receive" thread, which also re-registers the client's address every second so the server
+ * keeps sending to it.
+ */
+final class MediaChannel {
+    static final boolean ENABLED = "udp".equals(System.getProperty("client.mediaTransport", "tcp"));
+    private static final int FEC_GROUP = Integer.getInteger("client.mediaFecGroup", 4);
+    private static final long JITTER_MS = Long.getLong("client.mediaJitterMs", 60);
+    // Drops this fraction of outgoing packets, to test with
+    private static final double LOSS = Double.parseDouble(System.getProperty("client.mediaLoss", "0"));
+    private static final int POLL_MS = 10;
+    private static final long REGISTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long token;
+    private final DatagramChannel channel;
+    // Guarded by this
+    private final MediaPacket packetizer = new MediaPacket(MediaPacket.DEFAULT_CHUNK, FEC_GROUP);
+    private int nextFrame;
+    private volatile boolean closed;
+
+    MediaChannel(InetSocketAddress server, long token) throws IOException {
+        this.token = token;
+        this.channel = DatagramChannel.open();
+        channel.connect(server);
+        channel.socket().setSoTimeout(POLL_MS);
+    }
+
+    /** Registers with the server and hands each frame of video it sends here to {@code frames}. */
+    void start(JitterBuffer.Listener frames) {
+        Thread thread = new Thread(() -> receive(new JitterBuffer(TimeUnit.MILLISECONDS.toNanos(JITTER_MS), frames)), "media-receive");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Sends one complete binary frame. */
+    synchronized void send(byte[] frame) throws IOException {
+        packetizer.send(token, nextFrame++, frame, 0, frame.length, packet -> {
+            if (LOSS == 0 || ThreadLocalRandom.current().nextDouble() >= LOSS) {
+                channel.write(packet);
+            }
+        });
+    }
+
+    private void receive(JitterBuffer jitter) {
+        byte[] buf = new byte[64 * 1024];
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        long registered = 0;
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                if (now - registered >= REGISTER_NANOS) {
+                    channel.write(ByteBuffer.wrap(MediaPacket.register(token)));
+                    registered = now;
+                }
+                try {
+                    packet.setLength(buf.length);
+                    channel.socket().receive(packet);
+                    jitter.offer(buf, packet.getLength(), System.nanoTime());
+                } catch (SocketTimeoutException e) {
+                    jitter.poll(System.nanoTime());
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Media transport stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing media channel: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.client;
+
+import javax.swing.*;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Room combo box model that is kept current by deltas, so a change elsewhere on the server does
+ * not rebuild the list or reset the selection. Call only on the EDT.
+ */
+class RoomListModel extends DefaultComboBoxModel<String> {
+    private final Set<String> names = new HashSet<>();
+
+    /** Brings the model in line with a full list, touching only the rooms that differ. */
+    void replaceAll(List<String> rooms) {
+        Set<String> wanted = new HashSet<>(rooms);
+        List<String> gone = names.stream().filter(name -> !wanted.contains(name)).toList();
+        apply(rooms, gone);
+    }
+
+    void apply(Collection<String> added, Collection<String> removed) {
+        for (String name : removed) {
+            if (names.remove(name)) {
+                removeElement(name);
+            }
+        }
+        for (String name : added) {
+            if (names.add(name)) {
+                addElement(name);
+            }
+        }
+    }
+}
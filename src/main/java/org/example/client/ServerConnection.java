@@ -0,0 +1,330 @@
+package org.example.client;
+
+import org.example.protocol.Compression;
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameDecoder;
+import org.example.protocol.FrameType;
+import org.example.protocol.LineDecoder;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The client's socket to the server. Speaks the binary frame protocol by default, or the legacy
+ * text protocol when {@code -Dclient.protocol=text}. Commands and video frames share one output
+ * stream, so every write goes through this object's monitor.
+ *
+ * <p>A binary connection can resume: the {@link Session} it is given outlives it, holding the
+ * server's token and the last room message seen, so the next connection can {@link #resume} in
+ * its place.
+ *
+ * <p>Video can instead go over UDP through a {@link MediaChannel}, once the server has sent its
+ * port.
+ */
+class ServerConnection {
+    static final boolean TEXT_PROTOCOL = "text".equals(System.getProperty("client.protocol", "binary"));
+    // Ask the server to deflate chat, notices and room lists (binary protocol only)
+    static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("client.compression", "true"));
+
+    interface Listener {
+        /** A line for the chat panel, rendered the same way for both protocols. */
+        void onText(String line);
+
+        /** The full room list, after connecting or when updates were missed. */
+        void onRoomList(List<String> rooms);
+
+        void onRoomListDelta(List<String> added, List<String> removed);
+
+        void onVideoFrame(byte[] data, int offset, int length);
+    }
+
+    /** What a reconnect needs to resume; shared by one client's successive connections. */
+    static final class Session {
+        private volatile long token;
+        // The highest seen in the current room; chat from two members can arrive out of order
+        private volatile long lastSeq;
+
+        boolean canResume() {
+            return token != 0;
+        }
+    }
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final boolean binary;
+    private final Session session;
+    private volatile MediaChannel media;
+    // Room list version the listener has seen; deltas are ignored until a snapshot arrives
+    private long roomListSeq;
+    private boolean awaitingSnapshot = true;
+
+    ServerConnection(String host, int port, Session session) throws IOException {
+        this.session = session;
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = socket.getInputStream();
+        out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        binary = !TEXT_PROTOCOL;
+        if (binary) {
+            out.write(FrameCodec.preamble());
+            int capabilities = FrameCodec.CAPABILITY_RESUME | (COMPRESSION ? FrameCodec.CAPABILITY_DEFLATE : 0)
+                    | (MediaChannel.ENABLED ? FrameCodec.CAPABILITY_MEDIA : 0);
+            out.write(FrameCodec.encode(FrameType.CAPABILITIES, new byte[] {(byte) capabilities}, 0, 1));
+        } else {
+            out.write((LineDecoder.FRAMES_CAPABILITY + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    void hello(String username) {
+        send(FrameType.HELLO, username, username);
+    }
+
+    boolean canResume() {
+        return binary && session.canResume();
+    }
+
+    /** Instead of {@link #hello}: back into {@code room} (empty for none) with what was missed since the last connection. */
+    synchronized void resume(String username, String room, boolean owner) {
+        try {
+            out.write(FrameCodec.encodeResume(session.token, session.lastSeq, owner, username, room == null ? "" : room));
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Error sending to server: " + e.getMessage());
+        }
+    }
+
+    void requestRoomList() {
+        send(FrameType.ROOM_LIST_REQUEST, "", "REQUEST_ROOM_LIST");
+    }
+
+    void createRoom(String roomName) {
+        send(FrameType.CREATE_ROOM, roomName, "CREATE_ROOM:" + roomName);
+    }
+
+    void joinRoom(String roomName) {
+        send(FrameType.JOIN_ROOM, roomName, "JOIN_ROOM:" + roomName);
+    }
+
+    void leaveRoom(String roomName) {
+        send(FrameType.LEAVE_ROOM, roomName, "LEAVE_ROOM:" + roomName);
+    }
+
+    void closeRoom(String roomName) {
+        send(FrameType.CLOSE_ROOM, roomName, "CLOSE_ROOM:" + roomName);
+    }
+
+    /** {@code <recording> [speed] [startSeconds]}, or empty to ask for the list of recordings. */
+    void playback(String request) {
+        send(FrameType.PLAYBACK, request, "PLAYBACK:" + request);
+    }
+
+    void sendChat(String message) {
+        send(FrameType.CHAT, message, message);
+    }
+
+    synchronized void sendFrame(byte[] payload) throws IOException {
+        MediaChannel channel = media;
+        if (channel != null) {
+            channel.send(FrameCodec.encode(FrameType.VIDEO_FRAME, payload, 0, payload.length));
+            return;
+        }
+        if (binary) {
+            byte[] header = new byte[FrameCodec.HEADER_LENGTH];
+            FrameCodec.writeHeader(header, 0, FrameType.VIDEO_FRAME, payload.length);
+            out.write(header);
+        } else {
+            out.write(LineDecoder.frameHeader(payload.length));
+        }
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Sends every layer of one frame in a single flush. The text protocol has no layers, so a text
+     * connection (or a single layer) sends only the best one as a plain frame.
+     */
+    synchronized void sendLayers(byte[][] layers) throws IOException {
+        if (!binary || layers.length == 1) {
+            sendFrame(layers[0]);
+            return;
+        }
+        MediaChannel channel = media;
+        if (channel != null) {
+            for (int i = 0; i < layers.length; i++) {
+                byte[] frame = new byte[FrameCodec.HEADER_LENGTH + 1 + layers[i].length];
+                FrameCodec.writeHeader(frame, 0, FrameType.VIDEO_LAYER, layers[i].length + 1);
+                frame[FrameCodec.HEADER_LENGTH] = (byte) i;
+                System.arraycopy(layers[i], 0, frame, FrameCodec.HEADER_LENGTH + 1, layers[i].length);
+                channel.send(frame);
+            }
+            return;
+        }
+        byte[] header = new byte[FrameCodec.HEADER_LENGTH + 1];
+        for (int i = 0; i < layers.length; i++) {
+            FrameCodec.writeHeader(header, 0, FrameType.VIDEO_LAYER, layers[i].length + 1);
+            header[FrameCodec.HEADER_LENGTH] = (byte) i;
+            out.write(header);
+            out.write(layers[i]);
+        }
+        out.flush();
+    }
+
+    private synchronized void send(byte type, String argument, String textCommand) {
+        try {
+            if (binary) {
+                out.write(FrameCodec.encode(type, argument));
+            } else {
+                out.write((textCommand + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Error sending to server: " + e.getMessage());
+        }
+    }
+
+    /** Reads until the server closes the connection, handing everything to the listener. */
+    void receive(Listener listener) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        if (binary) {
+            Inflater inflater = new Inflater(true);
+            FrameDecoder.Listener frames = new FrameDecoder.Listener() {
+                @Override
+                public void onFrame(byte type, byte[] block, int off, int len) {
+                    switch (type) {
+                        case FrameType.ROOM_LIST -> {
+                            roomListSeq = FrameCodec.getLong(block, off);
+                            awaitingSnapshot = false;
+                            listener.onRoomList(FrameCodec.decodeNames(block, off + 8, len - 8));
+                        }
+                        case FrameType.ROOM_LIST_DELTA -> roomListDelta(listener, block, off, len);
+                        case FrameType.VIDEO_FRAME -> listener.onVideoFrame(block, off, len);
+                        case FrameType.CHAT_HISTORY -> listener.onText(FrameCodec.text(block, off + 8, len - 8));
+                        case FrameType.COMPRESSED -> decompress(this, inflater, block, off, len);
+                        case FrameType.SESSION -> session.token = FrameCodec.getLong(block, off);
+                        case FrameType.SEQUENCED -> sequenced(this, block, off, len);
+                        case FrameType.MEDIA -> openMedia(listener, block, off, len);
+                        default -> listener.onText(FrameType.textPrefix(type) + FrameCodec.text(block, off, len));
+                    }
+                }
+            };
+            FrameDecoder decoder = new FrameDecoder(frames);
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                decoder.decode(buf, 0, n);
+            }
+        } else {
+            LineDecoder decoder = new LineDecoder(new LineDecoder.Listener() {
+                @Override
+                public void onLine(String line) {
+                    if (line.startsWith("ROOM_LIST:")) {
+                        String rooms = line.substring("ROOM_LIST:".length());
+                        listener.onRoomList(rooms.isEmpty() ? List.of() : Arrays.asList(rooms.split(",")));
+                    } else {
+                        listener.onText(line);
+                    }
+                }
+
+                @Override
+                public boolean acceptsFrames() {
+                    return true;
+                }
+
+                @Override
+                public void onBinary(byte[] block, int payloadOffset) {
+                    listener.onVideoFrame(block, payloadOffset, block.length - payloadOffset);
+                }
+            });
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                decoder.decode(buf, 0, n);
+            }
+        }
+    }
+
+    /** Switches video to UDP at the port the server gave, if this client wants that. */
+    private void openMedia(Listener listener, byte[] block, int off, int len) {
+        if (!MediaChannel.ENABLED || media != null || len != 10) {
+            return;
+        }
+        long token = FrameCodec.getLong(block, off);
+        int port = ((block[off + 8] & 0xFF) << 8) | (block[off + 9] & 0xFF);
+        try {
+            MediaChannel channel = new MediaChannel(new InetSocketAddress(socket.getInetAddress(), port), token);
+            channel.start(frame -> {
+                if (frame[0] == FrameType.VIDEO_FRAME) {
+                    listener.onVideoFrame(frame, FrameCodec.HEADER_LENGTH, frame.length - FrameCodec.HEADER_LENGTH);
+                }
+            });
+            media = channel;
+        } catch (IOException e) {
+            System.err.println("Could not open the media transport, video stays on TCP: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A room message with its sequence number, kept so that a resume asks for what came after it.
+     * Numbers are per room: on entering a room the client is sent one with no message, where the
+     * new room's numbering is, and the old room's numbers all arrive before it.
+     */
+    private void sequenced(FrameDecoder.Listener frames, byte[] block, int off, int len) {
+        long seq = FrameCodec.getLong(block, off);
+        if (len == 8) {
+            session.lastSeq = seq;
+            return;
+        }
+        if (seq > session.lastSeq) {
+            session.lastSeq = seq;
+        }
+        try {
+            new FrameDecoder(frames).decode(block, off + 8, len - 8);
+        } catch (IOException e) {
+            System.err.println("Bad sequenced frame from server: " + e.getMessage());
+        }
+    }
+
+    /** Each compressed frame holds whole frames, decoded on their own. */
+    private static void decompress(FrameDecoder.Listener frames, Inflater inflater, byte[] block, int off, int len) {
+        try {
+            byte[] inflated = Compression.inflate(inflater, block, off, len);
+            new FrameDecoder(frames).decode(inflated, 0, inflated.length);
+        } catch (DataFormatException | IOException e) {
+            System.err.println("Bad compressed frame from server: " + e.getMessage());
+        }
+    }
+
+    private void roomListDelta(Listener listener, byte[] block, int off, int len) {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        long seq = FrameCodec.decodeRoomDelta(block, off, len, added, removed);
+        if (awaitingSnapshot || seq <= roomListSeq) {
+            return;
+        }
+        if (seq != roomListSeq + 1) {
+            awaitingSnapshot = true;
+            requestRoomList();
+            return;
+        }
+        roomListSeq = seq;
+        listener.onRoomListDelta(added, removed);
+    }
+
+    void close() {
+        MediaChannel channel = media;
+        if (channel != null) {
+            channel.close();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
+}
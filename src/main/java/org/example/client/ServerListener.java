@@ -1,31 +1,43 @@
 package org.example.client;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.List;
 
-public class ServerListener implements Runnable {
-    private BufferedReader in;
+public class ServerListener implements Runnable, ServerConnection.Listener {
+    private ServerConnection connection;
     private ClientView view;
 
-    public ServerListener(BufferedReader in, ClientView view) {
-        this.in = in;
+    ServerListener(ServerConnection connection, ClientView view) {
+        this.connection = connection;
         this.view = view;
     }
 
     @Override
     public void run() {
         try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                final String message = line;
-                if (line.startsWith("ROOM_LIST:")) {
-                    view.updateRoomList(line.substring(10));
-                } else {
-                    view.appendMessage(message);
-                }
-            }
+            connection.receive(this);
         } catch (IOException e) {
             view.appendMessage("Connection lost: " + e.getMessage());
         }
     }
+
+    @Override
+    public void onText(String line) {
+        view.appendMessage(line);
+    }
+
+    @Override
+    public void onRoomList(List<String> rooms) {
+        view.updateRoomList(rooms);
+    }
+
+    @Override
+    public void onRoomListDelta(List<String> added, List<String> removed) {
+        view.applyRoomListDelta(added, removed);
+    }
+
+    @Override
+    public void onVideoFrame(byte[] data, int offset, int length) {
+        view.showVideoFrame(data, offset, length);
+    }
 }
@@ -0,0 +1,78 @@
+package org.example.client;
+
+import org.example.protocol.TileFrame;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * The picture a tiled stream has built up so far. A keyframe replaces it; a delta patches its tiles
+ * in place, but only if it directly follows the last frame applied, so after a lost frame the
+ * picture holds still until the next keyframe instead of showing a mix. The changed tiles of a
+ * delta are decoded in parallel and then drawn in order. Not thread-safe.
+ */
+final class TileCanvas {
+    private BufferedImage image;
+    private int key = -1;
+    private int seq;
+
+    /** Returns the updated picture, or null if the frame could not be applied. */
+    BufferedImage apply(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data, offset, length);
+        in.position(offset + 2);
+        boolean keyframe = (in.get() & TileFrame.KEYFRAME) != 0;
+        int frameKey = in.getShort() & 0xFFFF;
+        int frameSeq = in.getShort() & 0xFFFF;
+        int width = in.getShort() & 0xFFFF;
+        int height = in.getShort() & 0xFFFF;
+        int tileSize = in.getShort() & 0xFFFF;
+        int count = in.getShort() & 0xFFFF;
+        if (!keyframe && (image == null || frameKey != key || frameSeq != seq + 1)) {
+            return null;
+        }
+        int[] indexes = new int[count];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = in.getShort() & 0xFFFF;
+            lengths[i] = in.getInt();
+            offsets[i] = in.position();
+            in.position(offsets[i] + lengths[i]);
+        }
+        BufferedImage[] tiles = new BufferedImage[count];
+        try {
+            IntStream.range(0, count).parallel().forEach(i -> {
+                try {
+                    tiles[i] = ImageIO.read(new ByteArrayInputStream(data, offsets[i], lengths[i]));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (keyframe) {
+            if (image == null || image.getWidth() != width || image.getHeight() != height) {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            key = frameKey;
+        }
+        seq = frameSeq;
+        int columns = Math.max(1, (width + tileSize - 1) / tileSize);
+        Graphics2D g = image.createGraphics();
+        for (int i = 0; i < count; i++) {
+            if (tiles[i] != null) {
+                g.drawImage(tiles[i], keyframe ? 0 : indexes[i] % columns * tileSize, keyframe ? 0 : indexes[i] / columns * tileSize, null);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+}
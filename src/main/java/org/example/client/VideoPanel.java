@@ -0,0 +1,223 @@
+package org.example.client;
+
+import org.example.protocol.TileFrame;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shows the newest video frame without ever decoding on the EDT or letting frames pile up.
+ *
+ * <ol>
+ *   <li>The network thread drops each JPEG into a one-frame slot; a frame still waiting there when
+ *   the next arrives is discarded.</li>
+ *   <li>A small decode pool takes the slot, decodes it and scales it into the back buffer; a frame
+ *   that finishes after a newer one has been drawn is discarded too.</li>
+ *   <li>Back and front buffers are swapped and a repaint requested. Swing coalesces repaints, so the
+ *   EDT paints at most once per frame it has time for, always the newest.</li>
+ * </ol>
+ *
+ * Tiled frames ({@link TileFrame}) cannot skip that way, since each delta builds on the one
+ * before: they wait in order in a queue, which a keyframe empties, and one decoder at a time applies
+ * them to a {@link TileCanvas} and shows the result.
+ *
+ * <p>Decode time, dropped frames and the rendered frame rate are drawn in the corner.
+ */
+class VideoPanel extends JComponent {
+    private static final int DECODE_THREADS = Integer.getInteger("client.decodeThreads", 2);
+
+    private record Frame(long seq, byte[] data, int offset, int length) {
+    }
+
+    private final String placeholder;
+    private final ExecutorService decoders;
+    private final AtomicReference<Frame> pending = new AtomicReference<>();
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    // Guarded by tiled; applyTiles is queued on the pool while tiledScheduled is set
+    private final ArrayDeque<Frame> tiled = new ArrayDeque<>();
+    private boolean tiledScheduled;
+    // Guarded by itself: one decoder applies tiled frames at a time, in order
+    private final TileCanvas canvas = new TileCanvas();
+
+    // Guarded by drawLock: only one decoder scales into the back buffer at a time
+    private final Object drawLock = new Object();
+    private BufferedImage back;
+    private long drawnSeq = -1;
+
+    // Guarded by swapLock, which the EDT holds while painting the front buffer
+    private final Object swapLock = new Object();
+    private BufferedImage front;
+
+    private volatile double decodeMillis;
+    private long fpsWindowStart = System.nanoTime();
+    private int fpsFrames;
+    private double renderFps;
+
+    VideoPanel(String placeholder) {
+        this.placeholder = placeholder;
+        this.decoders = Executors.newFixedThreadPool(Math.max(1, DECODE_THREADS), r -> {
+            Thread thread = new Thread(r, "video-decode");
+            thread.setDaemon(true);
+            return thread;
+        });
+        setOpaque(true);
+        setBackground(Color.BLACK);
+        setPreferredSize(new Dimension(400, 400));
+    }
+
+    /** Called from the network thread; {@code data} must not be modified afterwards. */
+    void submit(byte[] data, int offset, int length) {
+        if (TileFrame.isTiled(data, offset, length)) {
+            submitTiled(new Frame(nextSeq.getAndIncrement(), data, offset, length));
+            return;
+        }
+        Frame previous = pending.getAndSet(new Frame(nextSeq.getAndIncrement(), data, offset, length));
+        if (previous != null) {
+            dropped.incrementAndGet();
+        } else {
+            decoders.execute(this::decodeLatest);
+        }
+    }
+
+    private void submitTiled(Frame frame) {
+        synchronized (tiled) {
+            if (!TileFrame.isDelta(frame.data(), frame.offset(), frame.length())) {
+                dropped.addAndGet(tiled.size());
+                tiled.clear();
+            }
+            tiled.addLast(frame);
+            if (tiledScheduled) {
+                return;
+            }
+            tiledScheduled = true;
+        }
+        decoders.execute(this::applyTiles);
+    }
+
+    private void applyTiles() {
+        synchronized (canvas) {
+            while (true) {
+                Frame frame;
+                synchronized (tiled) {
+                    frame = tiled.pollFirst();
+                    if (frame == null) {
+                        tiledScheduled = false;
+                        return;
+                    }
+                }
+                long start = System.nanoTime();
+                BufferedImage image;
+                try {
+                    image = canvas.apply(frame.data(), frame.offset(), frame.length());
+                } catch (IOException e) {
+                    System.err.println("Could not decode video frame: " + e.getMessage());
+                    continue;
+                }
+                if (image == null) {
+                    dropped.incrementAndGet();
+                    continue;
+                }
+                decodeMillis = decodeMillis * 0.9 + (System.nanoTime() - start) / 1e6 * 0.1;
+                show(image, frame.seq());
+            }
+        }
+    }
+
+    private void decodeLatest() {
+        Frame frame = pending.getAndSet(null);
+        if (frame == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(frame.data(), frame.offset(), frame.length()));
+        } catch (IOException e) {
+            System.err.println("Could not decode video frame: " + e.getMessage());
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+        decodeMillis = decodeMillis * 0.9 + (System.nanoTime() - start) / 1e6 * 0.1;
+        show(image, frame.seq());
+    }
+
+    /** Scales a decoded frame into the back buffer and swaps it to the front, unless a newer one is already shown. */
+    private void show(BufferedImage image, long seq) {
+        synchronized (drawLock) {
+            if (seq < drawnSeq) {
+                dropped.incrementAndGet();
+                return;
+            }
+            drawnSeq = seq;
+            int width = Math.max(1, getWidth());
+            int height = Math.max(1, getHeight());
+            if (back == null || back.getWidth() != width || back.getHeight() != height) {
+                back = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            double scale = Math.min((double) width / image.getWidth(), (double) height / image.getHeight());
+            int scaledWidth = (int) (image.getWidth() * scale);
+            int scaledHeight = (int) (image.getHeight() * scale);
+            Graphics2D g = back.createGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, (width - scaledWidth) / 2, (height - scaledHeight) / 2, scaledWidth, scaledHeight, null);
+            g.dispose();
+            synchronized (swapLock) {
+                BufferedImage shown = front;
+                front = back;
+                back = shown;
+            }
+        }
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        boolean painted;
+        synchronized (swapLock) {
+            painted = front != null;
+            if (painted) {
+                g.drawImage(front, 0, 0, null);
+            }
+        }
+        if (!painted) {
+            g.setColor(Color.LIGHT_GRAY);
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(placeholder, (getWidth() - metrics.stringWidth(placeholder)) / 2, getHeight() / 2);
+            return;
+        }
+        countRenderedFrame();
+        String stats = String.format("%.1f fps  decode %.1f ms  dropped %d", renderFps, decodeMillis, dropped.get());
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(4, 4, g.getFontMetrics().stringWidth(stats) + 8, g.getFontMetrics().getHeight() + 4);
+        g.setColor(Color.WHITE);
+        g.drawString(stats, 8, 6 + g.getFontMetrics().getAscent());
+    }
+
+    private void countRenderedFrame() {
+        fpsFrames++;
+        long now = System.nanoTime();
+        if (now - fpsWindowStart >= 1_000_000_000L) {
+            renderFps = fpsFrames * 1e9 / (now - fpsWindowStart);
+            fpsFrames = 0;
+            fpsWindowStart = now;
+        }
+    }
+}
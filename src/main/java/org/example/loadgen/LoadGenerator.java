@@ -0,0 +1,180 @@
+package org.example.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator: opens many binary-protocol clients from a few selector threads, puts
+ * them in rooms, sends chat at a fixed rate and optionally publishes video, then reports
+ * end-to-end latency percentiles and throughput every second. Chat lines and video frames carry
+ * their send time, which works because sender and receivers share this process's clock.
+ *
+ * <p>Clients are numbered; every {@code roomSize} consecutive clients form a room whose first
+ * member creates it and the rest join once it exists. All settings are system properties, e.g.
+ * {@code java -Dloadgen.clients=5000 -Dloadgen.roomSize=100 -cp ... org.example.loadgen.LoadGenerator}.
+ */
+public class LoadGenerator {
+    static final String HOST = System.getProperty("loadgen.host", "127.0.0.1");
+    static final int PORT = Integer.getInteger("loadgen.port", 12345);
+    static final InetSocketAddress ORIGIN = new InetSocketAddress(HOST, PORT);
+    // Comma-separated host:port of edge servers relaying the origin; viewers are spread over them
+    // while room owners stay on the origin
+    static final List<InetSocketAddress> EDGES = parseAddresses(System.getProperty("loadgen.edges", ""));
+    static final long EDGE_JOIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("loadgen.edgeJoinDelayMs", 500));
+    static final int CLIENTS = Integer.getInteger("loadgen.clients", 1000);
+    static final int THREADS = Integer.getInteger("loadgen.threads", Math.min(4, Runtime.getRuntime().availableProcessors()));
+    static final int ROOM_SIZE = Integer.getInteger("loadgen.roomSize", 50);
+    // New connections per second, so the server's accept backlog is not flooded
+    static final int CONNECT_RATE = Integer.getInteger("loadgen.connectRate", 2000);
+    // Chat lines per second sent by each client once it is in its room
+    static final double CHAT_RATE = Double.parseDouble(System.getProperty("loadgen.chatRate", "1"));
+    static final int CHAT_BYTES = Integer.getInteger("loadgen.chatBytes", 64);
+    // Number of rooms whose owner also publishes video
+    static final int PUBLISHERS = Integer.getInteger("loadgen.publishers", 0);
+    static final int FPS = Integer.getInteger("loadgen.fps", 30);
+    static final int FRAME_BYTES = Integer.getInteger("loadgen.frameBytes", 32 * 1024);
+    static final int DURATION_SECONDS = Integer.getInteger("loadgen.duration", 30);
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("loadgen.tickMs", 5));
+    // A client with more unsent bytes than this skips its chat and video until it catches up
+    static final int MAX_PENDING_BYTES = Integer.getInteger("loadgen.maxPendingBytes", 1024 * 1024);
+
+    static final String RUN_ID = Long.toString(ProcessHandle.current().pid());
+
+    /** Shared by the clients of one room, which may live on different loops. */
+    static final class RoomState {
+        final String name;
+        volatile long readyAt;
+        volatile boolean ready;
+
+        RoomState(String name) {
+            this.name = name;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.printf("Load: %d clients on %d threads against %s%s, rooms of %d, %.1f chat/s each, %d publishers%n",
+                CLIENTS, THREADS, ORIGIN, EDGES.isEmpty() ? "" : " (viewers on " + EDGES + ")", ROOM_SIZE, CHAT_RATE,
+                PUBLISHERS);
+
+        List<LoadLoop> loops = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            loops.add(new LoadLoop(i));
+        }
+        RoomState room = null;
+        for (int i = 0; i < CLIENTS; i++) {
+            int roomIndex = i / ROOM_SIZE;
+            boolean owner = i % ROOM_SIZE == 0;
+            if (owner) {
+                room = new RoomState("load-" + RUN_ID + "-" + roomIndex);
+            }
+            boolean publisher = owner && roomIndex < PUBLISHERS;
+            InetSocketAddress server = owner || EDGES.isEmpty() ? ORIGIN : EDGES.get(i % EDGES.size());
+            loops.get(i % THREADS).add(new SimClient(i, server, room, owner, publisher));
+        }
+        for (LoadLoop loop : loops) {
+            loop.start();
+        }
+
+        Report report = new Report(loops);
+        long start = System.nanoTime();
+        for (int second = 1; second <= DURATION_SECONDS; second++) {
+            Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(start + TimeUnit.SECONDS.toNanos(second) - System.nanoTime())));
+            report.printInterval(second);
+        }
+        for (LoadLoop loop : loops) {
+            loop.shutdown();
+        }
+        for (LoadLoop loop : loops) {
+            loop.join();
+        }
+        report.printSummary((System.nanoTime() - start) / 1e9);
+    }
+
+    static List<InetSocketAddress> parseAddresses(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            if (!address.isBlank()) {
+                int colon = address.lastIndexOf(':');
+                addresses.add(new InetSocketAddress(address.substring(0, colon).trim(),
+                        Integer.parseInt(address.substring(colon + 1).trim())));
+            }
+        }
+        return addresses;
+    }
+
+    /** Sums the loops' counters; interval figures are differences between consecutive reads. */
+    private static final class Report {
+        private final List<LoadLoop> loops;
+        private final LoadLoop.Counters previous = new LoadLoop.Counters();
+        private long[] previousChat = new long[LatencyHistogram.BUCKETS];
+        private long[] previousVideo = new long[LatencyHistogram.BUCKETS];
+
+        Report(List<LoadLoop> loops) {
+            this.loops = loops;
+        }
+
+        void printInterval(int second) {
+            LoadLoop.Counters now = sum();
+            long[] chat = histogram(true);
+            long[] video = histogram(false);
+            System.out.printf("%4ds connected=%d inRoom=%d sent=%d/s recv=%d/s in=%.1fMB/s skipped=%d chat[%s] video[%s]%n",
+                    second, now.connected, now.inRoom, now.chatsSent - previous.chatsSent,
+                    now.chatsReceived - previous.chatsReceived, (now.bytesReceived - previous.bytesReceived) / 1e6,
+                    now.skipped - previous.skipped, percentiles(minus(chat, previousChat)),
+                    percentiles(minus(video, previousVideo)));
+            previous.set(now);
+            previousChat = chat;
+            previousVideo = video;
+        }
+
+        void printSummary(double seconds) {
+            LoadLoop.Counters total = sum();
+            long[] chat = histogram(true);
+            long[] video = histogram(false);
+            System.out.printf("Total over %.1fs: %d chats sent (%.0f/s), %d delivered (%.0f/s), %d frames sent, %d delivered, %d errors%n",
+                    seconds, total.chatsSent, total.chatsSent / seconds, total.chatsReceived, total.chatsReceived / seconds,
+                    total.framesSent, total.framesReceived, total.errors);
+            System.out.println("Chat latency:  " + percentiles(chat));
+            System.out.println("Video latency: " + percentiles(video));
+        }
+
+        private LoadLoop.Counters sum() {
+            LoadLoop.Counters sum = new LoadLoop.Counters();
+            for (LoadLoop loop : loops) {
+                sum.add(loop.counters());
+            }
+            return sum;
+        }
+
+        private long[] histogram(boolean chat) {
+            long[] counts = new long[LatencyHistogram.BUCKETS];
+            for (LoadLoop loop : loops) {
+                (chat ? loop.chatLatency : loop.videoLatency).addTo(counts);
+            }
+            return counts;
+        }
+
+        private static long[] minus(long[] now, long[] before) {
+            long[] diff = new long[now.length];
+            for (int i = 0; i < now.length; i++) {
+                diff[i] = now[i] - before[i];
+            }
+            return diff;
+        }
+
+        private static String percentiles(long[] counts) {
+            long n = LatencyHistogram.total(counts);
+            if (n == 0) {
+                return "n=0";
+            }
+            return String.format("n=%d p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms", n,
+                    LatencyHistogram.percentile(counts, 0.50) / 1000.0,
+                    LatencyHistogram.percentile(counts, 0.99) / 1000.0,
+                    LatencyHistogram.percentile(counts, 0.999) / 1000.0,
+                    LatencyHistogram.percentile(counts, 1.0) / 1000.0);
+        }
+    }
+}
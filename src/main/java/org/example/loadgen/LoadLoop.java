@@ -0,0 +1,184 @@
+package org.example.loadgen;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One selector thread driving a share of the simulated clients: it opens their connections at the
+ * configured rate, reads and writes for them, and runs their timers every tick.
+ */
+final class LoadLoop extends Thread {
+
+    /** Written only by the loop thread; volatile so the reporter sees recent values. */
+    static final class Counters {
+        volatile long connected;
+        volatile long inRoom;
+        volatile long chatsSent;
+        volatile long chatsReceived;
+        volatile long framesSent;
+        volatile long framesReceived;
+        volatile long bytesReceived;
+        volatile long skipped;
+        volatile long errors;
+
+        void add(Counters other) {
+            connected += other.connected;
+            inRoom += other.inRoom;
+            chatsSent += other.chatsSent;
+            chatsReceived += other.chatsReceived;
+            framesSent += other.framesSent;
+            framesReceived += other.framesReceived;
+            bytesReceived += other.bytesReceived;
+            skipped += other.skipped;
+            errors += other.errors;
+        }
+
+        void set(Counters other) {
+            connected = other.connected;
+            inRoom = other.inRoom;
+            chatsSent = other.chatsSent;
+            chatsReceived = other.chatsReceived;
+            framesSent = other.framesSent;
+            framesReceived = other.framesReceived;
+            bytesReceived = other.bytesReceived;
+            skipped = other.skipped;
+            errors = other.errors;
+        }
+    }
+
+    final Counters counters = new Counters();
+    final LatencyHistogram chatLatency = new LatencyHistogram();
+    final LatencyHistogram videoLatency = new LatencyHistogram();
+
+    private final Selector selector;
+    private final List<SimClient> clients = new ArrayList<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private int connectedSoFar;
+    private volatile boolean running = true;
+
+    LoadLoop(int index) throws IOException {
+        super("loadgen-" + index);
+        this.selector = Selector.open();
+    }
+
+    void add(SimClient client) {
+        clients.add(client);
+    }
+
+    Counters counters() {
+        Counters copy = new Counters();
+        copy.set(counters);
+        return copy;
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        double connectsPerNano = LoadGenerator.CONNECT_RATE / (double) LoadGenerator.THREADS / 1e9;
+        long nextTick = start;
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                if (now >= nextTick) {
+                    long due = Math.min(clients.size(), 1 + (long) ((now - start) * connectsPerNano));
+                    while (connectedSoFar < due) {
+                        connect(clients.get(connectedSoFar++));
+                    }
+                    for (SimClient client : clients) {
+                        tick(client, now);
+                    }
+                    nextTick = now + LoadGenerator.TICK_NANOS;
+                }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextTick - System.nanoTime())));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(getName() + " failed: " + e.getMessage());
+        } finally {
+            for (SimClient client : clients) {
+                client.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Error closing selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void connect(SimClient client) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, 0, client);
+            client.attach(this, channel, key);
+            if (channel.connect(client.server)) {
+                client.onConnected();
+            } else {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException e) {
+            counters.errors++;
+            System.err.println("Client " + client.id + " could not connect: " + e.getMessage());
+        }
+    }
+
+    private void tick(SimClient client, long now) {
+        try {
+            client.tick(now);
+        } catch (IOException e) {
+            counters.errors++;
+            System.err.println("Client " + client.id + ": " + e.getMessage());
+            client.close();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        SimClient client = (SimClient) key.attachment();
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isConnectable()) {
+                ((SocketChannel) key.channel()).finishConnect();
+                client.onConnected();
+                return;
+            }
+            if (key.isReadable()) {
+                readBuffer.clear();
+                int n = ((SocketChannel) key.channel()).read(readBuffer);
+                if (n < 0) {
+                    throw new IOException("closed by server");
+                }
+                counters.bytesReceived += n;
+                client.onBytes(readBuffer.array(), n);
+            }
+            if (key.isValid() && key.isWritable()) {
+                client.flush();
+            }
+        } catch (IOException e) {
+            counters.errors++;
+            System.err.println("Client " + client.id + ": " + e.getMessage());
+            client.close();
+        }
+    }
+}
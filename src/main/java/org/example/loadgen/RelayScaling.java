@@ -0,0 +1,142 @@
+package org.example.loadgen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how the audience of one video room scales with relay edges. For 0, 1, ... maxEdges
+ * edges it starts an origin and the edges as separate server processes on loopback, then runs the
+ * {@link LoadGenerator} with one publisher on the origin and {@code viewersPerNode} viewers on
+ * every edge (on the origin itself when there are none), and prints one row per run. With the
+ * fan-out spread over the edges the origin sends each frame once per edge, so the audience served
+ * at the full frame rate should grow with the number of edges.
+ *
+ * <p>Settings are system properties: {@code relay.maxEdges} (4), {@code relay.viewersPerNode}
+ * (500), {@code relay.duration} (15 s), {@code relay.basePort} (13000), and {@code loadgen.fps}
+ * and {@code loadgen.frameBytes}, which are passed on. Needs enough cores for the processes to
+ * run side by side.
+ */
+public class RelayScaling {
+    private static final int MAX_EDGES = Integer.getInteger("relay.maxEdges", 4);
+    private static final int VIEWERS_PER_NODE = Integer.getInteger("relay.viewersPerNode", 500);
+    private static final int DURATION = Integer.getInteger("relay.duration", 15);
+    private static final int BASE_PORT = Integer.getInteger("relay.basePort", 13000);
+    private static final Pattern TOTAL = Pattern.compile("Total over ([0-9.]+)s: .* (\\d+) frames sent, (\\d+) delivered");
+    private static final Pattern VIDEO_P99 = Pattern.compile("Video latency: .*p99=([0-9.]+)ms");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.printf("%5s %8s %12s %10s %12s%n", "edges", "viewers", "frames/s", "delivered", "video p99");
+        for (int edges = 0; edges <= MAX_EDGES; edges++) {
+            run(edges);
+        }
+    }
+
+    private static void run(int edges) throws IOException, InterruptedException {
+        List<Process> servers = new ArrayList<>();
+        try {
+            servers.add(start(server(BASE_PORT, null)));
+            awaitPort(BASE_PORT);
+            StringBuilder edgeList = new StringBuilder();
+            for (int i = 1; i <= edges; i++) {
+                servers.add(start(server(BASE_PORT + i, "127.0.0.1:" + BASE_PORT)));
+                edgeList.append(edgeList.isEmpty() ? "" : ",").append("127.0.0.1:").append(BASE_PORT + i);
+            }
+            for (int i = 1; i <= edges; i++) {
+                awaitPort(BASE_PORT + i);
+            }
+            int viewers = VIEWERS_PER_NODE * Math.max(1, edges);
+            List<String> command = java();
+            command.add("-Dloadgen.port=" + BASE_PORT);
+            command.add("-Dloadgen.edges=" + edgeList);
+            command.add("-Dloadgen.clients=" + (viewers + 1));
+            command.add("-Dloadgen.roomSize=" + (viewers + 1));
+            command.add("-Dloadgen.publishers=1");
+            command.add("-Dloadgen.chatRate=0");
+            command.add("-Dloadgen.duration=" + DURATION);
+            command.add("-Dloadgen.fps=" + Integer.getInteger("loadgen.fps", 30));
+            command.add("-Dloadgen.frameBytes=" + Integer.getInteger("loadgen.frameBytes", 32 * 1024));
+            command.add(LoadGenerator.class.getName());
+            report(edges, viewers, new ProcessBuilder(command).redirectErrorStream(true).start());
+        } finally {
+            for (Process server : servers) {
+                server.destroy();
+            }
+            for (Process server : servers) {
+                server.waitFor(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static void report(int edges, int viewers, Process loadgen) throws IOException, InterruptedException {
+        double framesPerSecond = 0;
+        double delivered = 0;
+        String p99 = "-";
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(loadgen.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                Matcher total = TOTAL.matcher(line);
+                if (total.find()) {
+                    double seconds = Double.parseDouble(total.group(1));
+                    long sent = Long.parseLong(total.group(2));
+                    long received = Long.parseLong(total.group(3));
+                    framesPerSecond = received / seconds;
+                    delivered = sent == 0 ? 0 : (double) received / (sent * viewers);
+                }
+                Matcher latency = VIDEO_P99.matcher(line);
+                if (latency.find()) {
+                    p99 = latency.group(1) + "ms";
+                }
+            }
+        }
+        loadgen.waitFor();
+        System.out.printf("%5d %8d %12.0f %9.1f%% %12s%n", edges, viewers, framesPerSecond, delivered * 100, p99);
+    }
+
+    private static List<String> server(int port, String origin) {
+        List<String> command = java();
+        command.add("-Dserver.port=" + port);
+        command.add("-Dserver.metricsPort=-1");
+        if (origin != null) {
+            command.add("-Dserver.origin=" + origin);
+        }
+        command.add("org.example.server.Server");
+        command.add("nio");
+        return command;
+    }
+
+    private static List<String> java() {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        return command;
+    }
+
+    private static Process start(List<String> command) throws IOException {
+        return new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    private static void awaitPort(int port) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 200);
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("Server on port " + port + " did not start", e);
+                }
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.example.loadgen;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameDecoder;
+import org.example.protocol.FrameType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One headless client, speaking the binary protocol. Only its own {@link LoadLoop} touches it.
+ */
+final class SimClient implements FrameDecoder.Listener {
+    private enum State { IDLE, CREATING, WAITING_FOR_ROOM, IN_ROOM, CLOSED }
+
+    private static final long CHAT_INTERVAL = LoadGenerator.CHAT_RATE > 0
+            ? (long) (TimeUnit.SECONDS.toNanos(1) / LoadGenerator.CHAT_RATE) : Long.MAX_VALUE;
+    private static final long FRAME_INTERVAL = TimeUnit.SECONDS.toNanos(1) / Math.max(1, LoadGenerator.FPS);
+    private static final String PADDING = "x".repeat(Math.max(0, LoadGenerator.CHAT_BYTES));
+
+    final int id;
+    final InetSocketAddress server;
+    private final LoadGenerator.RoomState room;
+    private final boolean owner;
+    private final boolean publisher;
+    private final FrameDecoder decoder = new FrameDecoder(this);
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private long pendingBytes;
+    private LoadLoop loop;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private State state = State.IDLE;
+    private long nextChatAt;
+    private long nextFrameAt;
+
+    SimClient(int id, InetSocketAddress server, LoadGenerator.RoomState room, boolean owner, boolean publisher) {
+        this.id = id;
+        this.server = server;
+        this.room = room;
+        this.owner = owner;
+        this.publisher = publisher;
+    }
+
+    void attach(LoadLoop loop, SocketChannel channel, SelectionKey key) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    void onConnected() throws IOException {
+        loop.counters.connected++;
+        key.interestOps(SelectionKey.OP_READ);
+        ByteArrayOutputStream hello = new ByteArrayOutputStream();
+        hello.write(FrameCodec.preamble());
+        hello.write(FrameCodec.encode(FrameType.HELLO, "c" + id));
+        if (owner) {
+            hello.write(FrameCodec.encode(FrameType.CREATE_ROOM, room.name));
+            state = State.CREATING;
+        } else {
+            state = State.WAITING_FOR_ROOM;
+        }
+        send(hello.toByteArray());
+    }
+
+    void tick(long now) throws IOException {
+        switch (state) {
+            case WAITING_FOR_ROOM -> {
+                if (room.ready && now - room.readyAt >= joinDelay()) {
+                    send(FrameCodec.encode(FrameType.JOIN_ROOM, room.name));
+                    enterRoom(now);
+                }
+            }
+            case IN_ROOM -> {
+                if (now >= nextChatAt) {
+                    if (pendingBytes < LoadGenerator.MAX_PENDING_BYTES) {
+                        send(FrameCodec.encode(FrameType.CHAT, "#" + System.nanoTime() + " " + PADDING));
+                        loop.counters.chatsSent++;
+                    } else {
+                        loop.counters.skipped++;
+                    }
+                    // Fall behind by at most one interval instead of bursting to catch up
+                    nextChatAt = Math.max(nextChatAt + CHAT_INTERVAL, now);
+                }
+                if (publisher && now >= nextFrameAt) {
+                    if (pendingBytes < LoadGenerator.MAX_PENDING_BYTES) {
+                        sendFrame();
+                        loop.counters.framesSent++;
+                    } else {
+                        loop.counters.skipped++;
+                    }
+                    nextFrameAt = Math.max(nextFrameAt + FRAME_INTERVAL, now);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /** Viewers on an edge wait for the new room to reach the edge's directory. */
+    private long joinDelay() {
+        return server.equals(LoadGenerator.ORIGIN) ? 0 : LoadGenerator.EDGE_JOIN_DELAY_NANOS;
+    }
+
+    private void enterRoom(long now) {
+        state = State.IN_ROOM;
+        loop.counters.inRoom++;
+        nextChatAt = now + (CHAT_INTERVAL == Long.MAX_VALUE ? CHAT_INTERVAL : ThreadLocalRandom.current().nextLong(CHAT_INTERVAL));
+        nextFrameAt = now;
+    }
+
+    private void sendFrame() throws IOException {
+        byte[] frame = new byte[FrameCodec.HEADER_LENGTH + Math.max(8, LoadGenerator.FRAME_BYTES)];
+        FrameCodec.writeHeader(frame, 0, FrameType.VIDEO_FRAME, frame.length - FrameCodec.HEADER_LENGTH);
+        FrameCodec.putLong(frame, FrameCodec.HEADER_LENGTH, System.nanoTime());
+        send(frame);
+    }
+
+    void onBytes(byte[] buf, int len) throws IOException {
+        decoder.decode(buf, 0, len);
+    }
+
+    @Override
+    public void onFrame(byte type, byte[] block, int off, int len) {
+        switch (type) {
+            case FrameType.CHAT -> {
+                long sentAt = parseTimestamp(block, off, off + len);
+                if (sentAt > 0) {
+                    loop.chatLatency.recordNanos(System.nanoTime() - sentAt);
+                    loop.counters.chatsReceived++;
+                }
+            }
+            case FrameType.VIDEO_FRAME -> {
+                if (len >= 8) {
+                    loop.videoLatency.recordNanos(System.nanoTime() - FrameCodec.getLong(block, off));
+                    loop.counters.framesReceived++;
+                }
+            }
+            case FrameType.INFO -> {
+                if (state == State.CREATING) {
+                    room.readyAt = System.nanoTime();
+                    room.ready = true;
+                    enterRoom(System.nanoTime());
+                }
+            }
+            case FrameType.ERROR -> {
+                loop.counters.errors++;
+                System.err.println("Client " + id + ": " + FrameCodec.text(block, off, len));
+            }
+            default -> {
+            }
+        }
+    }
+
+    /** Chat lines we sent look like {@code "c12: #<nanoTime> xxx"}; anything else returns 0. */
+    private static long parseTimestamp(byte[] buf, int from, int to) {
+        int i = from;
+        while (i < to && buf[i] != '#') {
+            i++;
+        }
+        long value = 0;
+        for (i++; i < to && buf[i] >= '0' && buf[i] <= '9'; i++) {
+            value = value * 10 + (buf[i] - '0');
+        }
+        return value;
+    }
+
+    private void send(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (pending.isEmpty()) {
+            channel.write(buffer);
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        pending.add(buffer);
+        pendingBytes += buffer.remaining();
+    }
+
+    void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            ByteBuffer head = pending.peek();
+            int before = head.remaining();
+            channel.write(head);
+            pendingBytes -= before - head.remaining();
+            if (head.hasRemaining()) {
+                return;
+            }
+            pending.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    void close() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.IN_ROOM) {
+            loop.counters.inRoom--;
+        }
+        if (state != State.IDLE) {
+            loop.counters.connected--;
+        }
+        state = State.CLOSED;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing client " + id + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.media;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Frames from a camera device or a video file, both read through {@link VideoCapture}. Files are
+ * rewound when they run out, so a short clip can stand in for a live feed.
+ */
+final class CaptureSource implements FrameSource {
+    private final VideoCapture capture;
+    private final boolean loop;
+
+    private CaptureSource(VideoCapture capture, boolean loop) {
+        this.capture = capture;
+        this.loop = loop;
+    }
+
+    static CaptureSource camera(int index, int width, int height) {
+        VideoCapture capture = new VideoCapture(index);
+        capture.set(Videoio.CAP_PROP_FRAME_WIDTH, width);
+        capture.set(Videoio.CAP_PROP_FRAME_HEIGHT, height);
+        return new CaptureSource(capture, false);
+    }
+
+    static CaptureSource file(String path) {
+        return new CaptureSource(new VideoCapture(path), true);
+    }
+
+    boolean isOpened() {
+        return capture.isOpened();
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        if (capture.read(frame)) {
+            return true;
+        }
+        if (loop) {
+            capture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+            return capture.read(frame);
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        capture.release();
+    }
+}
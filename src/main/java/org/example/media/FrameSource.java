@@ -0,0 +1,36 @@
+package org.example.media;
+
+import org.opencv.core.Mat;
+
+/**
+ * Produces raw BGR frames for a publisher.
+ */
+public interface FrameSource extends AutoCloseable {
+
+    /** Reads the next frame into {@code frame}; false if no frame could be produced. */
+    boolean read(Mat frame);
+
+    @Override
+    void close();
+
+    /**
+     * Opens a source from a spec: {@code camera:<index>}, {@code file:<path>} (looped) or
+     * {@code synthetic}. Capture sources fall back to synthetic if they cannot be opened.
+     */
+    static FrameSource open(String spec, int width, int height) {
+        OpenCv.load();
+        if (spec.startsWith("camera:") || spec.startsWith("file:")) {
+            CaptureSource source = spec.startsWith("camera:")
+                    ? CaptureSource.camera(Integer.parseInt(spec.substring("camera:".length())), width, height)
+                    : CaptureSource.file(spec.substring("file:".length()));
+            if (source.isOpened()) {
+                return source;
+            }
+            source.close();
+            System.err.println("Could not open video source " + spec + ", using a synthetic source instead.");
+        } else if (!spec.equals("synthetic")) {
+            throw new IllegalArgumentException("Unknown video source: " + spec);
+        }
+        return new SyntheticSource(width, height);
+    }
+}
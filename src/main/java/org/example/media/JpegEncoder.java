@@ -0,0 +1,27 @@
+package org.example.media;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Compresses frames to JPEG with {@link Imgcodecs#imencode}. Not thread-safe: the native output
+ * buffer is reused between calls.
+ */
+public final class JpegEncoder {
+    private final MatOfInt params;
+    private final MatOfByte buffer = new MatOfByte();
+
+    public JpegEncoder(int quality) {
+        OpenCv.load();
+        params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+    }
+
+    public byte[] encode(Mat frame) {
+        if (!Imgcodecs.imencode(".jpg", frame, buffer, params)) {
+            throw new IllegalStateException("JPEG encoding failed");
+        }
+        return buffer.toArray();
+    }
+}
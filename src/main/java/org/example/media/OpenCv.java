@@ -0,0 +1,18 @@
+package org.example.media;
+
+/**
+ * Loads the native OpenCV library bundled in the openpnp jar, once per process.
+ */
+public final class OpenCv {
+    private static boolean loaded;
+
+    private OpenCv() {
+    }
+
+    public static synchronized void load() {
+        if (!loaded) {
+            nu.pattern.OpenCV.loadLocally();
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.media;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Encodes each frame as several JPEG quality layers. Layer 0 is the frame at full size and the
+ * configured quality; every further layer halves the width and height and lowers the quality, so
+ * it costs roughly a quarter of the one before.
+ *
+ * <p>With a tile size set, every layer is sent as {@link TileEncoder} keyframes and deltas
+ * instead, all layers starting a new keyframe on the same frame every {@code keyframeInterval}
+ * frames. Not thread-safe.
+ */
+public final class SimulcastEncoder {
+    private static final int QUALITY_STEP = 15;
+    private static final int MIN_QUALITY = 30;
+
+    private final JpegEncoder[] encoders;
+    private final TileEncoder[] tileEncoders;
+    private final int keyframeInterval;
+    private final Mat[] scaled;
+    private final Size size = new Size();
+    private int key = -1;
+    private int seq;
+
+    public SimulcastEncoder(int layers, int quality) {
+        this(layers, quality, 0, 1);
+    }
+
+    /** A tile size of 0 sends plain JPEGs. */
+    public SimulcastEncoder(int layers, int quality, int tileSize, int keyframeInterval) {
+        encoders = new JpegEncoder[layers];
+        tileEncoders = tileSize > 0 ? new TileEncoder[layers] : null;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        scaled = new Mat[layers];
+        for (int i = 0; i < layers; i++) {
+            int layerQuality = Math.max(MIN_QUALITY, quality - QUALITY_STEP * i);
+            encoders[i] = new JpegEncoder(layerQuality);
+            if (tileEncoders != null) {
+                tileEncoders[i] = new TileEncoder(tileSize, layerQuality);
+            }
+            scaled[i] = i == 0 ? null : new Mat();
+        }
+    }
+
+    public int layers() {
+        return encoders.length;
+    }
+
+    /** One JPEG or tiled frame per layer, best first. Each layer is scaled from the one above it. */
+    public byte[][] encode(Mat frame) {
+        if (tileEncoders != null) {
+            seq = (seq + 1) % keyframeInterval;
+            if (key < 0 || seq == 0) {
+                seq = 0;
+                key = (key + 1) & 0xFFFF;
+            }
+        }
+        byte[][] jpegs = new byte[encoders.length][];
+        Mat source = frame;
+        for (int i = 0; i < encoders.length; i++) {
+            if (i > 0) {
+                size.width = Math.max(1, source.cols() / 2);
+                size.height = Math.max(1, source.rows() / 2);
+                Imgproc.resize(source, scaled[i], size, 0, 0, Imgproc.INTER_AREA);
+                source = scaled[i];
+            }
+            jpegs[i] = tileEncoders != null ? tileEncoders[i].encode(source, key, seq) : encoders[i].encode(source);
+        }
+        return jpegs;
+    }
+
+    public void release() {
+        if (tileEncoders != null) {
+            for (TileEncoder encoder : tileEncoders) {
+                encoder.release();
+            }
+        }
+        for (Mat mat : scaled) {
+            if (mat != null) {
+                mat.release();
+            }
+        }
+    }
+}
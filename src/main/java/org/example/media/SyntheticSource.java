@@ -0,0 +1,49 @@
+package org.example.media;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * A moving test pattern with a frame counter, for testing without a camera.
+ */
+final class SyntheticSource implements FrameSource {
+    private static final Scalar BACKGROUND = new Scalar(40, 40, 40);
+    private static final Scalar BOX = new Scalar(40, 160, 240);
+    private static final Scalar TEXT = new Scalar(255, 255, 255);
+
+    private final int width;
+    private final int height;
+    private final Point topLeft = new Point();
+    private final Point bottomRight = new Point();
+    private final Point textOrigin;
+    private long frameNumber;
+
+    SyntheticSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.textOrigin = new Point(20, height - 30);
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        frame.create(height, width, CvType.CV_8UC3);
+        frame.setTo(BACKGROUND);
+        int box = height / 4;
+        int x = (int) (frameNumber * 8 % Math.max(1, width - box));
+        topLeft.x = x;
+        topLeft.y = (height - box) / 2.0;
+        bottomRight.x = x + box;
+        bottomRight.y = (height + box) / 2.0;
+        Imgproc.rectangle(frame, topLeft, bottomRight, BOX, -1);
+        Imgproc.putText(frame, "frame " + frameNumber, textOrigin, Imgproc.FONT_HERSHEY_SIMPLEX, 1.0, TEXT, 2);
+        frameNumber++;
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
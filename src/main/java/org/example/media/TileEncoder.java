@@ -0,0 +1,113 @@
+package org.example.media;
+
+import org.example.protocol.TileFrame;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Encodes frames as {@link TileFrame} keyframes and deltas. It keeps the picture viewers hold
+ * after the last frame sent, and a delta carries only the tiles whose mean absolute difference
+ * from that picture exceeds {@link #THRESHOLD}; sensor noise below it is never sent, and because
+ * the comparison is against what was sent rather than the previous capture, slow drift still
+ * gets sent once it adds up. Tiles are compared and compressed in parallel on the common pool.
+ * Not thread-safe.
+ */
+public final class TileEncoder {
+    // Mean absolute difference per channel value, out of 255
+    private static final double THRESHOLD = 2.0;
+
+    private final int tileSize;
+    private final MatOfInt params;
+    private final JpegEncoder keyframeEncoder;
+    private final Mat reference = new Mat();
+
+    public TileEncoder(int tileSize, int quality) {
+        OpenCv.load();
+        this.tileSize = tileSize;
+        this.params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+        this.keyframeEncoder = new JpegEncoder(quality);
+    }
+
+    /**
+     * Encodes {@code frame} as frame {@code seq} after keyframe {@code key}; seq 0 asks for a
+     * keyframe. A change of frame size also forces one.
+     */
+    public byte[] encode(Mat frame, int key, int seq) {
+        if (seq == 0 || reference.cols() != frame.cols() || reference.rows() != frame.rows()) {
+            frame.copyTo(reference);
+            byte[] jpeg = keyframeEncoder.encode(frame);
+            ByteBuffer out = header(TileFrame.KEYFRAME, key, seq, frame, 1, TileFrame.ENTRY_HEADER_LENGTH + jpeg.length);
+            out.putShort((short) 0).putInt(jpeg.length).put(jpeg);
+            return out.array();
+        }
+        int columns = (frame.cols() + tileSize - 1) / tileSize;
+        int rows = (frame.rows() + tileSize - 1) / tileSize;
+        byte[][] tiles = new byte[columns * rows][];
+        IntStream.range(0, tiles.length).parallel().forEach(i -> tiles[i] = encodeTile(frame, tile(i, columns, frame)));
+        int count = 0;
+        int length = 0;
+        for (byte[] tile : tiles) {
+            if (tile != null) {
+                count++;
+                length += TileFrame.ENTRY_HEADER_LENGTH + tile.length;
+            }
+        }
+        ByteBuffer out = header(0, key, seq, frame, count, length);
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                out.putShort((short) i).putInt(tiles[i].length).put(tiles[i]);
+            }
+        }
+        return out.array();
+    }
+
+    private Rect tile(int index, int columns, Mat frame) {
+        int x = index % columns * tileSize;
+        int y = index / columns * tileSize;
+        return new Rect(x, y, Math.min(tileSize, frame.cols() - x), Math.min(tileSize, frame.rows() - y));
+    }
+
+    /** Returns null if the tile has not changed enough to send; otherwise updates the reference. */
+    private byte[] encodeTile(Mat frame, Rect rect) {
+        Mat current = frame.submat(rect);
+        Mat sent = reference.submat(rect);
+        try {
+            double difference = Core.norm(current, sent, Core.NORM_L1) / (rect.area() * frame.channels());
+            if (difference <= THRESHOLD) {
+                return null;
+            }
+            MatOfByte jpeg = new MatOfByte();
+            try {
+                if (!Imgcodecs.imencode(".jpg", current, jpeg, params)) {
+                    throw new IllegalStateException("JPEG encoding failed");
+                }
+                current.copyTo(sent);
+                return jpeg.toArray();
+            } finally {
+                jpeg.release();
+            }
+        } finally {
+            current.release();
+            sent.release();
+        }
+    }
+
+    private ByteBuffer header(int flags, int key, int seq, Mat frame, int count, int entriesLength) {
+        return ByteBuffer.allocate(TileFrame.HEADER_LENGTH + entriesLength)
+                .put(TileFrame.MAGIC_0).put(TileFrame.MAGIC_1).put((byte) flags)
+                .putShort((short) key).putShort((short) seq)
+                .putShort((short) frame.cols()).putShort((short) frame.rows())
+                .putShort((short) tileSize).putShort((short) count);
+    }
+
+    public void release() {
+        reference.release();
+    }
+}
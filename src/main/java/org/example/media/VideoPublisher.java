@@ -0,0 +1,71 @@
+package org.example.media;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Captures, encodes and sends frames at a fixed rate on its own thread. If a frame takes longer
+ * than its slot the schedule is reset rather than caught up, so a slow encoder lowers the frame
+ * rate instead of building a backlog. Every frame is encoded into all simulcast layers, best first.
+ */
+public final class VideoPublisher implements Runnable {
+
+    public interface FrameSink {
+        void sendFrame(byte[][] layers) throws IOException;
+    }
+
+    private final FrameSource source;
+    private final SimulcastEncoder encoder;
+    private final FrameSink sink;
+    private final long frameIntervalNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    public VideoPublisher(FrameSource source, SimulcastEncoder encoder, FrameSink sink, int fps) {
+        this.source = source;
+        this.encoder = encoder;
+        this.sink = sink;
+        this.frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / fps;
+    }
+
+    public synchronized void start() {
+        running = true;
+        thread = new Thread(this, "video-publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        Mat frame = new Mat();
+        long next = System.nanoTime();
+        try {
+            while (running && source.read(frame)) {
+                sink.sendFrame(encoder.encode(frame));
+                next += frameIntervalNanos;
+                long now = System.nanoTime();
+                if (next < now) {
+                    next = now;
+                } else {
+                    LockSupport.parkNanos(next - now);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Video publishing stopped: " + e.getMessage());
+        } finally {
+            frame.release();
+            encoder.release();
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression of server output, switched on by a binary client sending
+ * {@code CAPABILITIES} with {@link FrameCodec#CAPABILITY_DEFLATE} before its hello. Such a client may then receive
+ * {@code COMPRESSED} frames, whose payload is a sequence of ordinary frames compressed as one raw
+ * deflate stream with {@link #DICTIONARY} preset. Every {@code COMPRESSED} frame stands alone, so
+ * the server compresses a batch once and sends the same bytes to any number of clients. Room
+ * chat and notices in a batch are {@code SEQUENCED} frames for clients that can also resume, and
+ * plain frames for the others.
+ */
+public final class Compression {
+    /**
+     * Frame headers and phrases that recur in chat and control traffic. Deflate refers back into
+     * this as if it had just been sent, so even a batch of a few short lines compresses; the most
+     * common material is at the end, where references are shortest.
+     */
+    public static final byte[] DICTIONARY = dictionary();
+
+    private Compression() {
+    }
+
+    private static byte[] dictionary() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String[] phrases = {
+                "Lost the connection to the origin of this room.", "The recording has ended.",
+                "The room is closing.", " joined (", ", ...), ", " left, ", " watching",
+                " has left the room.", " has joined the room.",
+                "the you and that have this with for not are was but what just what's lol yes no ok ",
+        };
+        for (String phrase : phrases) {
+            byte[] text = phrase.getBytes(StandardCharsets.UTF_8);
+            out.write(FrameType.NOTICE);
+            out.write(new byte[] {0, 0, 0}, 0, 3);
+            out.write(text.length);
+            out.writeBytes(text);
+        }
+        // Chat frames of typical lengths, "name: " prefixes included
+        for (int length = 8; length < 96; length += 8) {
+            out.write(FrameType.CHAT);
+            out.write(new byte[] {0, 0, 0}, 0, 3);
+            out.write(length);
+            out.writeBytes(": ".getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Compresses {@code len} bytes with a reset deflater, or returns null if that would not make
+     * them smaller.
+     */
+    public static byte[] deflate(Deflater deflater, byte[] src, int off, int len) {
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(src, off, len);
+        deflater.finish();
+        byte[] out = new byte[len];
+        int n = 0;
+        while (!deflater.finished() && n < out.length) {
+            n += deflater.deflate(out, n, out.length - n);
+        }
+        if (!deflater.finished() || n >= len) {
+            return null;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Decompresses a {@code COMPRESSED} payload with a raw-deflate inflater. */
+    public static byte[] inflate(Inflater inflater, byte[] src, int off, int len) throws DataFormatException {
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(src, off, len);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(len * 4);
+        byte[] chunk = new byte[Math.max(256, len * 4)];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(chunk);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated compressed frame");
+            }
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,196 @@
+package org.example.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary protocol, shared by client and server. A binary client opens with the two-byte preamble
+ * {@code MAGIC VERSION}; after that every message in either direction is a frame:
+ *
+ * <pre>
+ *   type:u8  length:u32 (big-endian)  payload:length bytes
+ * </pre>
+ *
+ * MAGIC is a UTF-8 continuation byte, which can never start a text-protocol line, so a server can
+ * tell the two protocols apart from the first byte. Text payloads are UTF-8.
+ *
+ * <p>The room list is versioned. {@code ROOM_LIST} is a snapshot, {@code seq:u64} followed by
+ * {@code length:u16 name} entries; {@code ROOM_LIST_DELTA} is {@code seq:u64} followed by
+ * {@code added:u8 length:u16 name} entries and applies only on top of version {@code seq - 1}.
+ *
+ * <p>A simulcast publisher sends each captured frame as several {@code VIDEO_LAYER} frames,
+ * {@code layer:u8} followed by the JPEG, layer 0 being the best quality.
+ *
+ * <p>Logged chat comes back as {@code CHAT_HISTORY}, {@code seq:u64} followed by the line, in
+ * answer to {@code HISTORY_REQUEST} ({@code from:u64 count:u32}) and on joining a room.
+ *
+ * <p>A client that sends {@code CAPABILITIES} may be sent {@code COMPRESSED} frames, each holding
+ * ordinary frames; see {@link Compression}. One that can resume is given a {@code SESSION} token
+ * and receives room chat and notices as {@code SEQUENCED}, numbered per room, with a bare
+ * {@code SEQUENCED} on entering a room to say where its numbering is; after losing its
+ * connection it sends {@code RESUME} with the token and the last sequence number it saw instead
+ * of {@code HELLO}, and is put back in its room and sent what it missed. One that asks for the
+ * media transport is sent a {@code MEDIA} token and port, and video then goes as
+ * {@link MediaPacket}s over UDP.
+ */
+public final class FrameCodec {
+    public static final byte MAGIC = (byte) 0xB5;
+    public static final byte VERSION = 1;
+    public static final int HEADER_LENGTH = 5;
+    public static final int MAX_PAYLOAD_LENGTH = 8 * 1024 * 1024;
+
+    // CAPABILITIES flags
+    public static final int CAPABILITY_DEFLATE = 1;
+    public static final int CAPABILITY_RESUME = 2;
+    public static final int CAPABILITY_MEDIA = 4;
+    // RESUME flags
+    public static final int RESUME_OWNER = 1;
+
+    private FrameCodec() {
+    }
+
+    public static byte[] preamble() {
+        return new byte[] {MAGIC, VERSION};
+    }
+
+    public static void writeHeader(byte[] dst, int off, byte type, int length) {
+        dst[off] = type;
+        dst[off + 1] = (byte) (length >>> 24);
+        dst[off + 2] = (byte) (length >>> 16);
+        dst[off + 3] = (byte) (length >>> 8);
+        dst[off + 4] = (byte) length;
+    }
+
+    public static byte[] encode(byte type, byte[] payload, int off, int len) {
+        byte[] frame = new byte[HEADER_LENGTH + len];
+        writeHeader(frame, 0, type, len);
+        System.arraycopy(payload, off, frame, HEADER_LENGTH, len);
+        return frame;
+    }
+
+    public static byte[] encode(byte type, String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        return encode(type, payload, 0, payload.length);
+    }
+
+    public static void putLong(byte[] dst, int off, long value) {
+        for (int i = 7; i >= 0; i--) {
+            dst[off + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    public static int getInt(byte[] src, int off) {
+        return ((src[off] & 0xFF) << 24) | ((src[off + 1] & 0xFF) << 16) | ((src[off + 2] & 0xFF) << 8) | (src[off + 3] & 0xFF);
+    }
+
+    public static long getLong(byte[] src, int off) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (src[off + i] & 0xFF);
+        }
+        return value;
+    }
+
+    public static byte[] encodeResume(long token, long lastSeq, boolean owner, String name, String room) {
+        byte[] names = encodeNames(List.of(name, room));
+        byte[] payload = new byte[17 + names.length];
+        putLong(payload, 0, token);
+        putLong(payload, 8, lastSeq);
+        payload[16] = (byte) (owner ? RESUME_OWNER : 0);
+        System.arraycopy(names, 0, payload, 17, names.length);
+        return encode(FrameType.RESUME, payload, 0, payload.length);
+    }
+
+    public static String text(byte[] buf, int off, int len) {
+        return new String(buf, off, len, StandardCharsets.UTF_8);
+    }
+
+    public static byte[] encodeNames(Collection<String> names) {
+        List<byte[]> encoded = new ArrayList<>(names.size());
+        int length = 0;
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Name too long: " + name);
+            }
+            encoded.add(bytes);
+            length += 2 + bytes.length;
+        }
+        byte[] payload = new byte[length];
+        int pos = 0;
+        for (byte[] bytes : encoded) {
+            payload[pos++] = (byte) (bytes.length >>> 8);
+            payload[pos++] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, payload, pos, bytes.length);
+            pos += bytes.length;
+        }
+        return payload;
+    }
+
+    public static byte[] encodeRoomList(long seq, Collection<String> names) {
+        byte[] encoded = encodeNames(names);
+        byte[] payload = new byte[8 + encoded.length];
+        putLong(payload, 0, seq);
+        System.arraycopy(encoded, 0, payload, 8, encoded.length);
+        return payload;
+    }
+
+    public static byte[] encodeRoomDelta(long seq, Collection<String> added, Collection<String> removed) {
+        byte[] addedNames = encodeNames(added);
+        byte[] removedNames = encodeNames(removed);
+        byte[] payload = new byte[8 + added.size() + addedNames.length + removed.size() + removedNames.length];
+        putLong(payload, 0, seq);
+        int pos = putEntries(payload, 8, addedNames, (byte) 1);
+        putEntries(payload, pos, removedNames, (byte) 0);
+        return payload;
+    }
+
+    /** Splits a delta payload into the two lists and returns its sequence number. */
+    public static long decodeRoomDelta(byte[] buf, int off, int len, List<String> added, List<String> removed) {
+        long seq = getLong(buf, off);
+        int pos = off + 8;
+        int end = off + len;
+        while (pos + 3 <= end) {
+            boolean isAdded = buf[pos] != 0;
+            int length = ((buf[pos + 1] & 0xFF) << 8) | (buf[pos + 2] & 0xFF);
+            pos += 3;
+            if (pos + length > end) {
+                break;
+            }
+            (isAdded ? added : removed).add(text(buf, pos, length));
+            pos += length;
+        }
+        return seq;
+    }
+
+    /** Copies {@code length:u16 name} entries from {@code names}, putting {@code op} in front of each. */
+    private static int putEntries(byte[] dst, int pos, byte[] names, byte op) {
+        int off = 0;
+        while (off < names.length) {
+            int entry = 2 + (((names[off] & 0xFF) << 8) | (names[off + 1] & 0xFF));
+            dst[pos++] = op;
+            System.arraycopy(names, off, dst, pos, entry);
+            pos += entry;
+            off += entry;
+        }
+        return pos;
+    }
+
+    public static List<String> decodeNames(byte[] buf, int off, int len) {
+        List<String> names = new ArrayList<>();
+        int end = off + len;
+        while (off + 2 <= end) {
+            int length = ((buf[off] & 0xFF) << 8) | (buf[off + 1] & 0xFF);
+            off += 2;
+            if (off + length > end) {
+                break;
+            }
+            names.add(text(buf, off, length));
+            off += length;
+        }
+        return names;
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.protocol;
+
+import java.io.IOException;
+
+/**
+ * Splits an incoming byte stream (after the preamble) into binary frames. Each frame is delivered
+ * as one block with its header still in front of the payload, so a relay can forward it as-is.
+ *
+ * <p>By default every block is a new array the listener may keep. A listener that copies whatever
+ * it keeps can instead have frames up to {@code reuseBytes} decoded into one reused array, which
+ * is then only valid during the call and may be longer than the frame.
+ */
+public final class FrameDecoder {
+
+    public interface Listener {
+        void onFrame(byte type, byte[] block, int payloadOffset, int payloadLength);
+    }
+
+    private final Listener listener;
+    private final int reuseBytes;
+    private byte[] reusable;
+    private final byte[] header = new byte[FrameCodec.HEADER_LENGTH];
+    private int headerFilled;
+    private byte[] frame;
+    private int frameLength;
+    private int frameFilled;
+
+    public FrameDecoder(Listener listener) {
+        this(listener, 0);
+    }
+
+    public FrameDecoder(Listener listener, int reuseBytes) {
+        this.listener = listener;
+        this.reuseBytes = reuseBytes;
+    }
+
+    public void decode(byte[] buf, int off, int len) throws IOException {
+        int end = off + len;
+        int pos = off;
+        while (pos < end) {
+            if (frame == null) {
+                int count = Math.min(FrameCodec.HEADER_LENGTH - headerFilled, end - pos);
+                System.arraycopy(buf, pos, header, headerFilled, count);
+                headerFilled += count;
+                pos += count;
+                if (headerFilled < FrameCodec.HEADER_LENGTH) {
+                    return;
+                }
+                headerFilled = 0;
+                int length = ((header[1] & 0xFF) << 24) | ((header[2] & 0xFF) << 16)
+                        | ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+                if (length < 0 || length > FrameCodec.MAX_PAYLOAD_LENGTH) {
+                    throw new IOException("Frame of " + Integer.toUnsignedString(length) + " bytes exceeds "
+                            + FrameCodec.MAX_PAYLOAD_LENGTH);
+                }
+                frameLength = FrameCodec.HEADER_LENGTH + length;
+                if (frameLength > reuseBytes) {
+                    frame = new byte[frameLength];
+                } else {
+                    if (reusable == null || reusable.length < frameLength) {
+                        reusable = new byte[frameLength];
+                    }
+                    frame = reusable;
+                }
+                System.arraycopy(header, 0, frame, 0, FrameCodec.HEADER_LENGTH);
+                frameFilled = FrameCodec.HEADER_LENGTH;
+            } else {
+                int count = Math.min(frameLength - frameFilled, end - pos);
+                System.arraycopy(buf, pos, frame, frameFilled, count);
+                frameFilled += count;
+                pos += count;
+            }
+            if (frameFilled == frameLength) {
+                byte[] block = frame;
+                frame = null;
+                listener.onFrame(block[0], block, FrameCodec.HEADER_LENGTH, frameLength - FrameCodec.HEADER_LENGTH);
+            }
+        }
+    }
+}
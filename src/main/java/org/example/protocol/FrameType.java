@@ -0,0 +1,65 @@
+package org.example.protocol;
+
+/**
+ * Type byte of a binary protocol frame. Plain byte constants so dispatch is a single switch.
+ */
+public final class FrameType {
+    // client -> server
+    public static final byte HELLO = 1;
+    public static final byte ROOM_LIST_REQUEST = 2;
+    public static final byte CREATE_ROOM = 3;
+    public static final byte JOIN_ROOM = 4;
+    public static final byte LEAVE_ROOM = 5;
+    public static final byte CLOSE_ROOM = 6;
+    // instead of HELLO, from a server relaying this one's rooms to its own clients
+    public static final byte RELAY_HELLO = 7;
+    // from:u64 count:u32; asks for up to count logged chat lines from sequence number from on, or
+    // the last count lines if from is 0
+    public static final byte HISTORY_REQUEST = 8;
+    // "<recording> [speed] [startSeconds]" starts playing a recording in a new read-only room and
+    // joins the sender to it; an empty payload asks for the list of recordings instead
+    public static final byte PLAYBACK = 9;
+
+    // both directions
+    public static final byte CHAT = 10;
+    public static final byte VIDEO_FRAME = 11;
+
+    // client -> server: one quality layer of a simulcast frame, relayed to viewers as VIDEO_FRAME
+    public static final byte VIDEO_LAYER = 12;
+    // client -> server, before HELLO: flags:u8 of optional features, FrameCodec.CAPABILITY_*
+    public static final byte CAPABILITIES = 13;
+    // client -> server, instead of HELLO: token:u64 lastSeq:u64 flags:u8 followed by the name and
+    // room as length:u16 entries; flag 1 = the client owned the room
+    public static final byte RESUME = 14;
+
+    // server -> client
+    public static final byte INFO = 20;
+    public static final byte NOTICE = 21;
+    public static final byte ERROR = 22;
+    public static final byte ROOM_LIST = 23;
+    public static final byte ROOM_LIST_DELTA = 24;
+    // seq:u64 followed by a chat line from the room's log
+    public static final byte CHAT_HISTORY = 25;
+    // frames deflated together, for clients that asked for compression
+    public static final byte COMPRESSED = 26;
+    // token:u64 to resume this session with after a disconnect
+    public static final byte SESSION = 27;
+    // seq:u64 followed by a complete frame: a room's chat line or notice with its place in the room;
+    // seq:u64 alone on entering a room: the numbering there continues after seq
+    public static final byte SEQUENCED = 28;
+    // token:u64 port:u16 of the UDP media transport, for clients that asked for it
+    public static final byte MEDIA = 29;
+
+    private FrameType() {
+    }
+
+    /** Prefix a text-only client sees in front of a message of this type. */
+    public static String textPrefix(byte type) {
+        return switch (type) {
+            case NOTICE -> "NOTICE: ";
+            case ERROR -> "ERROR: ";
+            case ROOM_LIST -> "ROOM_LIST:";
+            default -> "";
+        };
+    }
+}
@@ -0,0 +1,202 @@
+package org.example.protocol;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Puts {@link MediaPacket}s back together into frames and hands them on in frame order. A missing
+ * data packet is rebuilt from its group's parity when that is the only one missing. A frame that is
+ * still incomplete, or still has an earlier frame outstanding, {@code delay} after its first packet
+ * arrived is given up on: frames are never waited for longer than that and never asked for again.
+ * Data packets of frames older than the last one handed on are dropped as late.
+ *
+ * <p>Not thread-safe; one receiving thread feeds it.
+ */
+public final class JitterBuffer {
+    // Frames in progress beyond these push out the oldest, so a stream of lost frames cannot pile up
+    private static final int MAX_PENDING = 64;
+    private static final long MAX_PENDING_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_FRAME_LENGTH = FrameCodec.HEADER_LENGTH + FrameCodec.MAX_PAYLOAD_LENGTH;
+
+    public interface Listener {
+        void onFrame(byte[] frame);
+
+        default void onRecovered() {
+        }
+
+        default void onLate() {
+        }
+
+        default void onLost(int frames) {
+        }
+    }
+
+    private static final class Partial {
+        final long arrival;
+        final int length;
+        final int count;
+        final int chunk;
+        final int group;
+        final byte[] frame;
+        final boolean[] have;
+        final byte[][] parity;
+        int received;
+
+        Partial(long arrival, int length, int count, int chunk, int group) {
+            this.arrival = arrival;
+            this.length = length;
+            this.count = count;
+            this.chunk = chunk;
+            this.group = group;
+            this.frame = new byte[length];
+            this.have = new boolean[count];
+            this.parity = new byte[group == 0 ? 0 : (count + group - 1) / group][];
+        }
+
+        boolean complete() {
+            return received == count;
+        }
+
+        int dataLength(int index) {
+            return Math.min(chunk, length - index * chunk);
+        }
+
+        boolean matches(int length, int count, int chunk, int group) {
+            return this.length == length && this.count == count && this.chunk == chunk && this.group == group;
+        }
+    }
+
+    private final long delayNanos;
+    private final Listener listener;
+    private final TreeMap<Integer, Partial> pending = new TreeMap<>();
+    private long pendingBytes;
+    private boolean started;
+    // The next frame to hand on
+    private int next;
+
+    public JitterBuffer(long delayNanos, Listener listener) {
+        this.delayNanos = delayNanos;
+        this.listener = listener;
+    }
+
+    /** One received data or parity packet; {@code packet} is not kept. Returns false if it is malformed. */
+    public boolean offer(byte[] packet, int len, long now) {
+        if (len < MediaPacket.HEADER_LENGTH) {
+            return false;
+        }
+        int seq = MediaPacket.frame(packet);
+        int length = MediaPacket.length(packet);
+        int index = MediaPacket.index(packet);
+        int count = MediaPacket.count(packet);
+        int chunk = MediaPacket.chunk(packet);
+        int group = MediaPacket.group(packet);
+        boolean parity = (MediaPacket.flags(packet) & MediaPacket.PARITY) != 0;
+        if (chunk == 0 || length <= 0 || length > MAX_FRAME_LENGTH || count != (length + chunk - 1) / chunk
+                || (parity ? group == 0 || index >= (count + group - 1) / group : index >= count)
+                || len - MediaPacket.HEADER_LENGTH > chunk) {
+            return false;
+        }
+        if (started && seq - next < 0) {
+            // A frame's parity often arrives after its data has completed it
+            if (!parity) {
+                listener.onLate();
+            }
+            return true;
+        }
+        if (!started) {
+            started = true;
+            next = seq;
+        }
+        Partial partial = pending.get(seq);
+        if (partial == null) {
+            partial = new Partial(now, length, count, chunk, group);
+            pending.put(seq, partial);
+            pendingBytes += length;
+        } else if (!partial.matches(length, count, chunk, group)) {
+            return false;
+        }
+        int payloadLength = len - MediaPacket.HEADER_LENGTH;
+        if (parity) {
+            if (partial.parity[index] == null) {
+                partial.parity[index] = new byte[chunk];
+                System.arraycopy(packet, MediaPacket.HEADER_LENGTH, partial.parity[index], 0, payloadLength);
+                recover(partial, index);
+            }
+        } else if (!partial.have[index]) {
+            if (payloadLength != partial.dataLength(index)) {
+                return false;
+            }
+            System.arraycopy(packet, MediaPacket.HEADER_LENGTH, partial.frame, index * chunk, payloadLength);
+            partial.have[index] = true;
+            partial.received++;
+            if (group > 0) {
+                recover(partial, index / group);
+            }
+        }
+        poll(now);
+        return true;
+    }
+
+    /** Rebuilds the one data packet a group is missing, if it has its parity and all the others. */
+    private void recover(Partial partial, int g) {
+        byte[] parity = partial.parity[g];
+        if (parity == null || partial.complete()) {
+            return;
+        }
+        int first = g * partial.group;
+        int end = Math.min(first + partial.group, partial.count);
+        int missing = -1;
+        for (int i = first; i < end; i++) {
+            if (!partial.have[i]) {
+                if (missing >= 0) {
+                    return;
+                }
+                missing = i;
+            }
+        }
+        if (missing < 0) {
+            return;
+        }
+        byte[] rebuilt = parity.clone();
+        for (int i = first; i < end; i++) {
+            if (i != missing) {
+                int off = i * partial.chunk;
+                for (int b = 0, n = partial.dataLength(i); b < n; b++) {
+                    rebuilt[b] ^= partial.frame[off + b];
+                }
+            }
+        }
+        System.arraycopy(rebuilt, 0, partial.frame, missing * partial.chunk, partial.dataLength(missing));
+        partial.have[missing] = true;
+        partial.received++;
+        listener.onRecovered();
+    }
+
+    /** Hands on every frame that is ready and gives up on the ones that have waited too long. */
+    public void poll(long now) {
+        while (!pending.isEmpty()) {
+            Map.Entry<Integer, Partial> head = pending.firstEntry();
+            int seq = head.getKey();
+            Partial partial = head.getValue();
+            if (seq == next && partial.complete()) {
+                pending.pollFirstEntry();
+                pendingBytes -= partial.length;
+                next++;
+                listener.onFrame(partial.frame);
+                continue;
+            }
+            if (now - partial.arrival < delayNanos && pending.size() <= MAX_PENDING && pendingBytes <= MAX_PENDING_BYTES) {
+                return;
+            }
+            if (seq != next) {
+                listener.onLost(seq - next);
+                next = seq;
+            } else {
+                pending.pollFirstEntry();
+                pendingBytes -= partial.length;
+                next++;
+                listener.onLost(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.example.protocol;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text protocol, kept for clients that do not speak {@link FrameCodec}. Splits an incoming byte
+ * stream into UTF-8 lines. Once a client has sent {@value #FRAMES_CAPABILITY}, before its hello,
+ * a line of the form {@code FRAME:<length>} announces a binary block of exactly that many bytes,
+ * which is delivered in one piece with the header line still in front of it, so a relay can
+ * forward it without re-encoding. Until then such a line is just a line.
+ *
+ * <p>Only the bytes of an unfinished line or block are kept between reads, so an idle connection
+ * holds no buffer at all.
+ */
+public final class LineDecoder {
+    public static final String FRAME_PREFIX = "FRAME:";
+    public static final String FRAMES_CAPABILITY = "CAPABILITIES:FRAMES";
+    public static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] FRAME_PREFIX_BYTES = FRAME_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    public interface Listener {
+        void onLine(String line);
+
+        /** Whether a {@code FRAME:} line starts a binary block; asked before each line. */
+        boolean acceptsFrames();
+
+        /** {@code block} holds the header line followed by the payload, which starts at {@code payloadOffset}. */
+        void onBinary(byte[] block, int payloadOffset);
+    }
+
+    private final Listener listener;
+    private byte[] pending = EMPTY;
+    private int pendingLength;
+    private byte[] frame;
+    private int frameFilled;
+    private int framePayloadOffset;
+
+    public LineDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** The header line that must precede a payload of {@code length} bytes. */
+    public static byte[] frameHeader(int length) {
+        return (FRAME_PREFIX + length + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public void decode(byte[] buf, int off, int len) throws IOException {
+        int end = off + len;
+        int pos = off;
+        while (pos < end) {
+            if (frame != null) {
+                int count = Math.min(frame.length - frameFilled, end - pos);
+                System.arraycopy(buf, pos, frame, frameFilled, count);
+                frameFilled += count;
+                pos += count;
+                if (frameFilled == frame.length) {
+                    byte[] block = frame;
+                    frame = null;
+                    listener.onBinary(block, framePayloadOffset);
+                }
+                continue;
+            }
+            int newline = indexOf(buf, pos, end, (byte) '\n');
+            if (newline < 0) {
+                append(buf, pos, end - pos);
+                return;
+            }
+            if (pendingLength == 0) {
+                onLine(buf, pos, newline - pos);
+            } else {
+                append(buf, pos, newline - pos);
+                byte[] line = pending;
+                int lineLength = pendingLength;
+                pending = EMPTY;
+                pendingLength = 0;
+                onLine(line, 0, lineLength);
+            }
+            pos = newline + 1;
+        }
+    }
+
+    private void onLine(byte[] buf, int off, int len) throws IOException {
+        if (startsWith(buf, off, len, FRAME_PREFIX_BYTES) && listener.acceptsFrames()) {
+            int length = parseLength(buf, off + FRAME_PREFIX_BYTES.length, off + len);
+            frame = new byte[len + 1 + length];
+            System.arraycopy(buf, off, frame, 0, len);
+            frame[len] = '\n';
+            frameFilled = len + 1;
+            framePayloadOffset = len + 1;
+            if (length == 0) {
+                byte[] block = frame;
+                frame = null;
+                listener.onBinary(block, framePayloadOffset);
+            }
+            return;
+        }
+        if (len > 0 && buf[off + len - 1] == '\r') {
+            len--;
+        }
+        listener.onLine(new String(buf, off, len, StandardCharsets.UTF_8));
+    }
+
+    private void append(byte[] buf, int off, int len) throws IOException {
+        int required = pendingLength + len;
+        if (required > MAX_LINE_LENGTH) {
+            throw new IOException("Line exceeds " + MAX_LINE_LENGTH + " bytes");
+        }
+        if (required > pending.length) {
+            byte[] grown = new byte[Math.max(required, Math.max(64, pending.length * 2))];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(buf, off, pending, pendingLength, len);
+        pendingLength = required;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] buf, int off, int len, byte[] prefix) {
+        if (len < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[off + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseLength(byte[] buf, int from, int to) throws IOException {
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        if (from == to || to - from > 9) {
+            throw new IOException("Malformed frame header");
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Malformed frame header");
+            }
+            value = value * 10 + digit;
+        }
+        if (value > MAX_FRAME_LENGTH) {
+            throw new IOException("Frame of " + value + " bytes exceeds " + MAX_FRAME_LENGTH);
+        }
+        return value;
+    }
+}
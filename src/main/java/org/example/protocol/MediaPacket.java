@@ -0,0 +1,151 @@
+package org.example.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Video over UDP. A complete binary frame ({@code VIDEO_FRAME} or {@code VIDEO_LAYER}, header
+ * included) is cut into datagrams of at most {@code chunk} payload bytes each:
+ *
+ * <pre>
+ *   token:u64  frame:u32  length:u32  index:u16  count:u16  chunk:u16  group:u8  flags:u8
+ *   payload
+ * </pre>
+ *
+ * {@code token} identifies the sender's control connection, {@code frame} numbers the frames on
+ * this stream, {@code length} is the whole frame's and {@code count} its number of data packets.
+ * Data packet {@code index} carries bytes {@code index * chunk} onwards. After every {@code group}
+ * data packets (and after the last) comes a packet with {@link #PARITY} set whose payload is the XOR
+ * of theirs, zero-padded to {@code chunk}, and whose {@code index} is the group's number: a receiver
+ * missing one packet of a group rebuilds it from the others. {@code group} 0 means no parity.
+ *
+ * <p>A {@link #REGISTER} packet has only the header and tells the server where to send video for
+ * the token.
+ *
+ * <p>An instance packetizes frames for one sender at a time; it reuses its buffers.
+ */
+public final class MediaPacket {
+    public static final int HEADER_LENGTH = 26;
+    public static final int PARITY = 1;
+    public static final int REGISTER = 2;
+    // Keeps a datagram under the usual 1500-byte MTU
+    public static final int DEFAULT_CHUNK = 1200;
+
+    public interface Sink {
+        void send(ByteBuffer packet) throws IOException;
+    }
+
+    private final int chunk;
+    private final int group;
+    private final byte[] packet;
+    private final byte[] parity;
+    private final ByteBuffer view;
+
+    public MediaPacket(int chunk, int group) {
+        this.chunk = chunk;
+        this.group = Math.min(group, 255);
+        this.packet = new byte[HEADER_LENGTH + chunk];
+        this.parity = new byte[chunk];
+        this.view = ByteBuffer.wrap(packet);
+    }
+
+    /** Sends {@code frame} as data and parity packets; the buffer passed to the sink is reused afterwards. */
+    public void send(long token, int frameSeq, byte[] frame, int off, int len, Sink sink) throws IOException {
+        send(token, frameSeq, ByteBuffer.wrap(frame, off, len).slice(), sink);
+    }
+
+    /** Sends bytes 0 to the limit of {@code frame}, read with absolute indexes so its position is left alone. */
+    public void send(long token, int frameSeq, ByteBuffer frame, Sink sink) throws IOException {
+        int len = frame.limit();
+        int count = Math.max(1, (len + chunk - 1) / chunk);
+        int inGroup = 0;
+        int parityLength = 0;
+        for (int index = 0; index < count; index++) {
+            int start = index * chunk;
+            int n = Math.min(chunk, len - start);
+            writeHeader(packet, token, frameSeq, len, index, count, chunk, group, 0);
+            frame.get(start, packet, HEADER_LENGTH, n);
+            if (group > 0) {
+                for (int i = 0; i < n; i++) {
+                    parity[i] ^= packet[HEADER_LENGTH + i];
+                }
+                parityLength = Math.max(parityLength, n);
+            }
+            sink.send(view.clear().limit(HEADER_LENGTH + n));
+            if (group > 0 && (++inGroup == group || index == count - 1)) {
+                writeHeader(packet, token, frameSeq, len, index / group, count, chunk, group, PARITY);
+                System.arraycopy(parity, 0, packet, HEADER_LENGTH, parityLength);
+                sink.send(view.clear().limit(HEADER_LENGTH + parityLength));
+                Arrays.fill(parity, 0, parityLength, (byte) 0);
+                inGroup = 0;
+                parityLength = 0;
+            }
+        }
+    }
+
+    public static byte[] register(long token) {
+        byte[] packet = new byte[HEADER_LENGTH];
+        writeHeader(packet, token, 0, 0, 0, 0, 0, 0, REGISTER);
+        return packet;
+    }
+
+    private static void writeHeader(byte[] dst, long token, int frame, int length, int index, int count, int chunk, int group, int flags) {
+        FrameCodec.putLong(dst, 0, token);
+        putInt(dst, 8, frame);
+        putInt(dst, 12, length);
+        putShort(dst, 16, index);
+        putShort(dst, 18, count);
+        putShort(dst, 20, chunk);
+        dst[24] = (byte) group;
+        dst[25] = (byte) flags;
+    }
+
+    private static void putInt(byte[] dst, int off, int value) {
+        dst[off] = (byte) (value >>> 24);
+        dst[off + 1] = (byte) (value >>> 16);
+        dst[off + 2] = (byte) (value >>> 8);
+        dst[off + 3] = (byte) value;
+    }
+
+    private static void putShort(byte[] dst, int off, int value) {
+        dst[off] = (byte) (value >>> 8);
+        dst[off + 1] = (byte) value;
+    }
+
+    public static long token(byte[] packet) {
+        return FrameCodec.getLong(packet, 0);
+    }
+
+    public static int frame(byte[] packet) {
+        return FrameCodec.getInt(packet, 8);
+    }
+
+    public static int length(byte[] packet) {
+        return FrameCodec.getInt(packet, 12);
+    }
+
+    public static int index(byte[] packet) {
+        return getShort(packet, 16);
+    }
+
+    public static int count(byte[] packet) {
+        return getShort(packet, 18);
+    }
+
+    public static int chunk(byte[] packet) {
+        return getShort(packet, 20);
+    }
+
+    public static int group(byte[] packet) {
+        return packet[24] & 0xFF;
+    }
+
+    public static int flags(byte[] packet) {
+        return packet[25] & 0xFF;
+    }
+
+    private static int getShort(byte[] src, int off) {
+        return ((src[off] & 0xFF) << 8) | (src[off + 1] & 0xFF);
+    }
+}
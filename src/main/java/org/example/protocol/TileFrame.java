@@ -0,0 +1,37 @@
+package org.example.protocol;
+
+/**
+ * A tile-diff video payload, sent in place of a JPEG in {@code VIDEO_FRAME} and {@code VIDEO_LAYER}
+ * frames. The frame is cut into square tiles; a keyframe carries the whole picture as one JPEG and
+ * every following delta only the JPEGs of the tiles that changed since the frame before it:
+ *
+ * <pre>
+ *   'T' 'D'  flags:u8  key:u16  seq:u16  width:u16  height:u16  tileSize:u16  count:u16
+ *   count x (index:u16  length:u32  jpeg)
+ * </pre>
+ *
+ * A keyframe has {@link #KEYFRAME} set and one entry, index 0, covering the whole frame. Tile
+ * {@code index} is counted row by row. {@code key} numbers the keyframes and {@code seq} the frames
+ * since the last one, so a receiver only applies a delta with the same key and the next seq; after
+ * a gap it waits for the next keyframe. The magic cannot start a JPEG, which starts with FF D8, so
+ * plain JPEG payloads stay valid.
+ */
+public final class TileFrame {
+    public static final byte MAGIC_0 = 'T';
+    public static final byte MAGIC_1 = 'D';
+    public static final int KEYFRAME = 1;
+    public static final int HEADER_LENGTH = 15;
+    public static final int ENTRY_HEADER_LENGTH = 6;
+
+    private TileFrame() {
+    }
+
+    public static boolean isTiled(byte[] payload, int off, int len) {
+        return len >= HEADER_LENGTH && payload[off] == MAGIC_0 && payload[off + 1] == MAGIC_1;
+    }
+
+    /** A tiled frame that only makes sense on top of the frames before it. */
+    public static boolean isDelta(byte[] payload, int off, int len) {
+        return isTiled(payload, off, len) && (payload[off + 2] & KEYFRAME) == 0;
+    }
+}
@@ -0,0 +1,468 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameDecoder;
+import org.example.protocol.FrameType;
+import org.example.protocol.LineDecoder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.example.server.Server.allClients;
+import static org.example.server.Server.rooms;
+
+/**
+ * Protocol state for one client. Every call for a given connection comes from the single thread
+ * its engine uses to read that connection, so the fields need no locking.
+ *
+ * <p>Binary frames are dispatched on their type byte; legacy text lines are mapped onto the same
+ * commands.
+ *
+ * <p>Chat and the other commands are checked against the client's {@link TokenBucket}s before
+ * they are dispatched; video is not limited here. Relays are exempt, since their traffic is the
+ * sum of many members, but their chat still counts against the room's limit.
+ *
+ * <p>A client that can resume gets a {@link Sessions.Session} on {@code HELLO}. If it reconnects
+ * with {@code RESUME} before the session expires it is put back in its room, taking the room back
+ * if it owned it, and sent what it missed. A client whose session is gone is handled as if it had
+ * said hello and joined (or, as owner, recreated) the room it names.
+ */
+class ClientHandler implements FrameDecoder.Listener, LineDecoder.Listener {
+    private static final String[] TEXT_COMMANDS = {
+            "REQUEST_ROOM_LIST", "CREATE_ROOM:", "JOIN_ROOM:", "LEAVE_ROOM:", "CLOSE_ROOM:", "PLAYBACK:", "HISTORY:"};
+
+    private final Connection connection;
+    // Null for no limit
+    private final TokenBucket chatLimit;
+    private final TokenBucket commandLimit;
+    private final boolean disconnectOverLimit;
+    // Whether the client has been told it is being limited since its last accepted message
+    private boolean throttled;
+    private String clientName;
+    private byte[] chatPrefix;
+    private Room currentRoom;
+    private Sessions.Session session;
+
+    ClientHandler(Connection connection) {
+        this(connection, TokenBucket.of(ServerConfig.CHAT_RATE, ServerConfig.CHAT_BURST),
+                TokenBucket.of(ServerConfig.COMMAND_RATE, ServerConfig.COMMAND_BURST), ServerConfig.RATE_LIMIT_DISCONNECT);
+    }
+
+    ClientHandler(Connection connection, TokenBucket chatLimit, TokenBucket commandLimit, boolean disconnectOverLimit) {
+        this.connection = connection;
+        this.chatLimit = chatLimit;
+        this.commandLimit = commandLimit;
+        this.disconnectOverLimit = disconnectOverLimit;
+    }
+
+    @Override
+    public void onFrame(byte type, byte[] block, int off, int len) {
+        long start = System.nanoTime();
+        handleFrame(type, block, off, len);
+        recordHandled(start);
+    }
+
+    private void handleFrame(byte type, byte[] block, int off, int len) {
+        if (clientName == null) {
+            if (type == FrameType.HELLO) {
+                hello(FrameCodec.text(block, off, len));
+            } else if (type == FrameType.RELAY_HELLO) {
+                relayHello(FrameCodec.text(block, off, len));
+            } else if (type == FrameType.RESUME) {
+                resume(block, off, len);
+            } else if (type == FrameType.CAPABILITIES && len > 0) {
+                if ((block[off] & FrameCodec.CAPABILITY_DEFLATE) != 0 && ServerConfig.COMPRESSION) {
+                    connection.useCompression();
+                }
+                if ((block[off] & FrameCodec.CAPABILITY_RESUME) != 0) {
+                    connection.useResume();
+                }
+                if ((block[off] & FrameCodec.CAPABILITY_MEDIA) != 0) {
+                    MediaTransport.offer(connection);
+                }
+            }
+            return;
+        }
+        TokenBucket limit = switch (type) {
+            case FrameType.CHAT -> chatLimit;
+            case FrameType.VIDEO_FRAME, FrameType.VIDEO_LAYER -> null;
+            default -> commandLimit;
+        };
+        if (!allowed(limit)) {
+            return;
+        }
+        switch (type) {
+            case FrameType.CHAT -> sendMessageToRoom(block, off, len);
+            case FrameType.VIDEO_FRAME -> relayVideoFrame(block, off, len);
+            case FrameType.VIDEO_LAYER -> relayVideoLayer(block, off, len);
+            case FrameType.ROOM_LIST_REQUEST -> sendRoomListToClient();
+            case FrameType.CREATE_ROOM -> createRoom(FrameCodec.text(block, off, len));
+            case FrameType.JOIN_ROOM -> joinRoom(FrameCodec.text(block, off, len));
+            case FrameType.LEAVE_ROOM -> leaveRoom();
+            case FrameType.CLOSE_ROOM -> closeRoom(FrameCodec.text(block, off, len));
+            case FrameType.PLAYBACK -> playback(FrameCodec.text(block, off, len));
+            case FrameType.HISTORY_REQUEST -> {
+                if (len == 12) {
+                    sendHistory(FrameCodec.getLong(block, off), FrameCodec.getInt(block, off + 8));
+                } else {
+                    connection.send(OutboundMessage.error("Malformed history request."));
+                }
+            }
+            default -> connection.send(OutboundMessage.error("Unknown frame type " + type + "."));
+        }
+    }
+
+    @Override
+    public void onLine(String inputLine) {
+        long start = System.nanoTime();
+        handleLine(inputLine);
+        recordHandled(start);
+    }
+
+    private void handleLine(String inputLine) {
+        if (clientName == null) {
+            if (inputLine.equals(LineDecoder.FRAMES_CAPABILITY)) {
+                connection.useTextFrames();
+            } else {
+                hello(inputLine);
+            }
+            return;
+        }
+        if (!allowed(isTextCommand(inputLine) ? commandLimit : chatLimit)) {
+            return;
+        }
+        if (inputLine.startsWith("REQUEST_ROOM_LIST")) {
+            sendRoomListToClient();
+        } else if (inputLine.startsWith("CREATE_ROOM:")) {
+            createRoom(inputLine.substring("CREATE_ROOM:".length()));
+        } else if (inputLine.startsWith("JOIN_ROOM:")) {
+            joinRoom(inputLine.substring("JOIN_ROOM:".length()));
+        } else if (inputLine.startsWith("LEAVE_ROOM:")) {
+            leaveRoom();
+        } else if (inputLine.startsWith("CLOSE_ROOM:")) {
+            closeRoom(inputLine.substring("CLOSE_ROOM:".length()));
+        } else if (inputLine.startsWith("PLAYBACK:")) {
+            playback(inputLine.substring("PLAYBACK:".length()));
+        } else if (inputLine.startsWith("HISTORY:")) {
+            // HISTORY:<count> for the last lines, HISTORY:<count>:<fromSeq> for lines from a sequence number
+            String[] parts = inputLine.substring("HISTORY:".length()).split(":");
+            try {
+                sendHistory(parts.length > 1 ? Long.parseLong(parts[1]) : 0, Integer.parseInt(parts[0]));
+            } catch (NumberFormatException e) {
+                connection.send(OutboundMessage.error("Malformed history request."));
+            }
+        } else {
+            byte[] text = inputLine.getBytes(StandardCharsets.UTF_8);
+            sendMessageToRoom(text, 0, text.length);
+        }
+    }
+
+    @Override
+    public boolean acceptsFrames() {
+        return connection.acceptsTextFrames();
+    }
+
+    @Override
+    public void onBinary(byte[] block, int payloadOffset) {
+        long start = System.nanoTime();
+        if (clientName != null) {
+            relayVideoFrame(block, payloadOffset, block.length - payloadOffset);
+        }
+        recordHandled(start);
+    }
+
+    private static boolean isTextCommand(String line) {
+        for (String command : TEXT_COMMANDS) {
+            if (line.startsWith(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes a token for one message. Over the limit the message is refused: the client is told
+     * once, until a message gets through again, or disconnected if the policy says so.
+     */
+    private boolean allowed(TokenBucket limit) {
+        if (!connection.isOpen()) {
+            return false;
+        }
+        if (limit == null || connection.isRelay() || limit.tryAcquire(System.nanoTime())) {
+            throttled = false;
+            return true;
+        }
+        Metrics.RATE_LIMITED.increment();
+        if (disconnectOverLimit) {
+            Metrics.RATE_LIMIT_DISCONNECTS.increment();
+            System.out.println("Disconnecting " + clientName + " for exceeding its rate limit.");
+            connection.close();
+        } else if (!throttled) {
+            throttled = true;
+            connection.send(OutboundMessage.error("You are sending too fast; messages are being dropped."));
+        }
+        return false;
+    }
+
+    private static void recordHandled(long start) {
+        Metrics.HANDLE_TIME.record(System.nanoTime() - start);
+        Metrics.MESSAGES_IN.increment();
+    }
+
+    /** The session keeps the room, so a resume can put the client back in it. */
+    void onClose() {
+        Metrics.CONNECTIONS_CLOSED.increment();
+        MediaTransport.remove(connection);
+        if (session != null) {
+            Sessions.detach(session, connection);
+        }
+        if (currentRoom != null) {
+            currentRoom.leave(connection);
+            currentRoom = null;
+        }
+        allClients.remove(connection);
+    }
+
+    private void hello(String name) {
+        // Text clients would read a chat line from such a name as the header of a video frame
+        if (name.startsWith(LineDecoder.FRAME_PREFIX)) {
+            connection.send(OutboundMessage.error("Names cannot start with " + LineDecoder.FRAME_PREFIX));
+            return;
+        }
+        clientName = name;
+        connection.setName(name);
+        chatPrefix = (name + ": ").getBytes(StandardCharsets.UTF_8);
+        allClients.add(connection);
+        if (connection.isResumable()) {
+            session = Sessions.open(name, connection);
+            sendSession();
+        }
+        connection.send(OutboundMessage.info("Welcome, " + clientName + "!"));
+        System.out.println("Welcome, " + clientName + "!");
+    }
+
+    private void sendSession() {
+        connection.send(OutboundMessage.session(session.token));
+    }
+
+    /** {@code token:u64 lastSeq:u64 flags:u8} then the client's name and room, the room empty if it had none. */
+    private void resume(byte[] block, int off, int len) {
+        List<String> names = len > 17 ? FrameCodec.decodeNames(block, off + 17, len - 17) : List.of();
+        if (names.size() != 2 || names.get(0).isEmpty() || names.get(0).startsWith(LineDecoder.FRAME_PREFIX)) {
+            connection.send(OutboundMessage.error("Malformed resume request."));
+            return;
+        }
+        long token = FrameCodec.getLong(block, off);
+        long lastSeq = FrameCodec.getLong(block, off + 8);
+        boolean owner = (block[off + 16] & FrameCodec.RESUME_OWNER) != 0;
+        String roomName = names.get(1);
+        connection.useResume();
+
+        Sessions.Resumed resumed = Sessions.resume(token, connection);
+        if (resumed == null) {
+            hello(names.get(0));
+            if (roomName.isEmpty()) {
+                return;
+            }
+            if (owner && rooms.get(roomName) == null) {
+                createRoom(roomName);
+            } else {
+                joinRoom(roomName);
+            }
+            return;
+        }
+        session = resumed.session();
+        clientName = session.name;
+        connection.setName(clientName);
+        chatPrefix = (clientName + ": ").getBytes(StandardCharsets.UTF_8);
+        allClients.add(connection);
+        sendSession();
+        connection.send(OutboundMessage.info("Welcome back, " + clientName + "!"));
+        Metrics.SESSIONS_RESUMED.increment();
+        System.out.println("Resumed session of " + clientName + ".");
+
+        // The previous connection may not have noticed it is dead yet; it is closed only once this
+        // one has its place, so the room does not empty and close in between
+        Connection previous = resumed.previous();
+        Room room = session.room();
+        if (room != null && rooms.get(room.getName()) == room) {
+            if (session.owner()) {
+                room.reclaim(previous, connection);
+            }
+            room.resume(connection, previous, lastSeq);
+            setCurrentRoom(room);
+        } else if (room != null && session.owner()) {
+            createRoom(room.getName());
+        } else {
+            setCurrentRoom(null);
+            if (room != null) {
+                connection.send(OutboundMessage.notice("Room " + room.getName() + " closed while you were away."));
+            }
+        }
+        if (previous.isOpen()) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Tracks the room in the session too, so it is known even if this connection drops unseen, and
+     * on the connection for video arriving over the media transport.
+     */
+    private void setCurrentRoom(Room room) {
+        currentRoom = room;
+        connection.setRoom(room);
+        if (session != null) {
+            session.moved(room, room != null && room.isOwner(connection));
+        }
+    }
+
+    /**
+     * Another node relaying rooms from this one. It gets no room-list updates and its chat lines
+     * arrive already prefixed with the name of the member who wrote them.
+     */
+    private void relayHello(String nodeName) {
+        clientName = nodeName;
+        connection.setName(nodeName);
+        connection.markRelay();
+        chatPrefix = new byte[0];
+        System.out.println("Relay connected: " + nodeName);
+    }
+
+    private void createRoom(String roomName) {
+        if (currentRoom != null) {
+            currentRoom.leave(connection);
+            setCurrentRoom(null);
+        }
+
+        Room newRoom = new Room(roomName, connection);
+        if (rooms.add(newRoom)) {
+            newRoom.startRecording();
+            setCurrentRoom(newRoom);
+            System.out.println("Room created: " + roomName);
+            connection.send(OutboundMessage.info("Room " + roomName + " has been created and you are the owner."));
+        } else {
+            connection.send(OutboundMessage.error("Room already exists."));
+        }
+    }
+
+    private void joinRoom(String roomName) {
+        if (currentRoom != null && currentRoom.isOwner(connection)) {
+            connection.send(OutboundMessage.error("You need to close your room before joining another."));
+            return;
+        }
+
+        Room room = rooms.get(roomName);
+        if (room == null) {
+            connection.send(OutboundMessage.error("Room does not exist."));
+            return;
+        }
+
+        if (currentRoom != null) {
+            currentRoom.leave(connection);
+        }
+
+        room.join(connection);
+        setCurrentRoom(room);
+    }
+
+    /** {@code <recording> [speed] [startSeconds]}, or nothing to list the recordings. */
+    private void playback(String request) {
+        String[] parts = request.trim().split("\\s+");
+        try {
+            if (parts[0].isEmpty()) {
+                List<String> recordings = Playback.recordings();
+                connection.send(OutboundMessage.info(recordings.isEmpty()
+                        ? "There are no recordings." : "Recordings: " + String.join(", ", recordings)));
+                return;
+            }
+            double speed = parts.length > 1 ? Double.parseDouble(parts[1]) : 1;
+            long startSeconds = parts.length > 2 ? Long.parseLong(parts[2]) : 0;
+            if (!(speed > 0)) {
+                connection.send(OutboundMessage.error("Playback speed must be positive."));
+                return;
+            }
+            if (currentRoom != null && currentRoom.isOwner(connection)) {
+                connection.send(OutboundMessage.error("You need to close your room before joining another."));
+                return;
+            }
+            Room room = Playback.start(parts[0], speed, startSeconds);
+            if (room == null) {
+                connection.send(OutboundMessage.error("Recording does not exist."));
+                return;
+            }
+            connection.send(OutboundMessage.info("Playing " + parts[0] + " in room " + room.getName() + "."));
+            joinRoom(room.getName());
+        } catch (NumberFormatException e) {
+            connection.send(OutboundMessage.error("Malformed playback request."));
+        } catch (IOException e) {
+            connection.send(OutboundMessage.error("Could not play the recording."));
+            System.err.println("Could not play recording " + request + ": " + e.getMessage());
+        }
+    }
+
+    private void leaveRoom() {
+        if (currentRoom != null && !currentRoom.isOwner(connection)) {
+            currentRoom.leave(connection);
+            setCurrentRoom(null);
+        }
+    }
+
+    private void sendRoomListToClient() {
+        connection.send(rooms.snapshot());
+    }
+
+    private void sendHistory(long fromSeq, int count) {
+        if (currentRoom == null) {
+            connection.send(OutboundMessage.error("Join a room first."));
+        } else if (!currentRoom.sendHistory(connection, fromSeq, Math.max(0, Math.min(count, ServerConfig.HISTORY_MAX_LINES)))) {
+            connection.send(OutboundMessage.error("This room keeps no chat history."));
+        }
+    }
+
+    private void closeRoom(String roomName) {
+        Room room = rooms.get(roomName);
+        if (room != null) {
+            if (room.isOwner(connection)) {
+                room.close();
+                rooms.remove(roomName, room);
+                if (currentRoom == room) {
+                    setCurrentRoom(null);
+                }
+                connection.send(OutboundMessage.info("Room closed."));
+            } else {
+                connection.send(OutboundMessage.error("You are not the owner of this room."));
+            }
+        } else {
+            connection.send(OutboundMessage.error("Room does not exist."));
+        }
+    }
+
+    /** Chat bytes are copied from the inbound frame behind the sender's prefix, never decoded. */
+    private void sendMessageToRoom(byte[] text, int off, int len) {
+        Room room = currentRoom;
+        if (room != null && room.isPlayback()) {
+            connection.send(OutboundMessage.error("This room is a recording; chat is read-only."));
+        } else if (room != null && rooms.get(room.getName()) == room) {
+            room.broadcastChat(OutboundMessage.chat(chatPrefix, text, off, len));
+        }
+    }
+
+    private void relayVideoLayer(byte[] block, int off, int len) {
+        int layer = len > 0 ? block[off] & 0xFF : -1;
+        if (layer < 0 || layer >= Simulcast.MAX_LAYERS) {
+            connection.send(OutboundMessage.error("Bad video layer."));
+            return;
+        }
+        if (currentRoom != null && currentRoom.isOwner(connection)) {
+            currentRoom.broadcastLayer(layer, block, off, len);
+        }
+    }
+
+    /** Video from the room owner is relayed as received, without decoding it. */
+    private void relayVideoFrame(byte[] block, int off, int len) {
+        if (currentRoom != null && currentRoom.isOwner(connection)) {
+            currentRoom.broadcastFrame(block, off, len);
+        }
+    }
+}
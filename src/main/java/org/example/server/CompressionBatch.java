@@ -0,0 +1,79 @@
+package org.example.server;
+
+import org.example.protocol.FrameType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A room's chat and notices on their way to the members that asked for compression: a room keeps
+ * one batch of plain frames and one of {@code SEQUENCED} frames for those that can resume. Messages
+ * collect for {@link ServerConfig#COMPRESSION_TICK_MS}, or until
+ * {@link ServerConfig#COMPRESSION_BATCH_BYTES} are waiting, and are then deflated together once
+ * and the one {@code COMPRESSED} message is sent to all of those members. A batch that deflate
+ * cannot shrink goes out as the original messages.
+ *
+ * <p>Flushing holds the batch's lock while sending, so batches reach every member in order.
+ */
+final class CompressionBatch {
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "room-compress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Room room;
+    private final boolean sequenced;
+    // Guarded by this
+    private final List<OutboundMessage> messages = new ArrayList<>();
+    private byte[] frames = new byte[1024];
+    private int length;
+    private boolean droppable = true;
+    private boolean scheduled;
+
+    CompressionBatch(Room room, boolean sequenced) {
+        this.room = room;
+        this.sequenced = sequenced;
+    }
+
+    synchronized void add(OutboundMessage message) {
+        byte[] frame = sequenced ? message.sequencedFrame() : message.binaryFrame();
+        if (length + frame.length > frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(frames.length * 2, length + frame.length));
+        }
+        System.arraycopy(frame, 0, frames, length, frame.length);
+        length += frame.length;
+        messages.add(message);
+        droppable &= message.type() == FrameType.CHAT;
+        if (length >= ServerConfig.COMPRESSION_BATCH_BYTES) {
+            flush();
+        } else if (!scheduled) {
+            scheduled = true;
+            TICKER.schedule(this::flush, ServerConfig.COMPRESSION_TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Sends whatever is waiting now; called before a join or close so nothing is sent twice or lost. */
+    synchronized void flush() {
+        scheduled = false;
+        if (messages.isEmpty()) {
+            return;
+        }
+        OutboundMessage compressed = OutboundMessage.compressed(frames, length, droppable);
+        if (compressed != null) {
+            room.sendCompressed(compressed, sequenced);
+        } else {
+            messages.forEach(message -> room.sendCompressed(message, sequenced));
+        }
+        messages.clear();
+        length = 0;
+        droppable = true;
+        if (frames.length > ServerConfig.COMPRESSION_BATCH_BYTES * 2) {
+            frames = new byte[1024];
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.server;
+
+import org.example.protocol.FrameType;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One client connection, independent of the engine that drives it.
+ */
+abstract class Connection {
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id = NEXT_ID.incrementAndGet();
+    private volatile boolean binaryProtocol;
+    private volatile boolean textFrames;
+    private volatile String name = "Client";
+    private volatile boolean relay;
+    private volatile boolean compression;
+    private volatile boolean resumable;
+    private final LayerSelector layerSelector = new LayerSelector();
+    // The video layer whose keyframe and deltas this client has been sent, or -1
+    private volatile int videoChain = -1;
+    // The client's room, for the media thread, which runs outside the client's own thread
+    private volatile Room room;
+    private volatile MediaTransport.Peer mediaPeer;
+
+    Connection() {
+        Metrics.CONNECTIONS_OPENED.increment();
+    }
+
+    long id() {
+        return id;
+    }
+
+    /** The name the client gave in its hello, or "Client" before that. */
+    String name() {
+        return name;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    /** Another node relaying rooms from this one, rather than a viewer. */
+    boolean isRelay() {
+        return relay;
+    }
+
+    void markRelay() {
+        relay = true;
+    }
+
+    boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    void useBinaryProtocol() {
+        binaryProtocol = true;
+    }
+
+    /** Whether a text client asked for video as {@code FRAME:} blocks; it is sent none otherwise. */
+    boolean acceptsTextFrames() {
+        return textFrames;
+    }
+
+    void useTextFrames() {
+        textFrames = true;
+    }
+
+    /** Whether the client asked for compressed output; it is a binary client. */
+    boolean usesCompression() {
+        return compression;
+    }
+
+    void useCompression() {
+        compression = true;
+    }
+
+    /** Whether the client can resume its session; it then gets room messages with their sequence numbers. */
+    boolean isResumable() {
+        return resumable;
+    }
+
+    void useResume() {
+        resumable = true;
+    }
+
+    Room room() {
+        return room;
+    }
+
+    void setRoom(Room room) {
+        this.room = room;
+    }
+
+    MediaTransport.Peer mediaPeer() {
+        return mediaPeer;
+    }
+
+    void setMediaPeer(MediaTransport.Peer peer) {
+        mediaPeer = peer;
+    }
+
+    /** Video goes over the media transport once the client has registered there, and not to a text client that did not ask for it. */
+    void send(OutboundMessage message) {
+        if (message.type() == FrameType.VIDEO_FRAME) {
+            if (!binaryProtocol && !textFrames) {
+                return;
+            }
+            MediaTransport.Peer peer = mediaPeer;
+            if (peer != null && MediaTransport.send(peer, message)) {
+                return;
+            }
+        }
+        if (resumable && message.seq() > 0) {
+            send(message.sequenced());
+        } else {
+            send(compression ? message.compressed() : message.encoded(binaryProtocol));
+        }
+    }
+
+    /** Which of the layers a simulcast room is publishing this client should be sent now. */
+    int videoLayer(Simulcast simulcast, long now) {
+        MediaTransport.Peer peer = mediaPeer;
+        return layerSelector.select(peer != null ? peer.outboundQueue() : outboundQueue(), simulcast, now);
+    }
+
+    int videoChain() {
+        return videoChain;
+    }
+
+    void setVideoChain(int layer) {
+        videoChain = layer;
+    }
+
+    /** Queues or writes an already encoded message; must not modify it. */
+    abstract void send(EncodedMessage message);
+
+    abstract OutboundQueue outboundQueue();
+
+    abstract boolean isOpen();
+
+    abstract void close();
+}
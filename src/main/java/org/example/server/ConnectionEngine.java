@@ -0,0 +1,21 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Accepts connections and drives a {@link ClientHandler} for each of them.
+ */
+interface ConnectionEngine {
+
+    /** Binds to the address and serves clients until the process exits. */
+    void serve(InetSocketAddress address) throws IOException;
+
+    static ConnectionEngine create(String name) {
+        return switch (name) {
+            case "virtual" -> new VirtualThreadEngine();
+            case "nio" -> new SelectorEngine(ServerConfig.EVENT_LOOPS);
+            default -> throw new IllegalArgumentException("Unknown engine: " + name + " (expected virtual or nio)");
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.server;
+
+import org.example.server.buffer.PooledBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The wire bytes of an {@link OutboundMessage} in one protocol, shared by every connection it is
+ * sent to. The shared buffer is only ever read with absolute indexes, so any number of writers
+ * can use it at once without duplicating it. Droppable messages (chat, video) may be shed for a
+ * client that cannot keep up; urgent ones (replies to the client's own commands) are written
+ * without waiting for the flush tick.
+ *
+ * <p>Bytes in a {@link PooledBuffer} are only valid while referenced: whatever keeps the message
+ * beyond the call that handed it over, such as an outbound queue, must {@link #retain} it and
+ * {@link #release} it afterwards. For other messages both do nothing.
+ */
+final class EncodedMessage {
+    private final ByteBuffer buffer;
+    private final boolean droppable;
+    private final boolean urgent;
+    private final PooledBuffer pooled;
+
+    EncodedMessage(byte[] bytes, boolean droppable, boolean urgent) {
+        this(ByteBuffer.wrap(bytes).asReadOnlyBuffer(), droppable, urgent);
+    }
+
+    /** Wraps bytes that live elsewhere, such as a mapped log file, without copying them. */
+    EncodedMessage(ByteBuffer buffer, boolean droppable, boolean urgent) {
+        this(buffer, null, droppable, urgent);
+    }
+
+    EncodedMessage(PooledBuffer pooled, boolean droppable, boolean urgent) {
+        this(pooled.contents(), pooled, droppable, urgent);
+    }
+
+    private EncodedMessage(ByteBuffer buffer, PooledBuffer pooled, boolean droppable, boolean urgent) {
+        this.buffer = buffer;
+        this.pooled = pooled;
+        this.droppable = droppable;
+        this.urgent = urgent;
+    }
+
+    void retain() {
+        if (pooled != null) {
+            pooled.retain();
+        }
+    }
+
+    void release() {
+        if (pooled != null) {
+            pooled.release();
+        }
+    }
+
+    boolean isDroppable() {
+        return droppable;
+    }
+
+    boolean isUrgent() {
+        return urgent;
+    }
+
+    int length() {
+        return buffer.limit();
+    }
+
+    /** The shared read-only bytes; callers must not move its position or limit. */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /** Copies bytes from {@code offset} into {@code dst} as far as it has room; returns the count. */
+    int copyTo(int offset, ByteBuffer dst) {
+        int count = Math.min(buffer.limit() - offset, dst.remaining());
+        dst.put(dst.position(), buffer, offset, count);
+        dst.position(dst.position() + count);
+        return count;
+    }
+}
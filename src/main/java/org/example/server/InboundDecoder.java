@@ -0,0 +1,61 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameDecoder;
+import org.example.protocol.LineDecoder;
+
+import java.io.IOException;
+
+/**
+ * Picks the protocol from the first bytes a client sends: the binary preamble selects
+ * {@link FrameDecoder}, anything else the legacy {@link LineDecoder} (if text clients are allowed).
+ */
+final class InboundDecoder {
+    private final Connection connection;
+    private final ClientHandler handler;
+    private boolean sawMagic;
+    private FrameDecoder frames;
+    private LineDecoder lines;
+
+    InboundDecoder(Connection connection, ClientHandler handler) {
+        this.connection = connection;
+        this.handler = handler;
+    }
+
+    void decode(byte[] buf, int off, int len) throws IOException {
+        if (frames != null) {
+            frames.decode(buf, off, len);
+            return;
+        }
+        if (lines != null) {
+            lines.decode(buf, off, len);
+            return;
+        }
+        if (len == 0) {
+            return;
+        }
+        if (!sawMagic) {
+            if (buf[off] != FrameCodec.MAGIC) {
+                if (!ServerConfig.TEXT_PROTOCOL) {
+                    throw new IOException("Text protocol is disabled");
+                }
+                lines = new LineDecoder(handler);
+                lines.decode(buf, off, len);
+                return;
+            }
+            sawMagic = true;
+            off++;
+            len--;
+            if (len == 0) {
+                return;
+            }
+        }
+        if (buf[off] != FrameCodec.VERSION) {
+            throw new IOException("Unsupported protocol version " + buf[off]);
+        }
+        connection.useBinaryProtocol();
+        // The handler copies whatever it keeps, video into pooled buffers, so one array serves every frame
+        frames = new FrameDecoder(handler, ServerConfig.DECODE_REUSE_BYTES);
+        frames.decode(buf, off + 1, len - 1);
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the simulcast layer one viewer receives, from its own outbound queue. Checked every
+ * quarter second:
+ *
+ * <ul>
+ *   <li>the viewer is congested when frames were dropped for it or its backlog would take longer
+ *   than the allowed delay to drain at the rate it has actually been reading; it then moves down
+ *   to the best layer that rate can carry, at least one step.</li>
+ *   <li>once the backlog has stayed small for the upgrade hold, it moves up one layer to probe.
+ *   A probe that ends in congestion within the hold doubles the hold, one that survives it halves
+ *   the hold again, so a viewer on a link that cannot take the better layer stops bouncing.</li>
+ * </ul>
+ *
+ * A switch takes effect on the next frame of the new layer; for a tiled stream the room first
+ * sends the keyframe and deltas that frame builds on.
+ */
+final class LayerSelector {
+    private static final long EVALUATE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final double MAX_DELAY_SECONDS = ServerConfig.SIMULCAST_MAX_DELAY_MS / 1000.0;
+    private static final long BASE_HOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(ServerConfig.SIMULCAST_UPGRADE_MS);
+    private static final long MAX_HOLD_NANOS = BASE_HOLD_NANOS * 16;
+    // Only move to a layer whose bitrate leaves this much of the measured rate spare
+    private static final double HEADROOM = 0.8;
+
+    private int layer;
+    private long evaluatedAt;
+    private long writtenAtEvaluation;
+    private long droppedAtEvaluation;
+    private long calmSince;
+    private long upgradedAt = -1;
+    private long holdNanos = BASE_HOLD_NANOS;
+
+    /** The layer to send this viewer, out of those the room is publishing. */
+    synchronized int select(OutboundQueue queue, Simulcast simulcast, long now) {
+        int layers = simulcast.layerCount();
+        if (evaluatedAt == 0) {
+            evaluatedAt = now;
+            calmSince = now;
+            writtenAtEvaluation = queue.writtenBytes();
+            droppedAtEvaluation = queue.droppedCount();
+        } else if (now - evaluatedAt >= EVALUATE_NANOS) {
+            evaluate(queue, simulcast, layers, now);
+        }
+        return Math.min(layer, Math.max(0, layers - 1));
+    }
+
+    private void evaluate(OutboundQueue queue, Simulcast simulcast, int layers, long now) {
+        long written = queue.writtenBytes();
+        long dropped = queue.droppedCount();
+        long backlog = queue.queuedBytes();
+        if (written < writtenAtEvaluation || dropped < droppedAtEvaluation) {
+            // The viewer's video moved to another queue, the media transport's; start measuring afresh
+            evaluatedAt = now;
+            writtenAtEvaluation = written;
+            droppedAtEvaluation = dropped;
+            return;
+        }
+        double throughput = (written - writtenAtEvaluation) * 1e9 / (now - evaluatedAt);
+        boolean dropping = dropped > droppedAtEvaluation;
+        evaluatedAt = now;
+        writtenAtEvaluation = written;
+        droppedAtEvaluation = dropped;
+
+        if (dropping || backlog > throughput * MAX_DELAY_SECONDS) {
+            calmSince = now;
+            if (upgradedAt >= 0 && now - upgradedAt < holdNanos) {
+                holdNanos = Math.min(holdNanos * 2, MAX_HOLD_NANOS);
+            }
+            upgradedAt = -1;
+            int target = Math.min(layer, layers - 1) + 1;
+            while (target < layers - 1 && simulcast.bytesPerSecond(target) > throughput * HEADROOM) {
+                target++;
+            }
+            if (target < layers) {
+                switchTo(target);
+            }
+            return;
+        }
+        if (backlog > throughput * MAX_DELAY_SECONDS / 4) {
+            calmSince = now;
+            return;
+        }
+        if (upgradedAt >= 0 && now - upgradedAt >= holdNanos) {
+            holdNanos = Math.max(holdNanos / 2, BASE_HOLD_NANOS);
+            upgradedAt = -1;
+        }
+        if (layer > 0 && now - calmSince >= holdNanos) {
+            switchTo(Math.min(layer, layers) - 1);
+            upgradedAt = now;
+            calmSince = now;
+        }
+    }
+
+    private void switchTo(int target) {
+        if (target != layer) {
+            layer = target;
+            Metrics.VIDEO_LAYER_SWITCHES.increment();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+import org.example.protocol.JitterBuffer;
+import org.example.protocol.MediaPacket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Video over UDP ({@link MediaPacket}) beside the TCP connection, which keeps carrying commands and
+ * chat. A binary client that sends {@code CAPABILITY_MEDIA} is told a token and this port in a
+ * {@code MEDIA} frame. An owner sends its frames here; they are put back together on the "media"
+ * thread and relayed as if they had come over TCP. A viewer registers its address with the token
+ * and is sent its room's video here instead of over TCP, so a lost packet costs at most the frame
+ * it belonged to rather than holding up everything queued behind it. Nothing is retransmitted.
+ *
+ * <p>A viewer's frames wait in an {@link OutboundQueue} of their own, which sheds them under the
+ * slow consumer policy as the TCP queue does and tells its {@link LayerSelector} how fast the
+ * viewer is being served. A "media-send" virtual thread per viewer drains it, paced so that a
+ * frame's packets are spread out rather than sent in one burst.
+ */
+final class MediaTransport {
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ConcurrentMap<Long, Peer> PEERS = new ConcurrentHashMap<>();
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    // Pacing lets a viewer's packets run this far ahead of its rate before the writer waits
+    private static final long PACE_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final double PACE_NANOS_PER_BYTE = ServerConfig.MEDIA_PACE_MBPS > 0 ? 8e3 / ServerConfig.MEDIA_PACE_MBPS : 0;
+    private static volatile DatagramChannel channel;
+
+    /** A client's end of the media transport. */
+    static final class Peer {
+        private final long token;
+        private final Connection connection;
+        // Where the client's packets come from; null until the first arrives
+        private volatile SocketAddress address;
+        // Only used by the media thread
+        private final JitterBuffer inbound;
+        private final OutboundQueue outbound = new OutboundQueue(ServerConfig.OUTBOUND_QUEUE_CAPACITY,
+                ServerConfig.MEDIA_QUEUE_BYTES, ServerConfig.SLOW_CONSUMER_POLICY, ServerConfig.SLOW_CONSUMER_TIMEOUT_MS,
+                0, ServerConfig.FLUSH_BYTES);
+        // Only used by the peer's media-send thread
+        private final MediaPacket packetizer = new MediaPacket(MediaPacket.DEFAULT_CHUNK, ServerConfig.MEDIA_FEC_GROUP);
+        private int nextFrame;
+        private long pacedUntil;
+
+        private Peer(long token, Connection connection) {
+            this.token = token;
+            this.connection = connection;
+            this.inbound = new JitterBuffer(TimeUnit.MILLISECONDS.toNanos(ServerConfig.MEDIA_JITTER_MS), new JitterBuffer.Listener() {
+                @Override
+                public void onFrame(byte[] frame) {
+                    relay(connection, frame);
+                }
+
+                @Override
+                public void onRecovered() {
+                    Metrics.MEDIA_RECOVERED.increment();
+                }
+
+                @Override
+                public void onLate() {
+                    Metrics.MEDIA_LATE.increment();
+                }
+
+                @Override
+                public void onLost(int frames) {
+                    Metrics.MEDIA_FRAMES_LOST.add(frames);
+                }
+            });
+        }
+
+        /** The queue the client's video goes through: the media one once it has registered, else its TCP one. */
+        OutboundQueue outboundQueue() {
+            return address != null ? outbound : connection.outboundQueue();
+        }
+
+        /** Sends each queued frame as datagrams; ends when the peer is removed. */
+        private void writeLoop() {
+            try {
+                while (outbound.awaitBatch()) {
+                    EncodedMessage frame = outbound.peek();
+                    if (frame == null) {
+                        continue;
+                    }
+                    SocketAddress to = address;
+                    packetizer.send(token, nextFrame++, frame.buffer(), packet -> {
+                        pace(packet.remaining());
+                        send(packet, to);
+                    });
+                    outbound.consume(frame.length());
+                }
+            } catch (InterruptedException | IOException e) {
+                // Only interruption gets here; a failed send is just a dropped packet
+                outbound.close();
+            }
+        }
+
+        private static void send(ByteBuffer packet, SocketAddress to) {
+            try {
+                if (ServerConfig.MEDIA_LOSS > 0 && ThreadLocalRandom.current().nextDouble() < ServerConfig.MEDIA_LOSS
+                        || channel.send(packet, to) == 0) {
+                    Metrics.MEDIA_PACKETS_DROPPED.increment();
+                } else {
+                    Metrics.MEDIA_PACKETS_OUT.increment();
+                }
+            } catch (IOException e) {
+                Metrics.MEDIA_PACKETS_DROPPED.increment();
+            }
+        }
+
+        /** Waits until {@code bytes} more would stay within the pacing rate. */
+        private void pace(int bytes) throws InterruptedIOException {
+            if (PACE_NANOS_PER_BYTE == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long ahead = pacedUntil - now;
+            if (ahead > PACE_BURST_NANOS) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(ahead - PACE_BURST_NANOS);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                now = System.nanoTime();
+            }
+            pacedUntil = Math.max(pacedUntil, now) + (long) (bytes * PACE_NANOS_PER_BYTE);
+        }
+    }
+
+    private MediaTransport() {
+    }
+
+    static void start(InetSocketAddress address) throws IOException {
+        DatagramChannel datagrams = DatagramChannel.open();
+        datagrams.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+        datagrams.setOption(StandardSocketOptions.SO_SNDBUF, 4 * 1024 * 1024);
+        datagrams.bind(address);
+        datagrams.configureBlocking(false);
+        Selector selector = Selector.open();
+        datagrams.register(selector, SelectionKey.OP_READ);
+        channel = datagrams;
+        Thread thread = new Thread(() -> receive(datagrams, selector), "media");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Media transport on UDP port " + address.getPort());
+    }
+
+    /** Gives the client a token for the media transport, if it is running. */
+    static void offer(Connection connection) {
+        if (channel == null || connection.mediaPeer() != null) {
+            return;
+        }
+        Peer peer;
+        do {
+            peer = new Peer(RANDOM.nextLong(), connection);
+        } while (peer.token == 0 || PEERS.putIfAbsent(peer.token, peer) != null);
+        connection.setMediaPeer(peer);
+        Thread.ofVirtual().name("media-send-" + connection.id()).start(peer::writeLoop);
+        byte[] payload = new byte[10];
+        FrameCodec.putLong(payload, 0, peer.token);
+        payload[8] = (byte) (ServerConfig.MEDIA_PORT >>> 8);
+        payload[9] = (byte) ServerConfig.MEDIA_PORT;
+        connection.send(OutboundMessage.media(payload));
+    }
+
+    static void remove(Connection connection) {
+        Peer peer = connection.mediaPeer();
+        if (peer != null) {
+            PEERS.remove(peer.token, peer);
+            peer.outbound.close();
+        }
+    }
+
+    /**
+     * Queues a video frame for the peer's media-send thread. Returns false if the client has not
+     * registered an address yet, so the frame should go over TCP.
+     */
+    static boolean send(Peer peer, OutboundMessage frame) {
+        if (peer.address == null) {
+            return false;
+        }
+        if (peer.outbound.offer(frame.encoded(true)) == OutboundQueue.Offer.OVERFLOW) {
+            System.err.println("Disconnecting slow client " + peer.connection.id());
+            peer.connection.close();
+        }
+        return true;
+    }
+
+    private static void receive(DatagramChannel datagrams, Selector selector) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        byte[] packet = new byte[64 * 1024];
+        long lastPoll = System.nanoTime();
+        try {
+            while (true) {
+                selector.select(TimeUnit.NANOSECONDS.toMillis(POLL_NANOS));
+                selector.selectedKeys().clear();
+                SocketAddress from;
+                while ((from = datagrams.receive(buffer.clear())) != null) {
+                    int len = buffer.flip().remaining();
+                    if (len < MediaPacket.HEADER_LENGTH) {
+                        continue;
+                    }
+                    buffer.get(packet, 0, len);
+                    Peer peer = PEERS.get(MediaPacket.token(packet));
+                    if (peer == null) {
+                        continue;
+                    }
+                    Metrics.MEDIA_PACKETS_IN.increment();
+                    peer.address = from;
+                    if ((MediaPacket.flags(packet) & MediaPacket.REGISTER) == 0) {
+                        peer.inbound.offer(packet, len, System.nanoTime());
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - lastPoll >= POLL_NANOS) {
+                    lastPoll = now;
+                    for (Peer peer : PEERS.values()) {
+                        peer.inbound.poll(now);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Media transport stopped: " + e.getMessage());
+        }
+    }
+
+    /** A frame an owner sent over UDP, handled as {@link ClientHandler} handles one sent over TCP. */
+    private static void relay(Connection connection, byte[] frame) {
+        Room room = connection.room();
+        int len = frame.length - FrameCodec.HEADER_LENGTH;
+        if (room == null || !room.isOwner(connection) || !connection.isOpen() || FrameCodec.getInt(frame, 1) != len) {
+            return;
+        }
+        Metrics.MESSAGES_IN.increment();
+        if (frame[0] == FrameType.VIDEO_FRAME) {
+            room.broadcastFrame(frame, FrameCodec.HEADER_LENGTH, len);
+        } else if (frame[0] == FrameType.VIDEO_LAYER && len > 0 && (frame[FrameCodec.HEADER_LENGTH] & 0xFF) < Simulcast.MAX_LAYERS) {
+            room.broadcastLayer(frame[FrameCodec.HEADER_LENGTH] & 0xFF, frame, FrameCodec.HEADER_LENGTH, len);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * The members of a room, keyed by connection id. Members live in a slot array that broadcasts scan
+ * without locking; a member keeps its slot for as long as it stays, so one that is present for a
+ * whole broadcast is visited exactly once however many others join or leave meanwhile. Join and
+ * leave are amortized O(1): they take a short lock of their own, reuse freed slots and never copy the array
+ * except to grow it.
+ */
+final class Membership {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final Object writeLock = new Object();
+    // Guarded by writeLock
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+
+    private volatile AtomicReferenceArray<Connection> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    // Slots at or above this index are all empty
+    private volatile int highWater;
+    private volatile int size;
+
+    /** Returns false if the connection is already a member. */
+    boolean add(Connection connection) {
+        synchronized (writeLock) {
+            if (slotOf.containsKey(connection.id())) {
+                return false;
+            }
+            int slot = takeFreeSlot();
+            if (slot < 0) {
+                slot = highWater;
+                if (slot == slots.length()) {
+                    grow();
+                }
+            }
+            slotOf.put(connection.id(), slot);
+            slots.setRelease(slot, connection);
+            if (slot >= highWater) {
+                highWater = slot + 1;
+            }
+            size++;
+            return true;
+        }
+    }
+
+    /** Returns false if the connection was not a member. */
+    boolean remove(Connection connection) {
+        synchronized (writeLock) {
+            Integer slot = slotOf.remove(connection.id());
+            if (slot == null) {
+                return false;
+            }
+            slots.setRelease(slot, null);
+            size--;
+            if (slot == highWater - 1) {
+                int top = slot;
+                while (top > 0 && slots.getPlain(top - 1) == null) {
+                    top--;
+                }
+                highWater = top;
+            } else {
+                if (freeCount == freeSlots.length) {
+                    int[] grown = new int[freeSlots.length * 2];
+                    System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+                    freeSlots = grown;
+                }
+                freeSlots[freeCount++] = slot;
+            }
+            if (size == 0) {
+                freeCount = 0;
+            }
+            return true;
+        }
+    }
+
+    boolean contains(Connection connection) {
+        synchronized (writeLock) {
+            return slotOf.containsKey(connection.id());
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        synchronized (writeLock) {
+            slotOf.clear();
+            freeCount = 0;
+            slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+            highWater = 0;
+            size = 0;
+        }
+    }
+
+    /** Visits the current members without locking; concurrent joins and leaves may or may not be seen. */
+    void forEach(Consumer<Connection> action) {
+        AtomicReferenceArray<Connection> current = slots;
+        int end = Math.min(highWater, current.length());
+        for (int i = 0; i < end; i++) {
+            Connection connection = current.getAcquire(i);
+            if (connection != null) {
+                action.accept(connection);
+            }
+        }
+    }
+
+    private void grow() {
+        AtomicReferenceArray<Connection> old = slots;
+        AtomicReferenceArray<Connection> grown = new AtomicReferenceArray<>(old.length() * 2);
+        for (int i = 0; i < old.length(); i++) {
+            grown.setPlain(i, old.getPlain(i));
+        }
+        slots = grown;
+    }
+
+    /**
+     * Pops a reusable slot, or returns -1. Free-listed slots that have since been trimmed off the top
+     * (or refilled after the top grew back past them) are stale and skipped here rather than being
+     * searched for when the top shrinks.
+     */
+    private int takeFreeSlot() {
+        while (freeCount > 0) {
+            int slot = freeSlots[--freeCount];
+            if (slot < highWater && slots.getPlain(slot) == null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
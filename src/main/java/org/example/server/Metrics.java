@@ -0,0 +1,82 @@
+package org.example.server;
+
+import org.example.server.metrics.Counter;
+import org.example.server.metrics.Histogram;
+import org.example.server.metrics.MetricsEndpoint;
+import org.example.server.metrics.MetricsRegistry;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * The server's metrics. Hot paths record into these fields directly; nothing is looked up by name.
+ */
+final class Metrics {
+    static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    static final Counter CONNECTIONS_OPENED = REGISTRY.counter("connections_opened_total", "Connections accepted");
+    static final Counter CONNECTIONS_CLOSED = REGISTRY.counter("connections_closed_total", "Connections closed");
+    static final Counter MESSAGES_IN = REGISTRY.counter("messages_in_total", "Commands, chat lines and frames received");
+    static final Counter BYTES_IN = REGISTRY.counter("bytes_in_total", "Bytes read from clients");
+    static final Counter MESSAGES_QUEUED = REGISTRY.counter("messages_queued_total", "Messages queued for clients");
+    static final Counter MESSAGES_DROPPED = REGISTRY.counter("messages_dropped_total", "Messages dropped for slow clients");
+    static final Counter SLOW_CONSUMER_DISCONNECTS = REGISTRY.counter("slow_consumer_disconnects_total", "Clients disconnected for falling behind");
+    static final Counter BYTES_OUT = REGISTRY.counter("bytes_out_total", "Bytes written to clients");
+    static final Counter VIDEO_LAYER_SWITCHES = REGISTRY.counter("video_layer_switches_total", "Simulcast layer changes for viewers");
+    static final Counter ROOM_CACHE_EVICTIONS = REGISTRY.counter("room_cache_evictions_total", "Room join caches dropped for memory or idleness");
+    static final Counter RATE_LIMITED = REGISTRY.counter("rate_limited_total", "Messages refused by a client's or a room's rate limit");
+    static final Counter RATE_LIMIT_DISCONNECTS = REGISTRY.counter("rate_limit_disconnects_total", "Clients disconnected for exceeding a rate limit");
+    static final Counter RECORDING_DROPS = REGISTRY.counter("recording_drops_total", "Frames left out of recordings because the disk was behind");
+    static final Counter PLAYBACKS = REGISTRY.counter("playbacks_total", "Recordings played back");
+    static final Counter COMPRESSION_IN = REGISTRY.counter("compression_in_bytes_total", "Bytes of frames compressed for clients that asked for it");
+    static final Counter COMPRESSION_OUT = REGISTRY.counter("compression_out_bytes_total", "Compressed bytes those frames became, before fan-out");
+    static final Counter SESSIONS_RESUMED = REGISTRY.counter("sessions_resumed_total", "Clients that resumed a session after reconnecting");
+    static final Counter RESUME_GAPS = REGISTRY.counter("resume_gaps_total", "Resumes that missed more than the room still had to replay");
+    static final Counter MEDIA_PACKETS_IN = REGISTRY.counter("media_packets_in_total", "UDP media packets received from known clients");
+    static final Counter MEDIA_PACKETS_OUT = REGISTRY.counter("media_packets_out_total", "UDP media packets sent");
+    static final Counter MEDIA_PACKETS_DROPPED = REGISTRY.counter("media_packets_dropped_total", "UDP media packets not sent: socket buffer full or loss injected");
+    static final Counter MEDIA_RECOVERED = REGISTRY.counter("media_packets_recovered_total", "Lost UDP media packets rebuilt from parity");
+    static final Counter MEDIA_LATE = REGISTRY.counter("media_packets_late_total", "UDP media packets that arrived after their frame was handed on or given up");
+    static final Counter MEDIA_FRAMES_LOST = REGISTRY.counter("media_frames_lost_total", "Frames from owners given up on for missing UDP packets");
+    static final Counter BROADCASTS = REGISTRY.counter("broadcasts_total", "Room broadcasts");
+    static final Counter BROADCAST_RECIPIENTS = REGISTRY.counter("broadcast_recipients_total", "Messages handed to room members by broadcasts");
+    static final Histogram HANDLE_TIME = REGISTRY.histogram("handle_seconds", "Time to handle one inbound message", 1e-9);
+    static final Histogram BROADCAST_TIME = REGISTRY.histogram("broadcast_seconds", "Time to hand one broadcast to every member", 1e-9);
+    static final Histogram QUEUE_DEPTH = REGISTRY.histogram("outbound_queue_depth", "Messages already queued when a message is offered", 1);
+
+    static {
+        REGISTRY.gauge("connections", "Open connections", () -> CONNECTIONS_OPENED.get() - CONNECTIONS_CLOSED.get());
+        REGISTRY.gauge("clients", "Clients that have said hello", Server.allClients::size);
+        REGISTRY.gauge("rooms", "Open rooms", Server.rooms::size);
+        REGISTRY.gauge("sessions", "Resumable sessions, connected or not", Sessions::size);
+        REGISTRY.gauge("room_cache_bytes", "Bytes held by room join caches", RoomCache::totalBytes);
+        REGISTRY.counter("buffers_allocated_total", "Pooled frame buffers allocated from the OS", Server.buffers::allocatedCount);
+        REGISTRY.counter("buffers_reused_total", "Pooled frame buffers reused after release", Server.buffers::reusedCount);
+        REGISTRY.counter("buffers_leaked_total", "Pooled frame buffers collected without being released", Server.buffers::leakedCount);
+        REGISTRY.gauge("buffers_in_use", "Pooled frame buffers not yet released", Server.buffers::inUse);
+        REGISTRY.gauge("buffers_in_use_bytes", "Bytes of pooled frame buffers not yet released", Server.buffers::inUseBytes);
+        REGISTRY.gauge("buffers_idle_bytes", "Bytes of released frame buffers kept for reuse", Server.buffers::idleBytes);
+    }
+
+    private Metrics() {
+    }
+
+    /** Starts the scrape endpoint (unless the port is negative) and registers the MBean. */
+    static void publish() {
+        if (ServerConfig.METRICS_PORT >= 0) {
+            try {
+                InetSocketAddress address = new InetSocketAddress(ServerConfig.METRICS_HOST, ServerConfig.METRICS_PORT);
+                MetricsEndpoint.serveHttp(REGISTRY, address);
+                System.out.println("Metrics on http://" + ServerConfig.METRICS_HOST + ":" + ServerConfig.METRICS_PORT + "/metrics");
+            } catch (IOException e) {
+                System.err.println("Could not start metrics endpoint: " + e.getMessage());
+            }
+        }
+        try {
+            MetricsEndpoint.registerMBean(REGISTRY, "org.example.server:type=Metrics");
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+}
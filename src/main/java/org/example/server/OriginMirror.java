@@ -0,0 +1,124 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Edge mode: follows the origin's room directory and lists every origin room locally as a
+ * mirrored {@link Room}. Nothing is relayed until a local viewer joins one; the room then opens
+ * its own {@link RelayLink}. Rooms created on this edge stay local, and a local room hides an
+ * origin room of the same name.
+ *
+ * <p>The origin's versioned directory is followed like a client does: deltas on top of a
+ * snapshot, and a new snapshot after a gap. If the origin goes away every mirrored room is closed
+ * and the link is retried every {@link #RETRY_SECONDS} seconds.
+ */
+final class OriginMirror {
+    private static final long RETRY_SECONDS = 2;
+
+    private final InetSocketAddress origin;
+    // Only touched by the current link's reading thread
+    private final Map<String, Room> mirrored = new HashMap<>();
+    private long version;
+    private boolean awaitingSnapshot;
+
+    OriginMirror(InetSocketAddress origin) {
+        this.origin = origin;
+    }
+
+    void start() {
+        awaitingSnapshot = true;
+        DirectoryLink link = new DirectoryLink();
+        link.send(FrameCodec.encode(FrameType.HELLO, ServerConfig.NODE_NAME));
+        link.send(FrameCodec.encode(FrameType.ROOM_LIST_REQUEST, ""));
+        link.start();
+        System.out.println("Following rooms on origin " + origin);
+    }
+
+    private final class DirectoryLink extends UpstreamLink {
+        DirectoryLink() {
+            super(origin, "directory");
+        }
+
+        @Override
+        public void onFrame(byte type, byte[] block, int off, int len) {
+            switch (type) {
+                case FrameType.ROOM_LIST -> {
+                    version = FrameCodec.getLong(block, off);
+                    awaitingSnapshot = false;
+                    replaceAll(FrameCodec.decodeNames(block, off + 8, len - 8));
+                }
+                case FrameType.ROOM_LIST_DELTA -> {
+                    List<String> added = new ArrayList<>();
+                    List<String> removed = new ArrayList<>();
+                    long seq = FrameCodec.decodeRoomDelta(block, off, len, added, removed);
+                    if (awaitingSnapshot || seq <= version) {
+                        return;
+                    }
+                    if (seq != version + 1) {
+                        awaitingSnapshot = true;
+                        send(FrameCodec.encode(FrameType.ROOM_LIST_REQUEST, ""));
+                        return;
+                    }
+                    version = seq;
+                    removed.forEach(OriginMirror.this::unmirror);
+                    added.forEach(OriginMirror.this::mirror);
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        void onClosed() {
+            replaceAll(List.of());
+            Thread.ofVirtual().name("origin-retry").start(() -> {
+                try {
+                    TimeUnit.SECONDS.sleep(RETRY_SECONDS);
+                    OriginMirror.this.start();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    private void replaceAll(List<String> names) {
+        Set<String> keep = new HashSet<>(names);
+        for (String name : new ArrayList<>(mirrored.keySet())) {
+            if (!keep.contains(name)) {
+                unmirror(name);
+            }
+        }
+        names.forEach(this::mirror);
+    }
+
+    private void mirror(String name) {
+        if (mirrored.containsKey(name)) {
+            return;
+        }
+        Room room = Room.mirror(name, origin);
+        if (Server.rooms.add(room)) {
+            mirrored.put(name, room);
+        } else {
+            System.out.println("Origin room " + name + " is hidden by a local room of the same name.");
+        }
+    }
+
+    private void unmirror(String name) {
+        Room room = mirrored.remove(name);
+        if (room != null) {
+            Server.rooms.remove(name, room);
+            room.unmirror();
+        }
+    }
+}
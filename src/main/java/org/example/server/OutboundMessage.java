@@ -0,0 +1,310 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+import org.example.protocol.LineDecoder;
+import org.example.protocol.TileFrame;
+
+import org.example.protocol.Compression;
+import org.example.server.buffer.PooledBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.Deflater;
+
+/**
+ * A message to one or more clients, independent of the protocol each of them speaks. It starts
+ * out in one wire form and the other form is built the first time a client needs it, so a
+ * broadcast encodes at most once per protocol no matter how many members receive it. Room lists,
+ * the one large message every client gets, are likewise compressed once for all clients that
+ * asked for compression.
+ *
+ * <p>Video frames are copied once into a {@link PooledBuffer} that every member's write shares
+ * without copying. Whoever creates such a message {@link #release}s it once it has been handed
+ * out; anything that keeps it longer, a queue or the join cache, holds its own reference.
+ */
+final class OutboundMessage {
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    // Smaller room lists are sent as they are
+    private static final int MIN_COMPRESSED_LENGTH = 128;
+
+    private final byte type;
+    private final boolean droppable;
+    private final boolean urgent;
+    private final byte[] wire;
+    private final boolean wireIsBinary;
+    private final int payloadOffset;
+    private final int payloadLength;
+    // The binary frame, instead of wire, for video; binary then wraps it
+    private final PooledBuffer pooled;
+    private final boolean videoDelta;
+    private EncodedMessage binary;
+    private EncodedMessage text;
+    private EncodedMessage compressed;
+    private EncodedMessage sequenced;
+    // Place in the room's replay buffer, or 0; set before the message is sent
+    private long seq;
+
+    private OutboundMessage(byte type, byte[] wire, boolean wireIsBinary, int payloadOffset, int payloadLength) {
+        this(type, type == FrameType.CHAT || type == FrameType.VIDEO_FRAME || type == FrameType.VIDEO_LAYER,
+                wire, wireIsBinary, payloadOffset, payloadLength);
+    }
+
+    private OutboundMessage(byte type, boolean droppable, byte[] wire, boolean wireIsBinary, int payloadOffset, int payloadLength) {
+        this.type = type;
+        this.droppable = droppable;
+        this.urgent = type == FrameType.INFO || type == FrameType.ERROR || type == FrameType.ROOM_LIST;
+        this.wire = wire;
+        this.wireIsBinary = wireIsBinary;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+        this.pooled = null;
+        this.videoDelta = false;
+    }
+
+    private OutboundMessage(byte type, PooledBuffer pooled, boolean videoDelta) {
+        this.type = type;
+        this.droppable = true;
+        this.urgent = false;
+        this.wire = null;
+        this.wireIsBinary = true;
+        this.payloadOffset = FrameCodec.HEADER_LENGTH;
+        this.payloadLength = pooled.length() - FrameCodec.HEADER_LENGTH;
+        this.pooled = pooled;
+        this.videoDelta = videoDelta;
+        this.binary = new EncodedMessage(pooled, true, false);
+    }
+
+    static OutboundMessage of(byte type, String text) {
+        byte[] frame = FrameCodec.encode(type, text);
+        return new OutboundMessage(type, frame, true, FrameCodec.HEADER_LENGTH, frame.length - FrameCodec.HEADER_LENGTH);
+    }
+
+    static OutboundMessage info(String text) {
+        return of(FrameType.INFO, text);
+    }
+
+    static OutboundMessage notice(String text) {
+        return of(FrameType.NOTICE, text);
+    }
+
+    static OutboundMessage error(String text) {
+        return of(FrameType.ERROR, text);
+    }
+
+    static OutboundMessage roomList(long seq, Collection<String> names) {
+        return binary(FrameType.ROOM_LIST, FrameCodec.encodeRoomList(seq, names));
+    }
+
+    /** Only for binary clients; text clients get a full {@link #roomList} instead. */
+    static OutboundMessage roomListDelta(long seq, Collection<String> added, Collection<String> removed) {
+        return binary(FrameType.ROOM_LIST_DELTA, FrameCodec.encodeRoomDelta(seq, added, removed));
+    }
+
+    static OutboundMessage media(byte[] payload) {
+        return binary(FrameType.MEDIA, payload);
+    }
+
+    static OutboundMessage session(long token) {
+        byte[] payload = new byte[8];
+        FrameCodec.putLong(payload, 0, token);
+        return binary(FrameType.SESSION, payload);
+    }
+
+    /** A {@code SEQUENCED} frame with no message in it: the room the client is now in numbers from after {@code seq}. */
+    static OutboundMessage numbering(long seq) {
+        byte[] payload = new byte[8];
+        FrameCodec.putLong(payload, 0, seq);
+        return binary(FrameType.SEQUENCED, payload);
+    }
+
+    private static OutboundMessage binary(byte type, byte[] payload) {
+        return new OutboundMessage(type, FrameCodec.encode(type, payload, 0, payload.length),
+                true, FrameCodec.HEADER_LENGTH, payload.length);
+    }
+
+    /** A chat line: the sender's prefix followed by the text, copied straight from the inbound frame. */
+    static OutboundMessage chat(byte[] prefix, byte[] text, int off, int len) {
+        byte[] frame = new byte[FrameCodec.HEADER_LENGTH + prefix.length + len];
+        FrameCodec.writeHeader(frame, 0, FrameType.CHAT, prefix.length + len);
+        System.arraycopy(prefix, 0, frame, FrameCodec.HEADER_LENGTH, prefix.length);
+        System.arraycopy(text, off, frame, FrameCodec.HEADER_LENGTH + prefix.length, len);
+        return new OutboundMessage(FrameType.CHAT, frame, true, FrameCodec.HEADER_LENGTH, prefix.length + len);
+    }
+
+    /**
+     * A video frame carrying {@code payload}, the JPEG or tiled frame from a publisher or one layer
+     * of a simulcast frame, copied into a pooled buffer; the caller releases it.
+     */
+    static OutboundMessage video(byte[] payload, int off, int len) {
+        PooledBuffer buffer = Server.buffers.allocate(FrameCodec.HEADER_LENGTH + len);
+        buffer.contents().put(0, FrameType.VIDEO_FRAME).putInt(1, len).put(FrameCodec.HEADER_LENGTH, payload, off, len);
+        return new OutboundMessage(FrameType.VIDEO_FRAME, buffer, TileFrame.isDelta(payload, off, len));
+    }
+
+    /** The first {@code length} bytes of {@code frame}, a complete binary frame, copied into a pooled buffer; the caller releases it. */
+    static OutboundMessage copyOf(byte[] frame, int length) {
+        PooledBuffer buffer = Server.buffers.allocate(length);
+        buffer.contents().put(0, frame, 0, length);
+        return new OutboundMessage(frame[0], buffer, false);
+    }
+
+    /**
+     * Binary frames deflated together, or null if that would not make them smaller. Droppable only
+     * if every frame in it is.
+     */
+    static OutboundMessage compressed(byte[] frames, int len, boolean droppable) {
+        byte[] deflated = deflate(frames, len);
+        if (deflated == null) {
+            return null;
+        }
+        return new OutboundMessage(FrameType.COMPRESSED, droppable, FrameCodec.encode(FrameType.COMPRESSED, deflated, 0, deflated.length),
+                true, FrameCodec.HEADER_LENGTH, deflated.length);
+    }
+
+    private static byte[] deflate(byte[] src, int len) {
+        byte[] deflated = Compression.deflate(DEFLATERS.get(), src, 0, len);
+        Metrics.COMPRESSION_IN.add(len);
+        Metrics.COMPRESSION_OUT.add(deflated == null ? len : deflated.length);
+        return deflated;
+    }
+
+    /** A complete binary frame received from another node, passed on without copying. */
+    static OutboundMessage forward(byte[] block) {
+        return new OutboundMessage(block[0], block, true, FrameCodec.HEADER_LENGTH, block.length - FrameCodec.HEADER_LENGTH);
+    }
+
+    /**
+     * A {@code CHAT_HISTORY} record from a room's log. Binary clients get it straight from the
+     * log's mapping; text clients get the chat line alone.
+     */
+    static EncodedMessage history(ByteBuffer record, boolean binaryProtocol) {
+        if (binaryProtocol) {
+            return new EncodedMessage(record, true, false);
+        }
+        int lineOffset = FrameCodec.HEADER_LENGTH + 8;
+        byte[] line = new byte[record.limit() - lineOffset + 1];
+        record.get(lineOffset, line, 0, line.length - 1);
+        line[line.length - 1] = '\n';
+        return new EncodedMessage(line, true, false);
+    }
+
+    byte type() {
+        return type;
+    }
+
+    /** A tile delta, which viewers can only apply on top of the frames before it. */
+    boolean isVideoDelta() {
+        return videoDelta;
+    }
+
+    /** The whole message in the binary protocol; callers must not modify it. A copy for pooled messages. */
+    byte[] binaryFrame() {
+        if (pooled != null) {
+            byte[] frame = new byte[pooled.length()];
+            pooled.contents().get(0, frame);
+            return frame;
+        }
+        return wireIsBinary ? wire : toBinary();
+    }
+
+    /** The whole message in the binary protocol, without copying; callers must not modify it or move its position. */
+    ByteBuffer binaryBuffer() {
+        return pooled != null ? pooled.contents() : ByteBuffer.wrap(binaryFrame());
+    }
+
+    /** The pooled buffer holding the message, or null if it is not pooled. */
+    PooledBuffer pooled() {
+        return pooled;
+    }
+
+    /** Size of the message in the protocol it was created in. */
+    int wireLength() {
+        return pooled != null ? pooled.length() : wire.length;
+    }
+
+    /** Adds a reference to a pooled message, for a holder that keeps it; does nothing for others. */
+    void retain() {
+        if (pooled != null) {
+            pooled.retain();
+        }
+    }
+
+    void release() {
+        if (pooled != null) {
+            pooled.release();
+        }
+    }
+
+    long seq() {
+        return seq;
+    }
+
+    void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    /** A {@code SEQUENCED} frame: the sequence number followed by the binary frame. */
+    byte[] sequencedFrame() {
+        byte[] frame = binaryFrame();
+        byte[] out = new byte[FrameCodec.HEADER_LENGTH + 8 + frame.length];
+        FrameCodec.writeHeader(out, 0, FrameType.SEQUENCED, 8 + frame.length);
+        FrameCodec.putLong(out, FrameCodec.HEADER_LENGTH, seq);
+        System.arraycopy(frame, 0, out, FrameCodec.HEADER_LENGTH + 8, frame.length);
+        return out;
+    }
+
+    /** The encoding for a client that can resume. */
+    EncodedMessage sequenced() {
+        if (sequenced == null) {
+            sequenced = new EncodedMessage(sequencedFrame(), droppable, urgent);
+        }
+        return sequenced;
+    }
+
+    /** The binary encoding for a client that asked for compression. */
+    EncodedMessage compressed() {
+        if ((type != FrameType.ROOM_LIST && type != FrameType.ROOM_LIST_DELTA) || wire.length < MIN_COMPRESSED_LENGTH) {
+            return encoded(true);
+        }
+        if (compressed == null) {
+            byte[] deflated = deflate(wire, wire.length);
+            compressed = deflated == null ? encoded(true)
+                    : new EncodedMessage(FrameCodec.encode(FrameType.COMPRESSED, deflated, 0, deflated.length), droppable, urgent);
+        }
+        return compressed;
+    }
+
+    EncodedMessage encoded(boolean binaryProtocol) {
+        if (binaryProtocol) {
+            if (binary == null) {
+                binary = new EncodedMessage(wireIsBinary ? wire : toBinary(), droppable, urgent);
+            }
+            return binary;
+        }
+        if (text == null) {
+            text = new EncodedMessage(wireIsBinary ? toText() : wire, droppable, urgent);
+        }
+        return text;
+    }
+
+    private byte[] toBinary() {
+        return FrameCodec.encode(type, wire, payloadOffset, payloadLength);
+    }
+
+    private byte[] toText() {
+        if (type == FrameType.VIDEO_FRAME) {
+            byte[] header = LineDecoder.frameHeader(payloadLength);
+            byte[] block = new byte[header.length + payloadLength];
+            System.arraycopy(header, 0, block, 0, header.length);
+            pooled.contents().get(payloadOffset, block, header.length, payloadLength);
+            return block;
+        }
+        String body = type == FrameType.ROOM_LIST
+                ? String.join(",", FrameCodec.decodeNames(wire, payloadOffset + 8, payloadLength - 8))
+                : FrameCodec.text(wire, payloadOffset, payloadLength);
+        return (FrameType.textPrefix(type) + body + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,325 @@
+package org.example.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Backlog of messages waiting to be written to one connection, bounded both in messages and in
+ * bytes (video frames are large). Producers never block: once the queue is full the
+ * {@link SlowConsumerPolicy} decides what is dropped, or reports {@link Offer#OVERFLOW} so the
+ * caller disconnects the client. Backed by ring arrays, so enqueueing a shared message allocates
+ * nothing.
+ *
+ * <p>Messages the writer has started copying out are pinned and never evicted, since part of
+ * them may already be on the wire.
+ *
+ * <p>A queued message is retained until it has been written or dropped, so pooled bytes stay
+ * valid while they wait here.
+ *
+ * <p>Output is batched: a message that lands in an empty queue waits up to the flush tick so that
+ * whatever else arrives meanwhile goes out in the same write. An urgent message, or a backlog of
+ * flushBytes, asks for a flush straight away.
+ */
+final class OutboundQueue {
+    /**
+     * FIRST: the queue was empty, flush after the tick. FLUSH: flush now. QUEUED: a flush is
+     * already arranged.
+     */
+    enum Offer { FIRST, FLUSH, QUEUED, DROPPED, OVERFLOW }
+
+    // Control messages are never dropped, so they may overrun the capacity up to this factor
+    private static final int CONTROL_OVERRUN_FACTOR = 4;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final int capacity;
+    private final long maxBytes;
+    private final SlowConsumerPolicy policy;
+    private final long timeoutNanos;
+    private final long flushTickNanos;
+    private final int flushBytes;
+
+    private EncodedMessage[] ring = new EncodedMessage[16];
+    private long[] enqueuedAt = new long[16];
+    private int head;
+    private int size;
+    private int headOffset;
+    private int pinned;
+    private long queuedBytes;
+    private long writtenBytes;
+    private long dropped;
+    private boolean flushRequested;
+    private boolean closed;
+
+    OutboundQueue() {
+        this(ServerConfig.OUTBOUND_QUEUE_CAPACITY, ServerConfig.OUTBOUND_QUEUE_BYTES,
+                ServerConfig.SLOW_CONSUMER_POLICY, ServerConfig.SLOW_CONSUMER_TIMEOUT_MS,
+                ServerConfig.FLUSH_TICK_MS, ServerConfig.FLUSH_BYTES);
+    }
+
+    OutboundQueue(int capacity, long maxBytes, SlowConsumerPolicy policy, long timeoutMillis,
+                  long flushTickMillis, int flushBytes) {
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.flushTickNanos = TimeUnit.MILLISECONDS.toNanos(flushTickMillis);
+        this.flushBytes = flushBytes;
+    }
+
+    /** How long a caller that got {@link Offer#FIRST} should wait before flushing. */
+    long flushTickNanos() {
+        return flushTickNanos;
+    }
+
+    Offer offer(EncodedMessage message) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (closed) {
+                return Offer.DROPPED;
+            }
+            Metrics.QUEUE_DEPTH.record(size);
+            if (policy == SlowConsumerPolicy.DISCONNECT && size > 0 && now - enqueuedAt[head] > timeoutNanos) {
+                Metrics.SLOW_CONSUMER_DISCONNECTS.increment();
+                return Offer.OVERFLOW;
+            }
+            int length = message.length();
+            while (isFull(length) && evictOne()) {
+                // keep evicting until the new message fits
+            }
+            if (isFull(length)) {
+                if (message.isDroppable()) {
+                    dropped++;
+                    Metrics.MESSAGES_DROPPED.increment();
+                    return Offer.DROPPED;
+                }
+                if (size >= capacity * CONTROL_OVERRUN_FACTOR || queuedBytes + length > maxBytes * CONTROL_OVERRUN_FACTOR) {
+                    Metrics.SLOW_CONSUMER_DISCONNECTS.increment();
+                    return Offer.OVERFLOW;
+                }
+            }
+            if (size == ring.length) {
+                grow();
+            }
+            int tail = (head + size) & (ring.length - 1);
+            message.retain();
+            ring[tail] = message;
+            enqueuedAt[tail] = now;
+            size++;
+            queuedBytes += length;
+            Metrics.MESSAGES_QUEUED.increment();
+            if (flushRequested) {
+                return Offer.QUEUED;
+            }
+            if (message.isUrgent() || flushTickNanos == 0 || queuedBytes >= flushBytes) {
+                flushRequested = true;
+                notEmpty.signal();
+                return Offer.FLUSH;
+            }
+            if (size == 1) {
+                notEmpty.signal();
+                return Offer.FIRST;
+            }
+            return Offer.QUEUED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return size == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bytes waiting to be written. */
+    long queuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bytes written since the queue was created. */
+    long writtenBytes() {
+        lock.lock();
+        try {
+            return writtenBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long droppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Copies pending bytes, oldest first, into {@code dst} without consuming them. */
+    void fill(ByteBuffer dst) {
+        lock.lock();
+        try {
+            flushRequested = false;
+            int offset = headOffset;
+            int i = 0;
+            for (; i < size && dst.hasRemaining(); i++) {
+                ring[(head + i) & (ring.length - 1)].copyTo(offset, dst);
+                offset = 0;
+            }
+            pinned = Math.max(pinned, i);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until there is a batch to write: a flush was asked for, or the oldest message has
+     * waited a whole tick. Returns false once the queue is closed.
+     */
+    boolean awaitBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed) {
+                if (size == 0) {
+                    notEmpty.await();
+                    continue;
+                }
+                long wait = flushRequested ? 0 : enqueuedAt[head] + flushTickNanos - System.nanoTime();
+                if (wait <= 0) {
+                    return true;
+                }
+                notEmpty.awaitNanos(wait);
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The oldest message, for a writer that sends whole messages, or null if there is none. It is
+     * pinned until {@link #consume}d.
+     */
+    EncodedMessage peek() {
+        lock.lock();
+        try {
+            flushRequested = false;
+            if (size == 0) {
+                return null;
+            }
+            pinned = Math.max(pinned, 1);
+            return ring[head];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops {@code bytes} bytes from the front of the queue once they have been written. */
+    void consume(int bytes) {
+        lock.lock();
+        try {
+            writtenBytes += bytes;
+            while (bytes > 0 && size > 0) {
+                int left = ring[head].length() - headOffset;
+                if (bytes < left) {
+                    headOffset += bytes;
+                    break;
+                }
+                bytes -= left;
+                queuedBytes -= ring[head].length();
+                ring[head].release();
+                ring[head] = null;
+                head = (head + 1) & (ring.length - 1);
+                size--;
+                headOffset = 0;
+            }
+            pinned = headOffset > 0 ? 1 : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Discards everything and wakes a writer blocked in {@link #awaitBatch()}. */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            while (size > 0) {
+                ring[head].release();
+                ring[head] = null;
+                head = (head + 1) & (ring.length - 1);
+                size--;
+            }
+            headOffset = 0;
+            pinned = 0;
+            queuedBytes = 0;
+            flushRequested = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isFull(int incoming) {
+        return size >= capacity || (size > 0 && queuedBytes + incoming > maxBytes);
+    }
+
+    private boolean evictOne() {
+        for (int i = pinned; i < size; i++) {
+            if (policy == SlowConsumerPolicy.DROP_OLDEST || ring[(head + i) & (ring.length - 1)].isDroppable()) {
+                removeAt(i);
+                dropped++;
+                Metrics.MESSAGES_DROPPED.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeAt(int index) {
+        int mask = ring.length - 1;
+        EncodedMessage removed = ring[(head + index) & mask];
+        queuedBytes -= removed.length();
+        removed.release();
+        for (int j = index; j > 0; j--) {
+            ring[(head + j) & mask] = ring[(head + j - 1) & mask];
+            enqueuedAt[(head + j) & mask] = enqueuedAt[(head + j - 1) & mask];
+        }
+        ring[head] = null;
+        head = (head + 1) & mask;
+        size--;
+    }
+
+    private void grow() {
+        EncodedMessage[] grownRing = new EncodedMessage[ring.length * 2];
+        long[] grownTimes = new long[ring.length * 2];
+        for (int i = 0; i < size; i++) {
+            grownRing[i] = ring[(head + i) & (ring.length - 1)];
+            grownTimes[i] = enqueuedAt[(head + i) & (ring.length - 1)];
+        }
+        ring = grownRing;
+        enqueuedAt = grownTimes;
+        head = 0;
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+import org.example.server.dvr.RecordingReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a recording into a playback {@link Room} on its own virtual thread, through the same
+ * broadcast calls a live owner's frames take, so joiners, simulcast and relays behave as for a
+ * live room. Frames keep their recorded spacing divided by the speed. Playback stops at the end of
+ * the recording or as soon as the room empties.
+ */
+final class Playback implements Runnable {
+    private final Room room;
+    private final RecordingReader reader;
+    private final double speed;
+
+    private Playback(Room room, RecordingReader reader, double speed) {
+        this.room = room;
+        this.reader = reader;
+        this.speed = speed;
+    }
+
+    static List<String> recordings() throws IOException {
+        return ServerConfig.RECORDING_DIR.isEmpty() ? List.of() : RecordingReader.list(Path.of(ServerConfig.RECORDING_DIR));
+    }
+
+    /**
+     * Opens the recording in a new room named after it and starts playing. Returns null if there is
+     * no such recording.
+     */
+    static Room start(String recording, double speed, long startSeconds) throws IOException {
+        if (!recordings().contains(recording)) {
+            return null;
+        }
+        RecordingReader reader = RecordingReader.open(Path.of(ServerConfig.RECORDING_DIR, recording));
+        if (startSeconds > 0) {
+            reader.seek(TimeUnit.SECONDS.toNanos(startSeconds));
+        }
+        Room room = Room.playback("replay:" + recording);
+        for (int n = 2; !Server.rooms.add(room); n++) {
+            room = Room.playback("replay:" + recording + "#" + n);
+        }
+        Metrics.PLAYBACKS.increment();
+        Thread.ofVirtual().name("playback-" + room.getName()).start(new Playback(room, reader, speed));
+        return room;
+    }
+
+    @Override
+    public void run() {
+        long begin = System.nanoTime();
+        long first = -1;
+        try (reader) {
+            byte[] frame;
+            while (!room.isClosed() && (frame = reader.next()) != null) {
+                if (first < 0) {
+                    first = reader.time();
+                }
+                long wait = begin + (long) ((reader.time() - first) / speed) - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                play(frame);
+            }
+        } catch (IOException e) {
+            System.err.println("Playback of room " + room.getName() + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!room.isClosed()) {
+            room.close("The recording has ended.");
+            Server.rooms.remove(room.getName(), room);
+        }
+    }
+
+    private void play(byte[] frame) {
+        int off = FrameCodec.HEADER_LENGTH;
+        int len = frame.length - off;
+        switch (frame[0]) {
+            case FrameType.VIDEO_FRAME -> room.broadcastFrame(frame, off, len);
+            case FrameType.VIDEO_LAYER -> {
+                if (len > 0 && (frame[off] & 0xFF) < Simulcast.MAX_LAYERS) {
+                    room.broadcastLayer(frame[off] & 0xFF, frame, off, len);
+                }
+            }
+            case FrameType.CHAT -> room.deliverChat(OutboundMessage.forward(frame));
+            default -> {
+            }
+        }
+    }
+}
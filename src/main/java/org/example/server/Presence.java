@@ -0,0 +1,102 @@
+package org.example.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Join and leave notices for one room. Below {@link ServerConfig#PRESENCE_THRESHOLD} members each
+ * event is announced on its own; above it, events are only counted and the room gets one summary
+ * per {@link ServerConfig#PRESENCE_INTERVAL_MS}, e.g. "+312 joined (ann, bob, cy), 41 left, 5,120
+ * watching". A flash crowd then costs one message per member per interval instead of one per
+ * member per joiner.
+ */
+final class Presence {
+    private static final int RECENT_NAMES = 3;
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "presence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Room room;
+    private final AtomicInteger joined = new AtomicInteger();
+    private final AtomicInteger left = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // The last few joiners since the previous summary, newest at recentCount - 1
+    private final AtomicReferenceArray<String> recent = new AtomicReferenceArray<>(RECENT_NAMES);
+    private final AtomicLong recentCount = new AtomicLong();
+
+    Presence(Room room) {
+        this.room = room;
+    }
+
+    /** {@code membersBefore} is the member count before the join. */
+    void joined(String name, int membersBefore) {
+        if (membersBefore < ServerConfig.PRESENCE_THRESHOLD) {
+            room.broadcast(OutboundMessage.notice(name + " has joined the room."));
+            return;
+        }
+        joined.incrementAndGet();
+        recent.set((int) (recentCount.getAndIncrement() % RECENT_NAMES), name);
+        schedule();
+    }
+
+    /** {@code membersAfter} is the member count after the leave. */
+    void left(String name, int membersAfter) {
+        if (membersAfter < ServerConfig.PRESENCE_THRESHOLD) {
+            room.broadcast(OutboundMessage.notice(name + " has left the room."));
+            return;
+        }
+        left.incrementAndGet();
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            TICKER.schedule(this::publish, ServerConfig.PRESENCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish() {
+        scheduled.set(false);
+        int joinedCount = joined.getAndSet(0);
+        int leftCount = left.getAndSet(0);
+        List<String> names = recentNames(Math.min(joinedCount, RECENT_NAMES));
+        if (joinedCount == 0 && leftCount == 0) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder();
+        if (joinedCount > 0) {
+            summary.append(String.format(Locale.ROOT, "+%,d joined", joinedCount));
+            if (!names.isEmpty()) {
+                summary.append(" (").append(String.join(", ", names)).append(joinedCount > names.size() ? ", ...)" : ")");
+            }
+            summary.append(", ");
+        }
+        if (leftCount > 0) {
+            summary.append(String.format(Locale.ROOT, "%,d left, ", leftCount));
+        }
+        summary.append(String.format(Locale.ROOT, "%,d watching", room.size()));
+        room.broadcast(OutboundMessage.notice(summary.toString()));
+    }
+
+    private List<String> recentNames(int count) {
+        long newest = recentCount.get();
+        List<String> names = new ArrayList<>(count);
+        for (long i = newest - 1; i >= 0 && i >= newest - count; i--) {
+            String name = recent.getAndSet((int) (i % RECENT_NAMES), null);
+            if (name != null) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+
+import java.net.InetSocketAddress;
+
+/**
+ * This edge's one subscription to a room on the origin. It joins the room there as a relay, so
+ * the origin sends it every simulcast layer and passes its chat through unprefixed, and
+ * re-broadcasts whatever arrives to the local members of the mirrored {@link Room}.
+ */
+final class RelayLink extends UpstreamLink {
+    private final Room room;
+
+    RelayLink(InetSocketAddress origin, Room room) {
+        super(origin, "relay-" + room.getName());
+        this.room = room;
+        send(FrameCodec.encode(FrameType.RELAY_HELLO, ServerConfig.NODE_NAME));
+        send(FrameCodec.encode(FrameType.JOIN_ROOM, room.getName()));
+    }
+
+    /** Forwards a local member's chat line, already prefixed with the member's name. */
+    void forwardChat(OutboundMessage line) {
+        send(line.binaryFrame());
+    }
+
+    @Override
+    public void onFrame(byte type, byte[] block, int off, int len) {
+        switch (type) {
+            case FrameType.VIDEO_FRAME -> room.broadcastFrame(block, off, len);
+            case FrameType.VIDEO_LAYER -> {
+                if (len > 0 && (block[off] & 0xFF) < Simulcast.MAX_LAYERS) {
+                    room.broadcastLayer(block[off] & 0xFF, block, off, len);
+                }
+            }
+            case FrameType.CHAT -> room.deliverChat(OutboundMessage.forward(block));
+            case FrameType.NOTICE -> room.broadcast(OutboundMessage.forward(block));
+            case FrameType.ERROR -> System.err.println("Origin refused relay of " + room.getName() + ": "
+                    + FrameCodec.text(block, off, len));
+            default -> {
+            }
+        }
+    }
+
+    @Override
+    void onClosed() {
+        room.upstreamClosed(this);
+    }
+}
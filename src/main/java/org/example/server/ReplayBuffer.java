@@ -0,0 +1,48 @@
+package org.example.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A room's most recent chat lines and notices, numbered in the order they were broadcast, for
+ * clients resuming a session. Holds the last {@link ServerConfig#RESUME_BUFFER_MESSAGES}. Only
+ * numbering and reading take this lock; the room holds off broadcasts while a client resumes, so
+ * every message numbered by then has reached every member.
+ */
+final class ReplayBuffer {
+    private final OutboundMessage[] ring = new OutboundMessage[Math.max(1, ServerConfig.RESUME_BUFFER_MESSAGES)];
+    // Guarded by this; sequence number of the newest message, the first being 1
+    private long last;
+
+    /** Numbers the message and keeps it. */
+    synchronized void append(OutboundMessage message) {
+        last++;
+        message.setSeq(last);
+        ring[(int) (last % ring.length)] = message;
+    }
+
+    /** Sequence number of the newest message, or 0 if there is none yet. */
+    synchronized long last() {
+        return last;
+    }
+
+    /** Every message still kept, oldest first. */
+    synchronized List<OutboundMessage> all() {
+        return since(Math.max(0, last - ring.length));
+    }
+
+    /** Messages after {@code seq}, oldest first, or null if some of them are no longer kept. */
+    synchronized List<OutboundMessage> since(long seq) {
+        if (seq > last) {
+            return List.of();
+        }
+        if (last - seq > ring.length) {
+            return null;
+        }
+        List<OutboundMessage> messages = new ArrayList<>((int) (last - seq));
+        for (long i = seq + 1; i <= last; i++) {
+            messages.add(ring[(int) (i % ring.length)]);
+        }
+        return messages;
+    }
+}
@@ -1,80 +1,529 @@
 package org.example.server;
 
-import java.io.*;
-import java.net.*;
-import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+import org.example.server.dvr.RecordingWriter;
+import org.example.server.history.ChatLog;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A room and its members. A room is either local, owned by the member who created it, or on an
+ * edge a mirror of a room on the origin with no local owner: while it has local members it is
+ * fed by one {@link RelayLink}, and its members' chat goes to the origin and comes back through
+ * the link like everyone else's. A playback room has neither: a {@link Playback} feeds it a
+ * recording and its members can only watch.
+ */
 public class Room {
     private String name;
-    private Socket owner;
-    private List<Socket> members = new CopyOnWriteArrayList<>();
+    private volatile Connection owner;
+    private final InetSocketAddress origin;
+    // Guarded by this; only for mirrored rooms
+    private RelayLink upstream;
+    private final Membership members = new Membership();
+    private final Presence presence = new Presence(this);
+    private final Simulcast simulcast = new Simulcast();
+    private final RoomCache cache = new RoomCache();
+    private final CompressionBatch batch = new CompressionBatch(this, false);
+    private final CompressionBatch sequencedBatch = new CompressionBatch(this, true);
+    private final ReplayBuffer replay = new ReplayBuffer();
+    // Held shared by a broadcast from caching or logging a message until it has been handed to the
+    // members, and exclusively while a member joins, so a joiner gets each message exactly once
+    private final ReadWriteLock joinLock = new ReentrantReadWriteLock();
+    // Members that asked for compression, without and with resume; chat and notices are batched for
+    // each kind, as plain or SEQUENCED frames, while there are any of it
+    private final AtomicInteger compressing = new AtomicInteger();
+    private final AtomicInteger compressingSequenced = new AtomicInteger();
+    // Other nodes relaying the room; simulcast frames are only kept as received while there are any
+    private final AtomicInteger relays = new AtomicInteger();
+    private final ChatLog chatLog;
+    private final boolean playback;
+    private final TokenBucket chatLimit = TokenBucket.of(ServerConfig.ROOM_CHAT_RATE, ServerConfig.ROOM_CHAT_BURST);
+    private volatile RecordingWriter recorder;
+    private volatile boolean closed;
+
+    Room(String name, Connection owner) {
+        this(name, owner, null, false);
+    }
 
-    public Room(String name, Socket owner) {
+    private Room(String name, Connection owner, InetSocketAddress origin, boolean playback) {
         this.name = name;
         this.owner = owner;
-        this.members.add(owner);
+        this.origin = origin;
+        this.playback = playback;
+        this.chatLog = playback ? null : openChatLog(name);
+        if (owner != null) {
+            this.members.add(owner);
+            countCompressing(owner, 1);
+            startNumbering(owner);
+        }
+    }
+
+    static Room mirror(String name, InetSocketAddress origin) {
+        return new Room(name, null, origin, false);
+    }
+
+    static Room playback(String name) {
+        return new Room(name, null, null, true);
+    }
+
+    /** A room reopened under the same name continues the same log. */
+    private static ChatLog openChatLog(String name) {
+        if (ServerConfig.CHAT_LOG_DIR.isEmpty()) {
+            return null;
+        }
+        Path directory = Path.of(ServerConfig.CHAT_LOG_DIR, "room-" + URLEncoder.encode(name, StandardCharsets.UTF_8));
+        return ChatLog.open(directory, ServerConfig.CHAT_LOG_SEGMENT_BYTES, ServerConfig.CHAT_LOG_RETAIN_BYTES,
+                TimeUnit.MINUTES.toMillis(ServerConfig.CHAT_LOG_RETAIN_MINUTES));
+    }
+
+    /** Records this session of the room, if recording is on, until the room closes or empties. */
+    void startRecording() {
+        if (ServerConfig.RECORDING_DIR.isEmpty()) {
+            return;
+        }
+        String session = URLEncoder.encode(name, StandardCharsets.UTF_8) + "-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+        try {
+            recorder = RecordingWriter.start(Path.of(ServerConfig.RECORDING_DIR, session),
+                    ServerConfig.RECORDING_SEGMENT_BYTES, ServerConfig.RECORDING_QUEUE);
+            System.out.println("Recording room " + name + " as " + session);
+        } catch (IOException e) {
+            System.err.println("Could not record room " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void record(OutboundMessage message) {
+        RecordingWriter writer = recorder;
+        if (writer != null && !(message.pooled() != null ? writer.offer(message.pooled()) : writer.offer(message.binaryFrame()))) {
+            Metrics.RECORDING_DROPS.increment();
+        }
+    }
+
+    private void stopRecording() {
+        RecordingWriter writer = recorder;
+        if (writer != null) {
+            recorder = null;
+            writer.close();
+        }
     }
 
     public String getName() {
         return name;
     }
 
-    public boolean isOwner(Socket socket) {
-        return owner.equals(socket);
+    boolean isOwner(Connection connection) {
+        return owner == connection;
+    }
+
+    boolean isPlayback() {
+        return playback;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    int size() {
+        return members.size();
     }
 
-    public void join(Socket socket) {
-        if (!members.contains(socket)) {
-            members.add(socket);
-            broadcastMessage("NOTICE: " + getClientName(socket) + " has joined the room.");
+    /**
+     * The joiner gets recent chat from the log and the cached frame first, so it has context and a
+     * picture before the next frame. Broadcasts wait while it joins, so each one is either in what
+     * it is sent here or reaches it live. A resumable joiner is first told where the room's
+     * numbering is, which also marks where the numbers of its previous room end.
+     */
+    void join(Connection connection) {
+        if (members.contains(connection)) {
+            return;
+        }
+        joinLock.writeLock().lock();
+        try {
+            startNumbering(connection);
+            if (chatLog != null) {
+                sendHistory(connection, chatLog.last(ServerConfig.CHAT_REPLAY_LINES));
+            }
+            flushBatches();
+            RoomCache.Snapshot snapshot = cache.snapshot();
+            for (OutboundMessage message : snapshot.messages()) {
+                connection.send(message);
+            }
+            RoomCache.release(snapshot.messages());
+            connection.setVideoChain(snapshot.layer());
+            addMember(connection);
+        } finally {
+            joinLock.writeLock().unlock();
+        }
+    }
+
+    private void startNumbering(Connection connection) {
+        if (connection.isResumable()) {
+            connection.send(OutboundMessage.numbering(replay.last()));
+        }
+    }
+
+    private void addMember(Connection connection) {
+        if (members.add(connection)) {
+            countCompressing(connection, 1);
+            if (connection.isRelay()) {
+                relays.incrementAndGet();
+            } else {
+                presence.joined(connection.name(), members.size() - 1);
+            }
+            if (origin != null) {
+                subscribe();
+            }
+        }
+    }
+
+    /**
+     * Puts a resuming client back in the room in place of its previous connection: the chat and
+     * notices it missed after {@code lastSeq}, or a notice if the room no longer has them all, then
+     * the current picture. Like a join, it holds off broadcasts until it is a member, so every
+     * message broadcast meanwhile reaches it exactly once, either replayed or live. A client that
+     * had seen nothing numbered yet is brought back as if joining.
+     */
+    void resume(Connection connection, Connection previous, long lastSeq) {
+        if (members.contains(connection)) {
+            return;
+        }
+        if (members.remove(previous)) {
+            countCompressing(previous, -1);
+        }
+        if (lastSeq == 0) {
+            join(connection);
+            return;
+        }
+        joinLock.writeLock().lock();
+        try {
+            flushBatches();
+            List<OutboundMessage> missed = replay.since(lastSeq);
+            if (missed == null) {
+                Metrics.RESUME_GAPS.increment();
+                connection.send(OutboundMessage.notice("Some messages were missed while you were away."));
+                missed = replay.all();
+            }
+            missed.forEach(connection::send);
+            RoomCache.Snapshot snapshot = cache.snapshot();
+            for (OutboundMessage message : snapshot.messages()) {
+                if (message.type() != FrameType.CHAT) {
+                    connection.send(message);
+                }
+            }
+            RoomCache.release(snapshot.messages());
+            connection.setVideoChain(snapshot.layer());
+            addMember(connection);
+        } finally {
+            joinLock.writeLock().unlock();
+        }
+    }
+
+    /** Moves ownership to the owner's new connection, unless {@code previous} no longer owns the room. */
+    synchronized void reclaim(Connection previous, Connection connection) {
+        if (owner == previous) {
+            owner = connection;
         }
     }
 
-    public void leave(Socket socket) {
-        if (members.remove(socket)) {
-            broadcastMessage("NOTICE: " + getClientName(socket) + " has left the room.");
-            if (members.isEmpty()) {
-                Server.rooms.remove(name);
+    /**
+     * Once this returns no broadcast of the room, batched or not, is still on its way to the
+     * connection, so whatever it is sent next comes after all of this room's messages.
+     */
+    void leave(Connection connection) {
+        boolean removed;
+        joinLock.writeLock().lock();
+        try {
+            removed = members.remove(connection);
+        } finally {
+            joinLock.writeLock().unlock();
+        }
+        if (removed) {
+            flushBatches();
+            countCompressing(connection, -1);
+            if (connection.isRelay()) {
+                relays.decrementAndGet();
+            } else {
+                presence.left(connection.name(), members.size());
+            }
+            if (origin != null) {
+                unsubscribeIfEmpty();
+            } else if (members.isEmpty()) {
+                closed = true;
+                cache.clear();
+                closeChatLog();
+                stopRecording();
+                Server.rooms.remove(name, this);
                 System.out.println("Room " + name + " is now empty and has been removed.");
             }
-            closeSocket(socket);
         }
     }
 
     public void close() {
-        broadcastMessage("NOTICE: The room is closing.");
-        for (Socket socket : members) {
-            closeSocket(socket);
+        close("The room is closing.");
+    }
+
+    void close(String notice) {
+        closed = true;
+        broadcast(OutboundMessage.notice(notice));
+        clearMembers();
+        cache.clear();
+        closeChatLog();
+        stopRecording();
+    }
+
+    private void clearMembers() {
+        flushBatches();
+        members.clear();
+        compressing.set(0);
+        compressingSequenced.set(0);
+        relays.set(0);
+    }
+
+    private void closeChatLog() {
+        if (chatLog != null) {
+            chatLog.close();
         }
     }
 
-    public void broadcastMessage(String message) {
-        for (Socket socket : members) {
-            if (socket != null && !socket.isClosed()) {
-                try {
-                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                    out.println(message);
-                } catch (IOException e) {
-                    System.err.println("Error sending message to socket: " + e.getMessage());
-                    closeSocket(socket);
+    /** Returns false if this room keeps no log. */
+    boolean sendHistory(Connection connection, long fromSeq, int count) {
+        if (chatLog == null) {
+            return false;
+        }
+        sendHistory(connection, fromSeq == 0 ? chatLog.last(count) : chatLog.since(fromSeq, count));
+        return true;
+    }
+
+    private static void sendHistory(Connection connection, List<ByteBuffer> records) {
+        for (ByteBuffer record : records) {
+            connection.send(OutboundMessage.history(record, connection.isBinaryProtocol()));
+        }
+    }
+
+    /** The origin no longer has this room; its notice has already been relayed to the members. */
+    void unmirror() {
+        clearMembers();
+        unsubscribeIfEmpty();
+        closeChatLog();
+    }
+
+    private synchronized void subscribe() {
+        if (upstream == null && !members.isEmpty()) {
+            upstream = new RelayLink(origin, this);
+            upstream.start();
+            System.out.println("Relaying room " + name + " from " + origin);
+        }
+    }
+
+    private synchronized void unsubscribeIfEmpty() {
+        if (upstream != null && members.isEmpty()) {
+            upstream.close();
+            upstream = null;
+            cache.clear();
+            System.out.println("Stopped relaying room " + name + ".");
+        }
+    }
+
+    void upstreamClosed(RelayLink link) {
+        synchronized (this) {
+            if (upstream != link) {
+                return;
+            }
+            upstream = null;
+        }
+        broadcast(OutboundMessage.notice("Lost the connection to the origin of this room."));
+    }
+
+    /**
+     * Relays a video frame, the JPEG or tiled frame {@code payload}, to everyone but the owner who
+     * published it. The payload is copied once into a pooled buffer that every member's write,
+     * the cache and the recording share; the last of them to let go returns it to the pool.
+     */
+    void broadcastFrame(byte[] payload, int off, int len) {
+        long start = System.nanoTime();
+        OutboundMessage frame = OutboundMessage.video(payload, off, len);
+        joinLock.readLock().lock();
+        try {
+            record(frame);
+            cache.frame(0, frame, frame.isVideoDelta());
+            members.forEach(connection -> {
+                if (connection != owner && connection.isOpen()) {
+                    connection.send(frame);
                 }
+            });
+        } finally {
+            joinLock.readLock().unlock();
+            frame.release();
+        }
+        recordBroadcast(start);
+    }
+
+    /**
+     * Relays one layer of a simulcast frame, {@code layer:u8} and the JPEG or tiled frame, to the
+     * viewers currently assigned that layer. A viewer that has just moved to the layer is sent the
+     * layer's cached keyframe and deltas instead of a delta it could not apply. Relays get every
+     * layer as received and choose for their own viewers.
+     */
+    void broadcastLayer(int layer, byte[] block, int off, int len) {
+        long start = System.nanoTime();
+        OutboundMessage frame = OutboundMessage.video(block, off + 1, len - 1);
+        OutboundMessage received = recorder != null || relays.get() > 0 ? OutboundMessage.copyOf(block, off + len) : null;
+        joinLock.readLock().lock();
+        try {
+            simulcast.onFrame(layer, len - 1, start);
+            if (received != null) {
+                record(received);
             }
+            boolean dependent = frame.isVideoDelta();
+            cache.frame(layer, frame, dependent);
+            members.forEach(connection -> {
+                if (connection == owner || !connection.isOpen()) {
+                    return;
+                }
+                if (connection.isRelay()) {
+                    if (received != null) {
+                        connection.send(received);
+                    }
+                } else if (connection.videoLayer(simulcast, start) == layer) {
+                    if (connection.videoChain() == layer) {
+                        connection.send(frame);
+                        return;
+                    }
+                    connection.setVideoChain(layer);
+                    if (dependent) {
+                        List<OutboundMessage> chain = cache.chain(layer);
+                        chain.forEach(connection::send);
+                        RoomCache.release(chain);
+                    } else {
+                        connection.send(frame);
+                    }
+                }
+            });
+        } finally {
+            joinLock.readLock().unlock();
+            frame.release();
+            if (received != null) {
+                received.release();
+            }
+        }
+        recordBroadcast(start);
+    }
+
+    /**
+     * A member's chat line, dropped if the room is over its chat rate. In a mirrored room it only
+     * reaches the members once the origin echoes it.
+     */
+    void broadcastChat(OutboundMessage line) {
+        if (chatLimit != null && !chatLimit.tryAcquire(System.nanoTime())) {
+            Metrics.RATE_LIMITED.increment();
+            return;
+        }
+        if (origin == null) {
+            deliverChat(line);
+            return;
+        }
+        RelayLink link;
+        synchronized (this) {
+            link = upstream;
+        }
+        if (link != null) {
+            link.forwardChat(line);
         }
     }
 
-    private void closeSocket(Socket socket) {
+    /** Logs the line, or keeps it in the join cache if there is no log, and sends it to the members. */
+    void deliverChat(OutboundMessage line) {
+        record(line);
+        joinLock.readLock().lock();
         try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
+            if (chatLog != null) {
+                byte[] frame = line.binaryFrame();
+                chatLog.append(frame, FrameCodec.HEADER_LENGTH, frame.length - FrameCodec.HEADER_LENGTH);
+            } else {
+                cache.chat(line);
             }
-        } catch (IOException e) {
-            System.err.println("Error closing socket: " + e.getMessage());
+            broadcast(line);
+        } finally {
+            joinLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Chat and notices are numbered for resuming clients and reach members that asked for
+     * compression in the next compressed batch. Broadcasts run side by side, so two of them may
+     * reach a member in the opposite order to their numbers.
+     */
+    void broadcast(OutboundMessage message) {
+        long start = System.nanoTime();
+        joinLock.readLock().lock();
+        try {
+            if (message.type() == FrameType.CHAT || message.type() == FrameType.NOTICE) {
+                replay.append(message);
+                deliver(message, true);
+            } else {
+                deliver(message, false);
+            }
+        } finally {
+            joinLock.readLock().unlock();
+        }
+        recordBroadcast(start);
+    }
+
+    private void deliver(OutboundMessage message, boolean numbered) {
+        boolean plain = numbered && compressing.get() > 0;
+        boolean sequenced = numbered && compressingSequenced.get() > 0;
+        members.forEach(connection -> {
+            if (connection.isOpen() && !(connection.usesCompression() && (connection.isResumable() ? sequenced : plain))) {
+                connection.send(message);
+            }
+        });
+        if (plain) {
+            batch.add(message);
+        }
+        if (sequenced) {
+            sequencedBatch.add(message);
+        }
+    }
+
+    /**
+     * Sends a compressed batch, or the messages of one that did not compress, to the members that
+     * asked for compression and can resume, if {@code sequenced}, or cannot.
+     */
+    void sendCompressed(OutboundMessage message, boolean sequenced) {
+        members.forEach(connection -> {
+            if (connection.usesCompression() && connection.isResumable() == sequenced && connection.isOpen()) {
+                connection.send(message);
+            }
+        });
+    }
+
+    private void countCompressing(Connection connection, int delta) {
+        if (connection.usesCompression()) {
+            (connection.isResumable() ? compressingSequenced : compressing).addAndGet(delta);
         }
     }
 
-    private String getClientName(Socket socket) {
-        // Placeholder for client name management; to be replaced with actual logic
-        return "Client";
+    private void flushBatches() {
+        batch.flush();
+        sequencedBatch.flush();
+    }
+
+    private void recordBroadcast(long start) {
+        Metrics.BROADCAST_TIME.record(System.nanoTime() - start);
+        Metrics.BROADCASTS.increment();
+        Metrics.BROADCAST_RECIPIENTS.add(members.size());
     }
 }
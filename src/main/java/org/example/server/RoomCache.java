@@ -0,0 +1,191 @@
+package org.example.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * What a joiner is sent before anything live: the latest frame of each video layer and the most
+ * recent chat lines, up to {@link ServerConfig#ROOM_CHAT_CACHE_BYTES}. Entries are the same
+ * {@link OutboundMessage}s the room broadcast, so caching copies nothing and every joiner shares
+ * their read-only bytes. A JPEG frame is decodable alone, so it replaces the layer's chain; a
+ * tile delta is appended to the keyframe and deltas before it, up to {@link #MAX_CHAIN} frames,
+ * and the whole chain is what a joiner or a viewer switching layers needs to rebuild the picture.
+ *
+ * <p>All caches together are held to {@link ServerConfig#ROOM_CACHE_BYTES}, counted in the wire
+ * bytes of one encoding. Going over evicts the caches of the rooms that have been quiet longest,
+ * and a background sweep evicts any cache idle for {@link ServerConfig#ROOM_CACHE_IDLE_MS}.
+ *
+ * <p>The cache holds a reference to each pooled frame it keeps. What {@link #snapshot} and
+ * {@link #chain} return is retained for the caller, who releases it with {@link #release} once
+ * sent, so a frame evicted meanwhile stays valid until then.
+ */
+final class RoomCache {
+    private static final Set<RoomCache> CACHES = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong TOTAL_BYTES = new AtomicLong();
+    private static final ReentrantLock TRIM_LOCK = new ReentrantLock();
+    // Trimming goes this far below the budget so it does not run again on the next store
+    private static final double TRIM_TARGET = 0.9;
+    // Longer chains are not extended; viewers joining then wait for the next keyframe
+    static final int MAX_CHAIN = 300;
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "room-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        long period = Math.max(100, ServerConfig.ROOM_CACHE_IDLE_MS / 4);
+        SWEEPER.scheduleAtFixedRate(RoomCache::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Messages for a joiner, and the video layer whose chain is among them (-1 if none). */
+    record Snapshot(List<OutboundMessage> messages, int layer) {
+    }
+
+    // Guarded by this
+    private final List<List<OutboundMessage>> chains = new ArrayList<>(Simulcast.MAX_LAYERS);
+    private final long[] chainBytes = new long[Simulcast.MAX_LAYERS];
+    private final ArrayDeque<OutboundMessage> chat = new ArrayDeque<>();
+    private long frameBytes;
+    private long chatBytes;
+    private volatile long lastActivity;
+
+    RoomCache() {
+        for (int i = 0; i < Simulcast.MAX_LAYERS; i++) {
+            chains.add(new ArrayList<>());
+        }
+    }
+
+    static long totalBytes() {
+        return TOTAL_BYTES.get();
+    }
+
+    /** {@code dependent} if the frame is a tile delta that builds on the frames before it. */
+    void frame(int layer, OutboundMessage frame, boolean dependent) {
+        long delta;
+        synchronized (this) {
+            List<OutboundMessage> chain = chains.get(layer);
+            if (!dependent) {
+                delta = frame.wireLength() - chainBytes[layer];
+                release(chain);
+                chain.clear();
+            } else if (chain.isEmpty() || chain.size() >= MAX_CHAIN) {
+                return;
+            } else {
+                delta = frame.wireLength();
+            }
+            frame.retain();
+            chain.add(frame);
+            chainBytes[layer] += delta;
+            frameBytes += delta;
+        }
+        stored(delta);
+    }
+
+    /** The frames a viewer needs to start showing this layer, oldest first; the caller releases them. */
+    synchronized List<OutboundMessage> chain(int layer) {
+        List<OutboundMessage> chain = new ArrayList<>(chains.get(layer));
+        chain.forEach(OutboundMessage::retain);
+        return chain;
+    }
+
+    static void release(List<OutboundMessage> messages) {
+        messages.forEach(OutboundMessage::release);
+    }
+
+    void chat(OutboundMessage line) {
+        long delta;
+        synchronized (this) {
+            long before = chatBytes;
+            chat.addLast(line);
+            chatBytes += line.wireLength();
+            while (chatBytes > ServerConfig.ROOM_CHAT_CACHE_BYTES && !chat.isEmpty()) {
+                chatBytes -= chat.removeFirst().wireLength();
+            }
+            delta = chatBytes - before;
+        }
+        stored(delta);
+    }
+
+    /**
+     * Everything cached, chat first and then the best video layer, ready to send to a joiner; the
+     * caller releases the messages.
+     */
+    synchronized Snapshot snapshot() {
+        List<OutboundMessage> messages = new ArrayList<>(chat.size() + 1);
+        messages.addAll(chat);
+        for (int layer = 0; layer < chains.size(); layer++) {
+            if (!chains.get(layer).isEmpty()) {
+                messages.addAll(chains.get(layer));
+                messages.forEach(OutboundMessage::retain);
+                return new Snapshot(messages, layer);
+            }
+        }
+        return new Snapshot(messages, -1);
+    }
+
+    /** Drops everything; the room may start caching again later. */
+    void clear() {
+        long freed;
+        synchronized (this) {
+            freed = frameBytes + chatBytes;
+            chains.forEach(RoomCache::release);
+            chains.forEach(List::clear);
+            Arrays.fill(chainBytes, 0);
+            chat.clear();
+            frameBytes = 0;
+            chatBytes = 0;
+        }
+        CACHES.remove(this);
+        TOTAL_BYTES.addAndGet(-freed);
+    }
+
+    private void stored(long delta) {
+        lastActivity = System.nanoTime();
+        CACHES.add(this);
+        if (TOTAL_BYTES.addAndGet(delta) > ServerConfig.ROOM_CACHE_BYTES) {
+            trim();
+        }
+    }
+
+    /** Evicts the quietest caches until the total is back under budget. One thread at a time. */
+    private static void trim() {
+        if (!TRIM_LOCK.tryLock()) {
+            return;
+        }
+        try {
+            List<RoomCache> byActivity = new ArrayList<>(CACHES);
+            byActivity.sort(Comparator.comparingLong(cache -> cache.lastActivity));
+            long target = (long) (ServerConfig.ROOM_CACHE_BYTES * TRIM_TARGET);
+            for (RoomCache cache : byActivity) {
+                if (TOTAL_BYTES.get() <= target) {
+                    break;
+                }
+                cache.clear();
+                Metrics.ROOM_CACHE_EVICTIONS.increment();
+            }
+        } finally {
+            TRIM_LOCK.unlock();
+        }
+    }
+
+    private static void evictIdle() {
+        long idleBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ServerConfig.ROOM_CACHE_IDLE_MS);
+        for (RoomCache cache : CACHES) {
+            if (cache.lastActivity - idleBefore < 0) {
+                cache.clear();
+                Metrics.ROOM_CACHE_EVICTIONS.increment();
+            }
+        }
+    }
+}
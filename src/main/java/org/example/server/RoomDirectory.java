@@ -0,0 +1,100 @@
+package org.example.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The open rooms, plus a version number that clients follow. Creates and closes are collected for
+ * {@link ServerConfig#ROOM_LIST_TICK_MS} and then sent to every client as one delta, so churn costs
+ * each client a few bytes per tick instead of the whole list per change. A binary client that sees
+ * a gap in the versions asks for a snapshot; text clients get a full list per tick as before.
+ *
+ * <p>A snapshot carries the last published version but may already include changes that are still
+ * pending. That is safe because applying a delta is idempotent.
+ */
+final class RoomDirectory {
+    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "room-directory");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this. Last change per room name since the previous tick: true = added.
+    private final Map<String, Boolean> pending = new LinkedHashMap<>();
+    private boolean tickScheduled;
+    private volatile long version;
+
+    Room get(String name) {
+        return rooms.get(name);
+    }
+
+    /** Returns false if a room with the same name already exists. */
+    boolean add(Room room) {
+        if (rooms.putIfAbsent(room.getName(), room) != null) {
+            return false;
+        }
+        changed(room.getName(), true);
+        return true;
+    }
+
+    boolean remove(String name, Room room) {
+        if (!rooms.remove(name, room)) {
+            return false;
+        }
+        changed(name, false);
+        return true;
+    }
+
+    int size() {
+        return rooms.size();
+    }
+
+    OutboundMessage snapshot() {
+        long seq = version;
+        return OutboundMessage.roomList(seq, rooms.keySet());
+    }
+
+    private synchronized void changed(String name, boolean added) {
+        pending.put(name, added);
+        if (!tickScheduled) {
+            tickScheduled = true;
+            ticker.schedule(this::publish, ServerConfig.ROOM_LIST_TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish() {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        long seq;
+        synchronized (this) {
+            tickScheduled = false;
+            for (Map.Entry<String, Boolean> change : pending.entrySet()) {
+                (change.getValue() ? added : removed).add(change.getKey());
+            }
+            pending.clear();
+            seq = version + 1;
+            version = seq;
+        }
+
+        OutboundMessage delta = OutboundMessage.roomListDelta(seq, added, removed);
+        OutboundMessage fullList = null;
+        for (Connection client : Server.allClients) {
+            if (client.isBinaryProtocol()) {
+                client.send(delta);
+            } else {
+                if (fullList == null) {
+                    fullList = OutboundMessage.roomList(seq, rooms.keySet());
+                }
+                client.send(fullList);
+            }
+        }
+    }
+}
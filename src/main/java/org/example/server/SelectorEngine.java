@@ -0,0 +1,313 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking I/O: the calling thread accepts, and each connection is pinned to one of a fixed
+ * set of selector event loops which does all of its reads and writes.
+ */
+final class SelectorEngine implements ConnectionEngine {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final EventLoop[] loops;
+
+    SelectorEngine(int loopCount) {
+        loops = new EventLoop[Math.max(1, loopCount)];
+    }
+
+    @Override
+    public void serve(InetSocketAddress address) throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "event-loop-" + i);
+            thread.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(address, ServerConfig.BACKLOG);
+            int next = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    if (ServerConfig.SEND_BUFFER_BYTES > 0) {
+                        channel.setOption(StandardSocketOptions.SO_SNDBUF, ServerConfig.SEND_BUFFER_BYTES);
+                    }
+                    EventLoop loop = loops[next];
+                    next = (next + 1) % loops.length;
+                    loop.execute(() -> loop.register(channel));
+                } catch (IOException e) {
+                    System.err.println("Error accepting client: " + e.getMessage());
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    private static final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private NioConnection[] dirty = new NioConnection[64];
+        private int dirtyCount;
+        // Flushes waiting for their tick, in deadline order since every tick is the same length
+        private NioConnection[] delayed = new NioConnection[64];
+        private long[] delayedUntil = new long[64];
+        private int delayedHead;
+        private int delayedCount;
+        private volatile Thread thread;
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /** Marks a connection as having queued output; it is written at the end of the loop pass. */
+        void scheduleFlush(NioConnection connection) {
+            boolean wasEmpty;
+            synchronized (this) {
+                if (dirtyCount == dirty.length) {
+                    dirty = Arrays.copyOf(dirty, dirty.length * 2);
+                }
+                dirty[dirtyCount++] = connection;
+                wasEmpty = dirtyCount == 1;
+            }
+            if (wasEmpty && !inLoop()) {
+                selector.wakeup();
+            }
+        }
+
+        /** Flushes a connection once the tick has passed, together with whatever it queued meanwhile. */
+        void scheduleFlushAfter(NioConnection connection, long delayNanos) {
+            long deadline = System.nanoTime() + delayNanos;
+            boolean wasEmpty;
+            synchronized (this) {
+                if (delayedCount == delayed.length) {
+                    NioConnection[] grown = new NioConnection[delayed.length * 2];
+                    long[] grownUntil = new long[delayed.length * 2];
+                    for (int i = 0; i < delayedCount; i++) {
+                        int index = (delayedHead + i) & (delayed.length - 1);
+                        grown[i] = delayed[index];
+                        grownUntil[i] = delayedUntil[index];
+                    }
+                    delayed = grown;
+                    delayedUntil = grownUntil;
+                    delayedHead = 0;
+                }
+                int tail = (delayedHead + delayedCount) & (delayed.length - 1);
+                delayed[tail] = connection;
+                delayedUntil[tail] = deadline;
+                delayedCount++;
+                wasEmpty = delayedCount == 1;
+            }
+            if (wasEmpty && !inLoop()) {
+                selector.wakeup();
+            }
+        }
+
+        /** The next connection whose tick has passed, or null. */
+        private synchronized NioConnection pollDelayed(long now) {
+            if (delayedCount == 0 || delayedUntil[delayedHead] - now > 0) {
+                return null;
+            }
+            NioConnection connection = delayed[delayedHead];
+            delayed[delayedHead] = null;
+            delayedHead = (delayedHead + 1) & (delayed.length - 1);
+            delayedCount--;
+            return connection;
+        }
+
+        /** Milliseconds until the next delayed flush is due: 0 to block indefinitely, else at least 1. */
+        private synchronized long selectTimeout() {
+            if (delayedCount == 0) {
+                return 0;
+            }
+            long nanos = delayedUntil[delayedHead] - System.nanoTime();
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+        }
+
+        private synchronized NioConnection pollDirty() {
+            if (dirtyCount == 0) {
+                return null;
+            }
+            NioConnection connection = dirty[--dirtyCount];
+            dirty[dirtyCount] = null;
+            return connection;
+        }
+
+        void register(SocketChannel channel) {
+            NioConnection connection = new NioConnection(this, channel);
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (ClosedChannelException e) {
+                System.err.println("Client disconnected before registration");
+                connection.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (true) {
+                try {
+                    selector.select(selectTimeout());
+                } catch (IOException e) {
+                    System.err.println("Selector failed: " + e.getMessage());
+                    return;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable(readBuffer);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush(writeBuffer);
+                    }
+                }
+                NioConnection connection;
+                while ((connection = pollDirty()) != null) {
+                    connection.flush(writeBuffer);
+                }
+                long now = System.nanoTime();
+                while ((connection = pollDelayed(now)) != null) {
+                    connection.flush(writeBuffer);
+                }
+            }
+        }
+    }
+
+    private static final class NioConnection extends Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final ClientHandler handler;
+        private final InboundDecoder decoder;
+        private final OutboundQueue pendingWrites = new OutboundQueue();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private SelectionKey key;
+
+        NioConnection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            this.handler = new ClientHandler(this);
+            this.decoder = new InboundDecoder(this, handler);
+        }
+
+        void onReadable(ByteBuffer buf) {
+            try {
+                buf.clear();
+                int n = channel.read(buf);
+                if (n < 0) {
+                    close();
+                    return;
+                }
+                Metrics.BYTES_IN.add(n);
+                decoder.decode(buf.array(), 0, n);
+            } catch (IOException e) {
+                System.err.println("Error in client communication: " + e.getMessage());
+                close();
+            }
+        }
+
+        @Override
+        void send(EncodedMessage message) {
+            switch (pendingWrites.offer(message)) {
+                case FIRST -> loop.scheduleFlushAfter(this, pendingWrites.flushTickNanos());
+                case FLUSH -> loop.scheduleFlush(this);
+                case OVERFLOW -> {
+                    System.err.println("Disconnecting slow client " + id());
+                    close();
+                }
+                default -> {
+                }
+            }
+        }
+
+        /** Gathers as much queued output as fits into the loop's buffer per write call. */
+        void flush(ByteBuffer buf) {
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            try {
+                while (!pendingWrites.isEmpty()) {
+                    buf.clear();
+                    pendingWrites.fill(buf);
+                    buf.flip();
+                    int written = channel.write(buf);
+                    pendingWrites.consume(written);
+                    Metrics.BYTES_OUT.add(written);
+                    if (buf.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                System.err.println("Error sending message to socket: " + e.getMessage());
+                close();
+            }
+        }
+
+        @Override
+        OutboundQueue outboundQueue() {
+            return pendingWrites;
+        }
+
+        @Override
+        boolean isOpen() {
+            return !closed.get();
+        }
+
+        @Override
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (loop.inLoop()) {
+                closeInLoop();
+            } else {
+                loop.execute(this::closeInLoop);
+            }
+        }
+
+        private void closeInLoop() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing socket: " + e.getMessage());
+            }
+            pendingWrites.close();
+            handler.onClose();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.server;
+
+/**
+ * Startup settings, read once from system properties (e.g. {@code -Dserver.engine=nio}).
+ */
+final class ServerConfig {
+    static final int PORT = Integer.getInteger("server.port", 12345);
+    static final int BACKLOG = Integer.getInteger("server.backlog", 4096);
+
+    // "virtual" = one virtual thread per connection, "nio" = selector event loops
+    static final String ENGINE = System.getProperty("server.engine", "virtual");
+    static final int EVENT_LOOPS = Integer.getInteger("server.eventLoops", Runtime.getRuntime().availableProcessors());
+
+    // Edge mode: "host:port" of the origin server whose rooms this one lists and relays locally
+    static final String ORIGIN = System.getProperty("server.origin", "");
+    static final String NODE_NAME = System.getProperty("server.nodeName", "node-" + PORT);
+
+    // Accept clients that speak the legacy newline protocol instead of binary frames
+    static final boolean TEXT_PROTOCOL = Boolean.parseBoolean(System.getProperty("server.textProtocol", "true"));
+
+    // Room creates and closes within this window reach clients as one room-list update
+    static final long ROOM_LIST_TICK_MS = Long.getLong("server.roomListTickMs", 100);
+
+    // Rooms with at least this many members get one presence summary per interval instead of a
+    // notice per join or leave
+    static final int PRESENCE_THRESHOLD = Integer.getInteger("server.presenceThreshold", 50);
+    static final long PRESENCE_INTERVAL_MS = Long.getLong("server.presenceIntervalMs", 1000);
+
+    // Per-connection outbound backlog, in messages and bytes, and what to do when a client falls behind
+    static final int OUTBOUND_QUEUE_CAPACITY = Integer.getInteger("server.outboundQueue", 1024);
+    static final long OUTBOUND_QUEUE_BYTES = Long.getLong("server.outboundQueueBytes", 8L * 1024 * 1024);
+    static final SlowConsumerPolicy SLOW_CONSUMER_POLICY =
+            SlowConsumerPolicy.parse(System.getProperty("server.slowConsumer", "drop-chat"));
+    static final long SLOW_CONSUMER_TIMEOUT_MS = Long.getLong("server.slowConsumerTimeoutMs", 5000);
+
+    // A simulcast viewer moves to a cheaper layer when its backlog would take longer than this to
+    // drain, and tries the next better layer after its backlog has stayed small this long
+    static final long SIMULCAST_MAX_DELAY_MS = Long.getLong("server.simulcastMaxDelayMs", 200);
+    static final long SIMULCAST_UPGRADE_MS = Long.getLong("server.simulcastUpgradeMs", 2000);
+    // Rooms keep their latest video frame and this much recent chat to send to joiners at once. The
+    // caches of all rooms together stay under the total; a cache untouched this long is dropped
+    static final long ROOM_CHAT_CACHE_BYTES = Long.getLong("server.roomChatCacheBytes", 16 * 1024);
+    static final long ROOM_CACHE_BYTES = Long.getLong("server.roomCacheBytes", 64L * 1024 * 1024);
+    static final long ROOM_CACHE_IDLE_MS = Long.getLong("server.roomCacheIdleMs", 60_000);
+
+    // Chat is logged per room under this directory (empty = no log). Joiners are sent the last
+    // CHAT_REPLAY_LINES lines from the log instead of the in-memory chat cache; clients may ask for
+    // up to HISTORY_MAX_LINES at a time. Segments are deleted beyond the byte budget or age per room
+    static final String CHAT_LOG_DIR = System.getProperty("server.chatLogDir", "");
+    static final int CHAT_LOG_SEGMENT_BYTES = Integer.getInteger("server.chatLogSegmentBytes", 4 * 1024 * 1024);
+    static final long CHAT_LOG_RETAIN_BYTES = Long.getLong("server.chatLogRetainBytes", 64L * 1024 * 1024);
+    static final long CHAT_LOG_RETAIN_MINUTES = Long.getLong("server.chatLogRetainMinutes", 24 * 60);
+    static final int CHAT_REPLAY_LINES = Integer.getInteger("server.chatReplayLines", 50);
+    static final int HISTORY_MAX_LINES = Integer.getInteger("server.historyMaxLines", 1000);
+
+    // Token buckets, in messages per second and burst size (rate 0 = unlimited, the default): chat per client,
+    // other commands per client (room creates, joins, room-list and history requests), and chat
+    // into one room from all of its members. A client over its limit has the message dropped, or
+    // is disconnected with server.rateLimit=disconnect; chat over a room's limit is dropped
+    static final double CHAT_RATE = Double.parseDouble(System.getProperty("server.chatRate", "0"));
+    static final int CHAT_BURST = Integer.getInteger("server.chatBurst", 20);
+    static final double COMMAND_RATE = Double.parseDouble(System.getProperty("server.commandRate", "0"));
+    static final int COMMAND_BURST = Integer.getInteger("server.commandBurst", 20);
+    static final double ROOM_CHAT_RATE = Double.parseDouble(System.getProperty("server.roomChatRate", "0"));
+    static final int ROOM_CHAT_BURST = Integer.getInteger("server.roomChatBurst", 400);
+    static final boolean RATE_LIMIT_DISCONNECT = "disconnect".equals(System.getProperty("server.rateLimit", "drop"));
+
+    // Owners' streams are recorded under this directory (empty = not recorded), one subdirectory per
+    // room session split into segments of this size. Up to RECORDING_QUEUE frames wait for the
+    // disk; beyond that frames are left out of the recording rather than holding up the room
+    static final String RECORDING_DIR = System.getProperty("server.recordingDir", "");
+    static final long RECORDING_SEGMENT_BYTES = Long.getLong("server.recordingSegmentBytes", 64L * 1024 * 1024);
+    static final int RECORDING_QUEUE = Integer.getInteger("server.recordingQueue", 1024);
+
+    // Clients that ask for compression get a room's chat and notices deflated together once per
+    // tick, or sooner once this many bytes are waiting, with the same bytes sent to each of them
+    static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("server.compression", "true"));
+    static final long COMPRESSION_TICK_MS = Long.getLong("server.compressionTickMs", 10);
+    static final int COMPRESSION_BATCH_BYTES = Integer.getInteger("server.compressionBatchBytes", 32 * 1024);
+
+    // A resumable client's session is kept this long after its connection drops; each room keeps
+    // its last RESUME_BUFFER_MESSAGES chat lines and notices to replay to members who come back
+    static final long SESSION_TTL_MS = Long.getLong("server.sessionTtlMs", 60_000);
+    static final int RESUME_BUFFER_MESSAGES = Integer.getInteger("server.resumeBufferMessages", 512);
+
+    // Video over UDP on this port (negative = off) for clients that ask for it, with one XOR parity
+    // packet per MEDIA_FEC_GROUP data packets (0 = none). Owners' frames wait up to MEDIA_JITTER_MS
+    // for missing or reordered packets. MEDIA_LOSS drops that fraction of outgoing packets, to test with
+    static final int MEDIA_PORT = Integer.getInteger("server.mediaPort", -1);
+    static final int MEDIA_FEC_GROUP = Integer.getInteger("server.mediaFecGroup", 4);
+    static final long MEDIA_JITTER_MS = Long.getLong("server.mediaJitterMs", 20);
+    static final double MEDIA_LOSS = Double.parseDouble(System.getProperty("server.mediaLoss", "0"));
+    // A viewer's UDP video waits in its own queue of up to MEDIA_QUEUE_BYTES, shed by the slow
+    // consumer policy like its TCP queue, and is paced out at MEDIA_PACE_MBPS (0 = unpaced)
+    static final long MEDIA_QUEUE_BYTES = Long.getLong("server.mediaQueueBytes", 2L * 1024 * 1024);
+    static final double MEDIA_PACE_MBPS = Double.parseDouble(System.getProperty("server.mediaPaceMbps", "50"));
+
+    // Video frames are copied once into pooled off-heap buffers that every member's write shares;
+    // released buffers are kept for reuse up to BUFFER_POOL_BYTES. BUFFER_LEAK_TRACE records where
+    // each buffer was taken, so a leak report can say which code never released it
+    static final long BUFFER_POOL_BYTES = Long.getLong("server.bufferPoolBytes", 64L * 1024 * 1024);
+    static final boolean BUFFER_LEAK_TRACE = Boolean.getBoolean("server.bufferLeakTrace");
+    // Frames up to this size are read into one array per connection instead of a new one each
+    static final int DECODE_REUSE_BYTES = Integer.getInteger("server.decodeReuseBytes", 256 * 1024);
+
+    // Kernel send buffer per client (0 = OS default). The OS may grow its default to megabytes,
+    // which hides a slow client's backlog from the outbound queue and so from layer selection
+    static final int SEND_BUFFER_BYTES = Integer.getInteger("server.sendBufferBytes", 256 * 1024);
+
+    // Plain-text metrics at http://<host>:<port>/metrics; a negative port turns the endpoint off
+    static final String METRICS_HOST = System.getProperty("server.metricsHost", "127.0.0.1");
+    static final int METRICS_PORT = Integer.getInteger("server.metricsPort", 9100);
+
+    // Output waits up to this long to be written together with whatever else is queued for the
+    // same client, unless it is a reply to the client's own command or this many bytes are waiting
+    static final long FLUSH_TICK_MS = Long.getLong("server.flushTickMs", 5);
+    static final int FLUSH_BYTES = Integer.getInteger("server.flushBytes", 32 * 1024);
+
+    private ServerConfig() {
+    }
+}
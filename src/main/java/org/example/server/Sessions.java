@@ -0,0 +1,119 @@
+package org.example.server;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sessions of clients that can resume. A session outlives its connection by
+ * {@link ServerConfig#SESSION_TTL_MS}, remembering the room the client was in, so a client that
+ * reconnects within that time is put straight back instead of starting over.
+ */
+final class Sessions {
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ConcurrentMap<Long, Session> SESSIONS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sessions");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        long period = Math.max(1000, ServerConfig.SESSION_TTL_MS / 4);
+        SWEEPER.scheduleAtFixedRate(Sessions::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    static final class Session {
+        final long token;
+        final String name;
+        // Guarded by this
+        private Connection connection;
+        private boolean attached = true;
+        private boolean expired;
+        private long detachedAt;
+        private Room room;
+        private boolean owner;
+
+        private Session(long token, String name, Connection connection) {
+            this.token = token;
+            this.name = name;
+            this.connection = connection;
+        }
+
+        /** Records the client's room as it changes, so a resume knows it even before the old connection is seen to close. */
+        synchronized void moved(Room room, boolean owner) {
+            this.room = room;
+            this.owner = owner;
+        }
+
+        synchronized Room room() {
+            return room;
+        }
+
+        synchronized boolean owner() {
+            return owner;
+        }
+    }
+
+    /** A session moved to a new connection, and the connection it had, which may still be open. */
+    record Resumed(Session session, Connection previous) {
+    }
+
+    private Sessions() {
+    }
+
+    static Session open(String name, Connection connection) {
+        while (true) {
+            long token = RANDOM.nextLong();
+            Session session = new Session(token, name, connection);
+            if (token != 0 && SESSIONS.putIfAbsent(token, session) == null) {
+                return session;
+            }
+        }
+    }
+
+    /** Returns null if the token is unknown or the session has expired. */
+    static Resumed resume(long token, Connection connection) {
+        Session session = SESSIONS.get(token);
+        if (session == null) {
+            return null;
+        }
+        synchronized (session) {
+            if (session.expired) {
+                return null;
+            }
+            Connection previous = session.connection;
+            session.connection = connection;
+            session.attached = true;
+            return new Resumed(session, previous);
+        }
+    }
+
+    /** Called when a connection closes; ignored if the session has moved to another connection. */
+    static void detach(Session session, Connection connection) {
+        synchronized (session) {
+            if (session.connection == connection) {
+                session.attached = false;
+                session.detachedAt = System.nanoTime();
+            }
+        }
+    }
+
+    static int size() {
+        return SESSIONS.size();
+    }
+
+    private static void expire() {
+        long ttl = TimeUnit.MILLISECONDS.toNanos(ServerConfig.SESSION_TTL_MS);
+        long now = System.nanoTime();
+        SESSIONS.values().removeIf(session -> {
+            synchronized (session) {
+                session.expired = !session.attached && now - session.detachedAt > ttl;
+                return session.expired;
+            }
+        });
+    }
+}
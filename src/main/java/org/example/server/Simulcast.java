@@ -0,0 +1,53 @@
+package org.example.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The quality layers a room's owner is currently publishing, with the bitrate of each. Layers
+ * arrive on the owner's reading thread or the media thread, and a resume moves the owner to
+ * another connection, so frames are counted under this object's lock; every viewer's layer
+ * selection reads the published count and rates without it.
+ */
+final class Simulcast {
+    static final int MAX_LAYERS = 4;
+
+    // A layer not seen for this long is no longer being published
+    private static final long LAYER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double SMOOTHING = 0.1;
+
+    // Guarded by this
+    private final long[] lastSeen = new long[MAX_LAYERS];
+    // Bits of each layer's rate as a double
+    private final AtomicLongArray bytesPerSecond = new AtomicLongArray(MAX_LAYERS);
+    private volatile int layerCount;
+
+    synchronized void onFrame(int layer, int bytes, long now) {
+        long previous = lastSeen[layer];
+        // Two threads can each have read the clock before the other counted its frame
+        lastSeen[layer] = Math.max(previous, now);
+        if (previous != 0 && now > previous) {
+            double rate = bytes * 1e9 / (now - previous);
+            double smoothed = bytesPerSecond(layer);
+            smoothed = smoothed == 0 ? rate : smoothed + (rate - smoothed) * SMOOTHING;
+            bytesPerSecond.set(layer, Double.doubleToRawLongBits(smoothed));
+        }
+        int count = 0;
+        for (int i = 0; i < MAX_LAYERS; i++) {
+            if (lastSeen[i] != 0 && now - lastSeen[i] < LAYER_TIMEOUT_NANOS) {
+                count = i + 1;
+            }
+        }
+        layerCount = count;
+    }
+
+    /** Layers 0 up to this count are being published. */
+    int layerCount() {
+        return layerCount;
+    }
+
+    /** Smoothed bytes per second of a layer, or 0 before its second frame. */
+    double bytesPerSecond(int layer) {
+        return Double.longBitsToDouble(bytesPerSecond.get(layer));
+    }
+}
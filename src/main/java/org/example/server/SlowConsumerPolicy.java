@@ -0,0 +1,17 @@
+package org.example.server;
+
+/**
+ * What an {@link OutboundQueue} does once a connection stops keeping up with its traffic.
+ */
+enum SlowConsumerPolicy {
+    /** Evict the oldest queued message of any kind to make room. */
+    DROP_OLDEST,
+    /** Evict queued chat first; control messages are always kept. */
+    DROP_CHAT,
+    /** Like DROP_CHAT, but disconnect once the oldest message has waited longer than the timeout. */
+    DISCONNECT;
+
+    static SlowConsumerPolicy parse(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
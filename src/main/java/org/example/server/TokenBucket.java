@@ -0,0 +1,42 @@
+package org.example.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket kept as a single timestamp (the generic cell rate algorithm): the bucket is full
+ * when the timestamp is in the past, and each message pushes it one refill interval further. A
+ * message is refused if that would put the timestamp more than a full burst ahead of now. Taking a
+ * token is one compare-and-set, so a room's bucket can be shared by all its members' threads
+ * without locking or allocating.
+ */
+final class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong full = new AtomicLong(Long.MIN_VALUE / 2);
+
+    /** {@code rate} messages per second on average, up to {@code burst} at once. */
+    private TokenBucket(double rate, int burst) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+    }
+
+    /** Returns null, meaning unlimited, if the rate is not positive. */
+    static TokenBucket of(double rate, int burst) {
+        return rate > 0 ? new TokenBucket(rate, burst) : null;
+    }
+
+    /** Takes a token if there is one. */
+    boolean tryAcquire(long now) {
+        while (true) {
+            long current = full.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (full.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameDecoder;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A binary-protocol connection from this node to another server. One virtual thread connects and
+ * reads, handing every frame to {@link #onFrame}; another writes, so {@link #send} never blocks
+ * the caller, which may be an event loop.
+ */
+abstract class UpstreamLink implements FrameDecoder.Listener {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final InetSocketAddress address;
+    private final String description;
+    private final LinkedBlockingQueue<byte[]> outbound = new LinkedBlockingQueue<>();
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    UpstreamLink(InetSocketAddress address, String description) {
+        this.address = address;
+        this.description = description;
+        outbound.add(FrameCodec.preamble());
+    }
+
+    void start() {
+        Thread.ofVirtual().name("upstream-" + description).start(this::run);
+    }
+
+    /** Queues a complete frame; frames queued before the connection is up are sent once it is. */
+    void send(byte[] frame) {
+        if (!closed) {
+            outbound.add(frame);
+        }
+    }
+
+    void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                System.err.println("Error closing link to " + address + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Called once, on the reading thread, after the connection failed or was closed. */
+    abstract void onClosed();
+
+    private void run() {
+        Thread writer = null;
+        try (Socket s = new Socket()) {
+            s.connect(address, CONNECT_TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+            socket = s;
+            if (closed) {
+                return;
+            }
+            OutputStream out = new BufferedOutputStream(s.getOutputStream(), 64 * 1024);
+            writer = Thread.ofVirtual().name("upstream-" + description + "-writer").start(() -> writeLoop(out));
+            InputStream in = s.getInputStream();
+            FrameDecoder decoder = new FrameDecoder(this);
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                decoder.decode(buf, 0, n);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Link to " + address + " (" + description + ") failed: " + e.getMessage());
+            }
+        } finally {
+            closed = true;
+            if (writer != null) {
+                writer.interrupt();
+            }
+            onClosed();
+        }
+    }
+
+    /** Writes everything queued so far, then flushes once. */
+    private void writeLoop(OutputStream out) {
+        try {
+            while (true) {
+                out.write(outbound.take());
+                byte[] next;
+                while ((next = outbound.poll()) != null) {
+                    out.write(next);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            close();
+        } catch (InterruptedException e) {
+            // the reader is done with the connection
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Blocking I/O with virtual threads: one reads each connection and another drains its
+ * {@link OutboundQueue}, so senders never wait on a slow socket.
+ */
+final class VirtualThreadEngine implements ConnectionEngine {
+    private static final int READ_BUFFER_SIZE = 512;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // Gather buffers, borrowed only for the duration of one write so idle connections hold none
+    private static final Queue<ByteBuffer> WRITE_BUFFERS = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void serve(InetSocketAddress address) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.bind(address, ServerConfig.BACKLOG);
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                try {
+                    clientSocket.setTcpNoDelay(true);
+                    if (ServerConfig.SEND_BUFFER_BYTES > 0) {
+                        clientSocket.setSendBufferSize(ServerConfig.SEND_BUFFER_BYTES);
+                    }
+                    SocketConnection connection = new SocketConnection(clientSocket);
+                    Thread.ofVirtual().name("client-" + connection.id()).start(connection::run);
+                } catch (IOException e) {
+                    System.err.println("Error accepting client: " + e.getMessage());
+                    clientSocket.close();
+                }
+            }
+        }
+    }
+
+    private static final class SocketConnection extends Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final OutboundQueue pendingWrites = new OutboundQueue();
+
+        SocketConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = socket.getInputStream();
+            this.out = socket.getOutputStream();
+        }
+
+        void run() {
+            ClientHandler handler = new ClientHandler(this);
+            Thread.ofVirtual().name("client-" + id() + "-writer").start(this::writeLoop);
+            try {
+                InboundDecoder decoder = new InboundDecoder(this, handler);
+                byte[] buf = new byte[READ_BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    Metrics.BYTES_IN.add(n);
+                    decoder.decode(buf, 0, n);
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    System.err.println("Error in client communication: " + e.getMessage());
+                }
+            } finally {
+                handler.onClose();
+                close();
+            }
+        }
+
+        @Override
+        void send(EncodedMessage message) {
+            if (pendingWrites.offer(message) == OutboundQueue.Offer.OVERFLOW) {
+                System.err.println("Disconnecting slow client " + id());
+                close();
+            }
+        }
+
+        /**
+         * Drains the outbound queue, gathering each batch into one write; the only thread that ever
+         * blocks writing to this socket.
+         */
+        private void writeLoop() {
+            try {
+                while (pendingWrites.awaitBatch()) {
+                    ByteBuffer buf = WRITE_BUFFERS.poll();
+                    if (buf == null) {
+                        buf = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+                    }
+                    try {
+                        do {
+                            buf.clear();
+                            pendingWrites.fill(buf);
+                            out.write(buf.array(), 0, buf.position());
+                            pendingWrites.consume(buf.position());
+                            Metrics.BYTES_OUT.add(buf.position());
+                        } while (!buf.hasRemaining());
+                    } finally {
+                        WRITE_BUFFERS.add(buf);
+                    }
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    System.err.println("Error sending message to socket: " + e.getMessage());
+                }
+                close();
+            } catch (InterruptedException e) {
+                close();
+            }
+        }
+
+        @Override
+        OutboundQueue outboundQueue() {
+            return pendingWrites;
+        }
+
+        @Override
+        boolean isOpen() {
+            return !socket.isClosed();
+        }
+
+        @Override
+        void close() {
+            pendingWrites.close();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Error closing socket: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.server.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap buffers for large messages, handed out as reference-counted {@link PooledBuffer}s and
+ * reused once the last reference is released. Buffers come in power-of-two size classes from
+ * {@value #MIN_CLASS_BYTES} bytes to {@value #MAX_CLASS_BYTES}; larger requests get a buffer of
+ * their own that is not kept. Idle buffers are kept up to {@code maxIdleBytes} in all; beyond that a
+ * released buffer is left to the garbage collector.
+ *
+ * <p>A {@link PooledBuffer} that becomes unreachable without being released is a leak: it is
+ * counted and reported, with where it was allocated if {@code traceLeaks} is set. Its memory is
+ * not reused, since a slice of it may still be reachable, and is left to the garbage collector.
+ */
+public final class BufferPool {
+    static final int MIN_CLASS_BYTES = 4 * 1024;
+    static final int MAX_CLASS_BYTES = 16 * 1024 * 1024;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CLASS_BYTES);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_CLASS_BYTES) - MIN_SHIFT + 1;
+    // Idle buffers kept per class, whatever the byte budget allows
+    private static final int MAX_IDLE_PER_CLASS = 1024;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final long maxIdleBytes;
+    private final boolean traceLeaks;
+    private final List<ArrayBlockingQueue<ByteBuffer>> idle;
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+    private final AtomicLong inUseBytes = new AtomicLong();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder leaked = new LongAdder();
+
+    public BufferPool(long maxIdleBytes, boolean traceLeaks) {
+        this.maxIdleBytes = maxIdleBytes;
+        this.traceLeaks = traceLeaks;
+        List<ArrayBlockingQueue<ByteBuffer>> idle = new ArrayList<>(CLASSES);
+        for (int i = 0; i < CLASSES; i++) {
+            long perClass = Math.max(1, maxIdleBytes / classBytes(i));
+            idle.add(new ArrayBlockingQueue<>((int) Math.min(perClass, MAX_IDLE_PER_CLASS)));
+        }
+        this.idle = List.copyOf(idle);
+    }
+
+    /** A buffer of exactly {@code length} bytes, position 0, with one reference for the caller to release. */
+    public PooledBuffer allocate(int length) {
+        int sizeClass = sizeClass(length);
+        ByteBuffer storage = sizeClass < 0 ? null : idle.get(sizeClass).poll();
+        if (storage != null) {
+            idleBytes.addAndGet(-storage.capacity());
+            reused.increment();
+        } else {
+            storage = ByteBuffer.allocateDirect(sizeClass < 0 ? length : classBytes(sizeClass));
+            allocated.increment();
+        }
+        inUse.incrementAndGet();
+        inUseBytes.addAndGet(storage.capacity());
+        return new PooledBuffer(this, storage, length, traceLeaks ? new Throwable("Allocated here") : null);
+    }
+
+    Cleaner.Cleanable track(PooledBuffer buffer, Runnable release) {
+        return CLEANER.register(buffer, release);
+    }
+
+    /** Takes back the storage of a buffer whose last reference is gone; a leaked buffer's is only counted. */
+    void recycle(ByteBuffer storage, boolean leak, Throwable allocatedAt) {
+        inUse.decrementAndGet();
+        inUseBytes.addAndGet(-storage.capacity());
+        if (leak) {
+            leaked.increment();
+            System.err.println("Pooled buffer of " + storage.capacity() + " bytes was never released"
+                    + (allocatedAt == null ? " (-Dserver.bufferLeakTrace=true shows where it was allocated)" : ":"));
+            if (allocatedAt != null) {
+                allocatedAt.printStackTrace();
+            }
+            return;
+        }
+        int sizeClass = sizeClass(storage.capacity());
+        if (sizeClass < 0 || classBytes(sizeClass) != storage.capacity()) {
+            return;
+        }
+        if (idleBytes.addAndGet(storage.capacity()) > maxIdleBytes || !idle.get(sizeClass).offer(storage.clear())) {
+            idleBytes.addAndGet(-storage.capacity());
+        }
+    }
+
+    private static int sizeClass(int length) {
+        if (length > MAX_CLASS_BYTES) {
+            return -1;
+        }
+        int shift = length <= MIN_CLASS_BYTES ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(length - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    private static int classBytes(int sizeClass) {
+        return 1 << (sizeClass + MIN_SHIFT);
+    }
+
+    /** Buffers allocated from the operating system. */
+    public long allocatedCount() {
+        return allocated.sum();
+    }
+
+    /** Allocations served from an idle buffer. */
+    public long reusedCount() {
+        return reused.sum();
+    }
+
+    /** Buffers that became unreachable without being released. */
+    public long leakedCount() {
+        return leaked.sum();
+    }
+
+    /** Buffers handed out and not yet released. */
+    public long inUse() {
+        return inUse.get();
+    }
+
+    public long inUseBytes() {
+        return inUseBytes.get();
+    }
+
+    /** Bytes of released buffers kept for reuse. */
+    public long idleBytes() {
+        return idleBytes.get();
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.server.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A buffer from a {@link BufferPool} shared by everything that holds a reference to it. It starts
+ * with one reference; each holder that keeps it beyond the current call {@link #retain}s it and
+ * {@link #release}s it when done, and the last release returns the memory to the pool. It must
+ * not be used after its holder has released it.
+ *
+ * <p>The creator fills {@link #contents()} before sharing it; after that it is only read, with
+ * absolute indexes, so any number of readers can use it at once.
+ */
+public final class PooledBuffer {
+    /** Kept apart from the handle so that the cleaner can run it once the handle is unreachable. */
+    private static final class State implements Runnable {
+        private final BufferPool pool;
+        private final ByteBuffer storage;
+        private final Throwable allocatedAt;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        State(BufferPool pool, ByteBuffer storage, Throwable allocatedAt) {
+            this.pool = pool;
+            this.storage = storage;
+            this.allocatedAt = allocatedAt;
+        }
+
+        @Override
+        public void run() {
+            pool.recycle(storage, references.get() > 0, allocatedAt);
+        }
+    }
+
+    private final State state;
+    private final ByteBuffer contents;
+    private final Cleaner.Cleanable cleanable;
+
+    PooledBuffer(BufferPool pool, ByteBuffer storage, int length, Throwable allocatedAt) {
+        this.state = new State(pool, storage, allocatedAt);
+        this.contents = storage.slice(0, length);
+        this.cleanable = pool.track(this, state);
+    }
+
+    /** The buffer's bytes, position 0 and limit its length; callers must not move them once shared. */
+    public ByteBuffer contents() {
+        return contents;
+    }
+
+    public int length() {
+        return contents.limit();
+    }
+
+    /** Adds a reference; fails if the last one has already been released. */
+    public void retain() {
+        int count;
+        do {
+            count = state.references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Pooled buffer already released");
+            }
+        } while (!state.references.compareAndSet(count, count + 1));
+    }
+
+    /** Drops a reference, returning the buffer to its pool if it was the last. */
+    public void release() {
+        int count = state.references.decrementAndGet();
+        if (count == 0) {
+            cleanable.clean();
+        } else if (count < 0) {
+            throw new IllegalStateException("Pooled buffer released more often than retained");
+        }
+    }
+}
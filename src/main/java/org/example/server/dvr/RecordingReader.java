@@ -0,0 +1,123 @@
+package org.example.server.dvr;
+
+import org.example.protocol.FrameCodec;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** Reads a recording made by {@link RecordingWriter} back in order, optionally from a point in time. */
+public final class RecordingReader implements AutoCloseable {
+    private final List<Path> segments;
+    private int segment = -1;
+    private DataInputStream in;
+    private long time;
+
+    private RecordingReader(List<Path> segments) {
+        this.segments = segments;
+    }
+
+    public static RecordingReader open(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return new RecordingReader(files.filter(f -> f.getFileName().toString().endsWith(".dvr")).sorted().toList());
+        }
+    }
+
+    /** Names of the recordings in {@code root}, oldest first. */
+    public static List<String> list(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        try (Stream<Path> dirs = Files.list(root)) {
+            return dirs.filter(Files::isDirectory)
+                    .sorted((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()))
+                    .map(d -> d.getFileName().toString())
+                    .toList();
+        }
+    }
+
+    /**
+     * Positions the reader at the last indexed record at or before {@code nanos} into the
+     * recording, so playback starts on a whole frame no later than asked.
+     */
+    public void seek(long nanos) throws IOException {
+        int bestSegment = 0;
+        long bestOffset = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexOf(segments.get(i))));
+            if (index.remaining() < 16 || index.getLong(0) > nanos) {
+                break;
+            }
+            bestSegment = i;
+            while (index.remaining() >= 16 && index.getLong(index.position()) <= nanos) {
+                index.getLong();
+                bestOffset = index.getLong();
+            }
+        }
+        closeSegment();
+        segment = bestSegment - 1;
+        if (nextSegment()) {
+            in.skipNBytes(bestOffset);
+        }
+    }
+
+    /**
+     * Returns the next recorded frame, complete with its binary header, or null at the end of the
+     * recording. {@link #time()} is then its offset from the start of the recording.
+     */
+    public byte[] next() throws IOException {
+        while (in != null || nextSegment()) {
+            try {
+                time = in.readLong();
+                byte[] header = new byte[FrameCodec.HEADER_LENGTH];
+                in.readFully(header);
+                int length = FrameCodec.getInt(header, 1);
+                byte[] frame = new byte[FrameCodec.HEADER_LENGTH + length];
+                System.arraycopy(header, 0, frame, 0, FrameCodec.HEADER_LENGTH);
+                in.readFully(frame, FrameCodec.HEADER_LENGTH, length);
+                return frame;
+            } catch (EOFException e) {
+                // End of this segment, or a record cut short when the server stopped
+                closeSegment();
+            }
+        }
+        return null;
+    }
+
+    public long time() {
+        return time;
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (segment + 1 >= segments.size()) {
+            return false;
+        }
+        segment++;
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segments.get(segment)), 256 * 1024));
+        return true;
+    }
+
+    private static Path indexOf(Path data) {
+        String name = data.getFileName().toString();
+        return data.resolveSibling(name.substring(0, name.length() - ".dvr".length()) + ".idx");
+    }
+
+    private void closeSegment() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segment = segments.size();
+    }
+}
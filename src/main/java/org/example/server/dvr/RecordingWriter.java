@@ -0,0 +1,269 @@
+package org.example.server.dvr;
+
+import org.example.server.buffer.PooledBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Records one room's frames and chat into a directory of segment files. Each segment
+ * {@code NNNNNN.dvr} holds records of {@code time:u64} (nanoseconds since the recording started)
+ * followed by the binary protocol frame exactly as it was broadcast; {@code NNNNNN.idx} holds
+ * {@code time:u64 offset:u64} pairs, one at most every {@link #INDEX_INTERVAL_NANOS}, for seeking.
+ *
+ * <p>{@link #offer} is called on the broadcast path. It only stores the frame reference and time
+ * in a preallocated ring under an uncontended lock, and drops the frame if the ring is full, so a
+ * slow disk never delays the live fan-out. The shared "dvr" thread drains every recorder, copying
+ * records through one reused direct buffer into sequential channel writes; nothing is allocated
+ * per frame on either side. A pooled frame is retained while it waits and released once written or
+ * dropped.
+ */
+public final class RecordingWriter {
+    static final long INDEX_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private static final int STAGING_BYTES = 256 * 1024;
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dvr");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<RecordingWriter> OPEN = ConcurrentHashMap.newKeySet();
+    // Owned by the dvr thread
+    private static final ByteBuffer STAGING = ByteBuffer.allocateDirect(STAGING_BYTES);
+    private static final ByteBuffer INDEX_ENTRY = ByteBuffer.allocateDirect(16);
+
+    static {
+        WRITER.scheduleWithFixedDelay(() -> OPEN.forEach(RecordingWriter::drain), 10, 10, TimeUnit.MILLISECONDS);
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long startNanos = System.nanoTime();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer[] frames;
+    private final PooledBuffer[] owners;
+    private final long[] times;
+    private int head;
+    private int size;
+    private boolean closing;
+
+    // Owned by the dvr thread
+    private final ByteBuffer[] drained;
+    private final PooledBuffer[] drainedOwners;
+    private final long[] drainedTimes;
+    private int segment = -1;
+    private FileChannel data;
+    private FileChannel index;
+    private long position;
+    private long lastIndexed = -INDEX_INTERVAL_NANOS;
+
+    private RecordingWriter(Path directory, long segmentBytes, int capacity) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.frames = new ByteBuffer[capacity];
+        this.owners = new PooledBuffer[capacity];
+        this.times = new long[capacity];
+        this.drained = new ByteBuffer[capacity];
+        this.drainedOwners = new PooledBuffer[capacity];
+        this.drainedTimes = new long[capacity];
+    }
+
+    /** Starts a new recording in {@code directory}, which must not exist yet. */
+    public static RecordingWriter start(Path directory, long segmentBytes, int capacity) throws IOException {
+        Files.createDirectories(directory.getParent());
+        Files.createDirectory(directory);
+        RecordingWriter writer = new RecordingWriter(directory, segmentBytes, capacity);
+        OPEN.add(writer);
+        return writer;
+    }
+
+    /**
+     * Queues a complete binary frame, which must not be modified afterwards. Returns false if the
+     * frame was dropped because the disk is behind.
+     */
+    public boolean offer(byte[] frame) {
+        return offer(ByteBuffer.wrap(frame), null);
+    }
+
+    /** Queues a complete binary frame held in a pooled buffer, which is retained until written. */
+    public boolean offer(PooledBuffer frame) {
+        return offer(frame.contents(), frame);
+    }
+
+    private boolean offer(ByteBuffer frame, PooledBuffer owner) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (closing) {
+                return true;
+            }
+            if (size == frames.length) {
+                return false;
+            }
+            if (owner != null) {
+                owner.retain();
+            }
+            int tail = (head + size) % frames.length;
+            frames[tail] = frame;
+            owners[tail] = owner;
+            times[tail] = now - startNanos;
+            size++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Writes out what is queued, then closes the files. */
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        int count;
+        boolean last;
+        lock.lock();
+        try {
+            count = size;
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % frames.length;
+                drained[i] = frames[slot];
+                drainedOwners[i] = owners[slot];
+                drainedTimes[i] = times[slot];
+                frames[slot] = null;
+                owners[slot] = null;
+            }
+            head = (head + count) % frames.length;
+            size = 0;
+            last = closing;
+        } finally {
+            lock.unlock();
+        }
+        int written = 0;
+        try {
+            for (; written < count; written++) {
+                write(drainedTimes[written], drained[written]);
+                release(written);
+            }
+            flush();
+            if (last) {
+                OPEN.remove(this);
+                closeSegment();
+            }
+        } catch (IOException e) {
+            System.err.println("Recording to " + directory + " failed: " + e.getMessage());
+            for (; written < count; written++) {
+                release(written);
+            }
+            abandon();
+            OPEN.remove(this);
+            try {
+                closeSegment();
+            } catch (IOException ignored) {
+                // already reported
+            }
+        }
+    }
+
+    private void release(int drainedIndex) {
+        if (drainedOwners[drainedIndex] != null) {
+            drainedOwners[drainedIndex].release();
+            drainedOwners[drainedIndex] = null;
+        }
+        drained[drainedIndex] = null;
+    }
+
+    /** Stops queuing after a failure and lets go of what was queued meanwhile. */
+    private void abandon() {
+        lock.lock();
+        try {
+            closing = true;
+            for (; size > 0; size--) {
+                if (owners[head] != null) {
+                    owners[head].release();
+                }
+                frames[head] = null;
+                owners[head] = null;
+                head = (head + 1) % frames.length;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(long time, ByteBuffer frame) throws IOException {
+        int frameLength = frame.limit();
+        long length = 8L + frameLength;
+        if (data == null || (position > 0 && position + length > segmentBytes)) {
+            flush();
+            closeSegment();
+            openSegment();
+        }
+        if (time - lastIndexed >= INDEX_INTERVAL_NANOS) {
+            flush();
+            INDEX_ENTRY.clear();
+            INDEX_ENTRY.putLong(time).putLong(position).flip();
+            while (INDEX_ENTRY.hasRemaining()) {
+                index.write(INDEX_ENTRY);
+            }
+            lastIndexed = time;
+        }
+        if (STAGING.remaining() < 8) {
+            flush();
+        }
+        STAGING.putLong(time);
+        int offset = 0;
+        while (offset < frameLength) {
+            if (!STAGING.hasRemaining()) {
+                flush();
+            }
+            int count = Math.min(STAGING.remaining(), frameLength - offset);
+            STAGING.put(STAGING.position(), frame, offset, count);
+            STAGING.position(STAGING.position() + count);
+            offset += count;
+        }
+        position += length;
+    }
+
+    private void flush() throws IOException {
+        STAGING.flip();
+        while (STAGING.hasRemaining()) {
+            data.write(STAGING);
+        }
+        STAGING.clear();
+    }
+
+    private void openSegment() throws IOException {
+        segment++;
+        String name = String.format("%06d", segment);
+        data = FileChannel.open(directory.resolve(name + ".dvr"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve(name + ".idx"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        position = 0;
+        lastIndexed = -INDEX_INTERVAL_NANOS;
+    }
+
+    private void closeSegment() throws IOException {
+        if (data != null) {
+            data.close();
+            index.close();
+            data = null;
+            index = null;
+        }
+    }
+}
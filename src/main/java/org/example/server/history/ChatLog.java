@@ -0,0 +1,235 @@
+package org.example.server.history;
+
+import org.example.protocol.FrameType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append-only chat history of one room, kept as memory-mapped {@link Segment} files in its own
+ * directory. Every line gets the next sequence number, which survives a restart: opening a log
+ * recovers the segments already on disk.
+ *
+ * <p>{@link #open} only queues creating the directory and recovering the segments, and {@link #append}
+ * only hands the line to the shared "chat-log" thread, which does all writing,
+ * rolling and retention, so neither creating a room nor a broadcast ever waits on the disk; reads
+ * find nothing until recovery has finished. Reads come straight from the
+ * mappings: {@link #last} and {@link #since} return read-only views of the stored frames, ready to
+ * be written to a socket. {@link #last} also returns the lines still waiting for that thread, so a
+ * joiner is not missing a line that was broadcast just before it joined.
+ *
+ * <p>A new segment is started when the current one is full. The oldest segments are deleted once
+ * the log is over its byte budget or their last write is older than the retention time; the
+ * current segment is never deleted.
+ */
+public final class ChatLog {
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<ChatLog> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        WRITER.scheduleWithFixedDelay(() -> OPEN.forEach(ChatLog::retain), 1, 1, TimeUnit.MINUTES);
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long retainBytes;
+    private final long retainMillis;
+    // Oldest first; the last one is written to
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    // Guarded by this; lines handed to append and not yet stored, oldest first
+    private final ArrayDeque<ByteBuffer> queued = new ArrayDeque<>();
+    // Guarded by this; written only by the chat-log thread
+    private long nextSeq;
+    // Written only by the chat-log thread
+    private boolean closed;
+
+    private ChatLog(Path directory, int segmentBytes, long retainBytes, long retainMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retainBytes = retainBytes;
+        this.retainMillis = retainMillis;
+    }
+
+    /**
+     * Opens (or creates) the log in {@code directory} on the chat-log thread. If that fails the
+     * error is reported there and the log stays empty and ignores appends.
+     */
+    public static ChatLog open(Path directory, int segmentBytes, long retainBytes, long retainMillis) {
+        ChatLog log = new ChatLog(directory, segmentBytes, retainBytes, retainMillis);
+        WRITER.execute(log::recover);
+        return log;
+    }
+
+    private void recover() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().toList();
+            }
+            List<Segment> recovered = new ArrayList<>();
+            for (Path file : files) {
+                recovered.add(Segment.recover(file));
+            }
+            segments.addAll(recovered);
+            synchronized (this) {
+                nextSeq = recovered.isEmpty() ? 1 : recovered.get(recovered.size() - 1).lastSeq() + 1;
+            }
+            if (!closed) {
+                OPEN.add(this);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not open chat log in " + directory + ": " + e.getMessage());
+            closed = true;
+        }
+    }
+
+    /** Queues a chat line, given as its text payload, to be stored under the next sequence number. */
+    public void append(byte[] line, int off, int len) {
+        synchronized (this) {
+            queued.add(ByteBuffer.wrap(line, off, len).slice());
+        }
+        WRITER.execute(this::write);
+    }
+
+    /** Sequence number of the newest stored line, or 0 if there is none. */
+    public long lastSeq() {
+        List<Segment> current = segments;
+        for (int i = current.size() - 1; i >= 0; i--) {
+            Segment segment = current.get(i);
+            if (segment.count() > 0) {
+                return segment.lastSeq();
+            }
+        }
+        return 0;
+    }
+
+    /** The newest {@code count} lines still retained or waiting to be stored, oldest first. */
+    public synchronized List<ByteBuffer> last(int count) {
+        List<ByteBuffer> waiting = new ArrayList<>();
+        // Recovery sets the next number; until then nothing can be read
+        if (nextSeq > 0) {
+            long seq = nextSeq;
+            for (ByteBuffer line : queued) {
+                if (fits(line.remaining())) {
+                    waiting.add(Segment.encode(FrameType.CHAT_HISTORY, seq++, line));
+                }
+            }
+        }
+        int stored = Math.max(0, count - waiting.size());
+        List<ByteBuffer> records = new ArrayList<>(since(Math.max(1, lastSeq() - stored + 1), stored));
+        records.addAll(waiting.subList(waiting.size() - (count - stored), waiting.size()));
+        return Collections.unmodifiableList(records);
+    }
+
+    /** Up to {@code limit} retained lines with a sequence number of at least {@code fromSeq}, oldest first. */
+    public List<ByteBuffer> since(long fromSeq, int limit) {
+        List<ByteBuffer> records = new ArrayList<>();
+        for (Segment segment : segments) {
+            int count = segment.count();
+            long last = segment.firstSeq + count - 1;
+            if (count == 0 || last < fromSeq) {
+                continue;
+            }
+            for (long seq = Math.max(fromSeq, segment.firstSeq); seq <= last && records.size() < limit; seq++) {
+                records.add(segment.record(seq));
+            }
+            if (records.size() == limit) {
+                break;
+            }
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    /** Writes out everything queued so far and stops; the files stay for the next {@link #open}. */
+    public void close() {
+        WRITER.execute(() -> {
+            closed = true;
+            OPEN.remove(this);
+            if (!segments.isEmpty()) {
+                segments.get(segments.size() - 1).force();
+            }
+        });
+    }
+
+    /** Stores the oldest queued line; it stays readable through {@link #last} until it is. */
+    private void write() {
+        ByteBuffer line;
+        synchronized (this) {
+            line = queued.peek();
+        }
+        Segment current = closed ? null : segmentFor(line.remaining());
+        synchronized (this) {
+            if (current != null) {
+                current.append(FrameType.CHAT_HISTORY, nextSeq++, line.array(), line.arrayOffset(), line.remaining());
+            }
+            queued.poll();
+        }
+    }
+
+    private boolean fits(int len) {
+        return Segment.RECORD_OVERHEAD + len <= segmentBytes;
+    }
+
+    /** The segment with room for a line of {@code len} bytes, started if need be, or null if it cannot be stored. */
+    private Segment segmentFor(int len) {
+        if (!fits(len)) {
+            System.err.println("Chat line of " + len + " bytes does not fit a log segment; not logged.");
+            return null;
+        }
+        try {
+            Segment current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (current == null || !current.hasRoom(Segment.RECORD_OVERHEAD + len)) {
+                if (current != null) {
+                    current.force();
+                }
+                current = Segment.create(directory, nextSeq, segmentBytes);
+                segments.add(current);
+                retain();
+            }
+            return current;
+        } catch (IOException e) {
+            System.err.println("Could not write chat log in " + directory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Deletes the oldest segments beyond the byte budget or the retention time. */
+    private void retain() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.bytes();
+        }
+        long expiredBefore = System.currentTimeMillis() - retainMillis;
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            if (total <= retainBytes && oldest.lastWriteMillis() >= expiredBefore) {
+                break;
+            }
+            segments.remove(0);
+            total -= oldest.bytes();
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                System.err.println("Could not delete chat log segment " + oldest.path + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.server.history;
+
+import org.example.protocol.FrameCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One fixed-size, memory-mapped file of consecutive records, named after the sequence number of
+ * its first record. Records are complete {@code CHAT_HISTORY} frames, {@code seq:u64} followed by
+ * the chat line, so they can be sent exactly as stored. The zeroed tail of the file marks the end.
+ *
+ * <p>Sequence numbers within a segment are contiguous, so the offset index is a plain array:
+ * record {@code seq} starts at {@code offsets[seq - firstSeq]}. Only the log's writer thread
+ * appends. Readers see a record once {@code count} covers it; the index array is replaced before
+ * count is raised, so a reader that reads count first always finds its entries.
+ */
+final class Segment {
+    static final int RECORD_OVERHEAD = FrameCodec.HEADER_LENGTH + 8;
+
+    final Path path;
+    final long firstSeq;
+    private final MappedByteBuffer map;
+    private int[] offsets = new int[256];
+    private volatile int count;
+    private int end;
+    private volatile long lastWriteMillis;
+
+    private Segment(Path path, long firstSeq, MappedByteBuffer map) {
+        this.path = path;
+        this.firstSeq = firstSeq;
+        this.map = map;
+    }
+
+    static Segment create(Path directory, long firstSeq, int size) throws IOException {
+        Path path = directory.resolve(String.format("%020d.log", firstSeq));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(path, firstSeq, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segment.lastWriteMillis = System.currentTimeMillis();
+            return segment;
+        }
+    }
+
+    /** Maps an existing segment and rebuilds its index by walking the records. */
+    static Segment recover(Path path) throws IOException {
+        String file = path.getFileName().toString();
+        long firstSeq = Long.parseLong(file.substring(0, file.length() - ".log".length()));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(path, firstSeq, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            segment.lastWriteMillis = Files.getLastModifiedTime(path).toMillis();
+            segment.scan();
+            return segment;
+        }
+    }
+
+    private void scan() {
+        int position = 0;
+        while (position + RECORD_OVERHEAD <= map.capacity() && map.get(position) != 0) {
+            int length = map.getInt(position + 1);
+            if (length < 8 || position + FrameCodec.HEADER_LENGTH + length > map.capacity()
+                    || map.getLong(position + FrameCodec.HEADER_LENGTH) != firstSeq + count) {
+                break;
+            }
+            index(position);
+            position += FrameCodec.HEADER_LENGTH + length;
+        }
+        end = position;
+    }
+
+    boolean hasRoom(int recordLength) {
+        return end + recordLength <= map.capacity();
+    }
+
+    /** Appends one record; the caller has checked {@link #hasRoom}. */
+    void append(byte type, long seq, byte[] line, int off, int len) {
+        int position = end;
+        map.put(position, type);
+        map.putInt(position + 1, 8 + len);
+        map.putLong(position + FrameCodec.HEADER_LENGTH, seq);
+        map.put(position + RECORD_OVERHEAD, line, off, len);
+        end = position + RECORD_OVERHEAD + len;
+        lastWriteMillis = System.currentTimeMillis();
+        index(position);
+    }
+
+    /** A record like the ones {@link #append} stores, for a line that is not stored yet. */
+    static ByteBuffer encode(byte type, long seq, ByteBuffer line) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + line.remaining());
+        record.put(type).putInt(8 + line.remaining()).putLong(seq).put(line.duplicate()).flip();
+        return record.asReadOnlyBuffer();
+    }
+
+    private void index(int position) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count] = position;
+        count++;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long lastSeq() {
+        return firstSeq + count - 1;
+    }
+
+    int bytes() {
+        return end;
+    }
+
+    long lastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    /** A read-only view of the record with this sequence number, without copying it. */
+    ByteBuffer record(long seq) {
+        int i = (int) (seq - firstSeq);
+        int position = offsets[i];
+        int length = FrameCodec.HEADER_LENGTH + map.getInt(position + 1);
+        return map.slice(position, length).asReadOnlyBuffer();
+    }
+
+    void force() {
+        map.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
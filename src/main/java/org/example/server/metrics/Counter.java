@@ -0,0 +1,20 @@
+package org.example.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A monotonically increasing count; striped, so concurrent increments do not contend. */
+public final class Counter {
+    private final LongAdder adder = new LongAdder();
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long amount) {
+        adder.add(amount);
+    }
+
+    public long get() {
+        return adder.sum();
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.server.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exposes a registry over JMX as read-only attributes: one per counter and gauge, and
+ * {@code name_p50}, {@code name_p99}, ... {@code name_count} per histogram.
+ */
+final class MetricsMBean implements DynamicMBean {
+    private final MetricsRegistry registry;
+
+    MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (MetricsRegistry.Entry entry : registry.entries()) {
+            switch (entry.kind()) {
+                case COUNTER -> {
+                    if (attribute.equals(entry.name())) {
+                        return entry.value();
+                    }
+                }
+                case GAUGE -> {
+                    if (attribute.equals(entry.name())) {
+                        return entry.value();
+                    }
+                }
+                case HISTOGRAM -> {
+                    if (attribute.startsWith(entry.name() + "_")) {
+                        Object value = histogramAttribute(entry, attribute.substring(entry.name().length() + 1));
+                        if (value != null) {
+                            return value;
+                        }
+                    }
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    private static Object histogramAttribute(MetricsRegistry.Entry entry, String suffix) {
+        Histogram.Snapshot snapshot = entry.histogram().snapshot();
+        return switch (suffix) {
+            case "count" -> snapshot.count();
+            case "max" -> snapshot.max() * entry.scale();
+            case "sum" -> snapshot.sum() * entry.scale();
+            default -> {
+                for (int i = 0; i < MetricsRegistry.QUANTILES.length; i++) {
+                    if (suffix.equals(MetricsRegistry.QUANTILE_NAMES[i])) {
+                        yield snapshot.percentile(MetricsRegistry.QUANTILES[i]) * entry.scale();
+                    }
+                }
+                yield null;
+            }
+        };
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // JMX convention: unknown attributes are left out
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (MetricsRegistry.Entry entry : registry.entries()) {
+            if (entry.kind() == MetricsRegistry.Kind.HISTOGRAM) {
+                for (String quantile : MetricsRegistry.QUANTILE_NAMES) {
+                    attributes.add(attribute(entry.name() + "_" + quantile, "double", entry.help()));
+                }
+                attributes.add(attribute(entry.name() + "_max", "double", entry.help()));
+                attributes.add(attribute(entry.name() + "_sum", "double", entry.help()));
+                attributes.add(attribute(entry.name() + "_count", "long", entry.help()));
+            } else {
+                attributes.add(attribute(entry.name(), "long", entry.help()));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Server metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    private static MBeanAttributeInfo attribute(String name, String type, String description) {
+        return new MBeanAttributeInfo(name, type, description, true, false, false);
+    }
+}
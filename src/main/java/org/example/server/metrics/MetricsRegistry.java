@@ -0,0 +1,89 @@
+package org.example.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and histograms, in registration order. Metrics are created once at
+ * startup; reading them (for the scrape endpoint or JMX) is the only thing that walks this list.
+ */
+public final class MetricsRegistry {
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    enum Kind { COUNTER, GAUGE, HISTOGRAM }
+
+    /** One registered metric; {@code scale} converts recorded histogram values to reported units. */
+    record Entry(String name, String help, Kind kind, Counter counter, LongSupplier gauge, Histogram histogram, double scale) {
+        /** The current value of a counter or gauge. */
+        long value() {
+            return counter != null ? counter.get() : gauge.getAsLong();
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public synchronized Counter counter(String name, String help) {
+        Counter counter = new Counter();
+        entries.add(new Entry(name, help, Kind.COUNTER, counter, null, null, 1));
+        return counter;
+    }
+
+    /** A counter kept elsewhere, such as by a subsystem that does not know about metrics. */
+    public synchronized void counter(String name, String help, LongSupplier value) {
+        entries.add(new Entry(name, help, Kind.COUNTER, null, value, null, 1));
+    }
+
+    public synchronized void gauge(String name, String help, LongSupplier value) {
+        entries.add(new Entry(name, help, Kind.GAUGE, null, value, null, 1));
+    }
+
+    /** Values are recorded as longs and multiplied by {@code scale} when reported, e.g. 1e-9 for nanoseconds to seconds. */
+    public synchronized Histogram histogram(String name, String help, double scale) {
+        Histogram histogram = new Histogram();
+        entries.add(new Entry(name, help, Kind.HISTOGRAM, null, null, histogram, scale));
+        return histogram;
+    }
+
+    synchronized List<Entry> entries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /** Prometheus text exposition format; histograms are reported as summaries. */
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Entry entry : entries()) {
+            out.append("# HELP ").append(entry.name()).append(' ').append(entry.help()).append('\n');
+            switch (entry.kind()) {
+                case COUNTER -> {
+                    out.append("# TYPE ").append(entry.name()).append(" counter\n");
+                    out.append(entry.name()).append(' ').append(entry.value()).append('\n');
+                }
+                case GAUGE -> {
+                    out.append("# TYPE ").append(entry.name()).append(" gauge\n");
+                    out.append(entry.name()).append(' ').append(entry.value()).append('\n');
+                }
+                case HISTOGRAM -> {
+                    Histogram.Snapshot snapshot = entry.histogram().snapshot();
+                    out.append("# TYPE ").append(entry.name()).append(" summary\n");
+                    for (double quantile : QUANTILES) {
+                        out.append(entry.name()).append("{quantile=\"").append(quantile).append("\"} ")
+                                .append(format(snapshot.percentile(quantile) * entry.scale())).append('\n');
+                    }
+                    out.append(entry.name()).append("_max ").append(format(snapshot.max() * entry.scale())).append('\n');
+                    out.append(entry.name()).append("_sum ").append(format(snapshot.sum() * entry.scale())).append('\n');
+                    out.append(entry.name()).append("_count ").append(snapshot.count()).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineDecoderTest {
+    /** Records what the decoder delivers; accepts frames once told to. */
+    private static final class Recorder implements LineDecoder.Listener {
+        final List<String> lines = new ArrayList<>();
+        final List<String> frames = new ArrayList<>();
+        boolean acceptsFrames;
+
+        @Override
+        public void onLine(String line) {
+            lines.add(line);
+        }
+
+        @Override
+        public boolean acceptsFrames() {
+            return acceptsFrames;
+        }
+
+        @Override
+        public void onBinary(byte[] block, int payloadOffset) {
+            frames.add(new String(block, payloadOffset, block.length - payloadOffset, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void frameLinesAreOrdinaryLinesUntilFramesAreAccepted() throws IOException {
+        Recorder recorder = new Recorder();
+        LineDecoder decoder = new LineDecoder(recorder);
+        decode(decoder, "FRAME:5\nhello\nFRAME: not a header\n");
+        assertEquals(List.of("FRAME:5", "hello", "FRAME: not a header"), recorder.lines);
+        assertTrue(recorder.frames.isEmpty());
+    }
+
+    @Test
+    void acceptedFramesAreDeliveredWhole() throws IOException {
+        Recorder recorder = new Recorder();
+        recorder.acceptsFrames = true;
+        LineDecoder decoder = new LineDecoder(recorder);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(LineDecoder.frameHeader(6));
+        stream.write("ab\ncd\n".getBytes(StandardCharsets.UTF_8));
+        stream.write("after\r\n".getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = stream.toByteArray();
+        // One byte at a time, so the header and payload are split across reads
+        for (int i = 0; i < bytes.length; i++) {
+            decoder.decode(bytes, i, 1);
+        }
+        assertEquals(List.of("ab\ncd\n"), recorder.frames);
+        assertEquals(List.of("after"), recorder.lines);
+    }
+
+    @Test
+    void malformedFrameHeaderFailsOnceFramesAreAccepted() {
+        Recorder recorder = new Recorder();
+        recorder.acceptsFrames = true;
+        LineDecoder decoder = new LineDecoder(recorder);
+        assertThrows(IOException.class, () -> decode(decoder, "FRAME: hi\n"));
+    }
+
+    private static void decode(LineDecoder decoder, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaPacketTest {
+    private static final int CHUNK = 100;
+    private static final int GROUP = 4;
+    private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /** Counts what a jitter buffer reports. */
+    private static final class Recorder implements JitterBuffer.Listener {
+        final List<byte[]> frames = new ArrayList<>();
+        int recovered;
+        int lost;
+
+        @Override
+        public void onFrame(byte[] frame) {
+            frames.add(frame);
+        }
+
+        @Override
+        public void onRecovered() {
+            recovered++;
+        }
+
+        @Override
+        public void onLost(int frames) {
+            lost += frames;
+        }
+    }
+
+    @Test
+    void packetsCarryTheFrameWithParityPerGroup() throws IOException {
+        List<byte[]> packets = packetize(7, frame(0, 950));
+        // 10 data packets in groups of 4, 4 and 2, each group followed by its parity
+        assertEquals(13, packets.size());
+        assertEquals(3, packets.stream().filter(MediaPacketTest::isParity).count());
+        for (byte[] packet : packets) {
+            assertEquals(42L, MediaPacket.token(packet));
+            assertEquals(7, MediaPacket.frame(packet));
+            assertEquals(950, MediaPacket.length(packet));
+            assertEquals(10, MediaPacket.count(packet));
+        }
+    }
+
+    @Test
+    void rebuildsOneLostPacketPerGroupFromParity() throws IOException {
+        byte[] frame = frame(0, 950);
+        List<byte[]> packets = packetize(0, frame);
+        // Lose the second data packet of every group: indexes 1, 5 and 9
+        packets.removeIf(packet -> !isParity(packet) && MediaPacket.index(packet) % GROUP == 1);
+
+        Recorder recorder = new Recorder();
+        JitterBuffer buffer = new JitterBuffer(DELAY, recorder);
+        for (byte[] packet : packets) {
+            assertTrue(buffer.offer(packet, packet.length, 0));
+        }
+        assertEquals(3, recorder.recovered);
+        assertEquals(1, recorder.frames.size());
+        assertArrayEquals(frame, recorder.frames.get(0));
+    }
+
+    @Test
+    void reorderedPacketsAcrossFramesComeOutInFrameOrder() throws IOException {
+        List<byte[]> originals = new ArrayList<>();
+        List<byte[]> packets = new ArrayList<>();
+        for (int seq = 0; seq < 5; seq++) {
+            byte[] frame = frame(seq, 300 + 97 * seq);
+            originals.add(frame);
+            packets.addAll(packetize(seq, frame));
+        }
+        // The stream starts at the first packet received, so shuffle the ones after it
+        Collections.shuffle(packets.subList(1, packets.size()), new Random(1));
+        // And lose one data packet of frame 3, which its parity makes up for
+        packets.remove(packets.stream().filter(p -> MediaPacket.frame(p) == 3 && !isParity(p)).findFirst().orElseThrow());
+
+        Recorder recorder = new Recorder();
+        JitterBuffer buffer = new JitterBuffer(DELAY, recorder);
+        for (byte[] packet : packets) {
+            buffer.offer(packet, packet.length, 0);
+        }
+        buffer.poll(0);
+        assertEquals(0, recorder.lost);
+        // A parity that arrives before the rest of its group can rebuild a packet that was only late
+        assertTrue(recorder.recovered >= 1);
+        assertEquals(originals.size(), recorder.frames.size());
+        for (int i = 0; i < originals.size(); i++) {
+            assertArrayEquals(originals.get(i), recorder.frames.get(i), "frame " + i);
+        }
+    }
+
+    @Test
+    void givesUpOnAFrameMissingTwoPacketsOfAGroup() throws IOException {
+        byte[] first = frame(0, 400);
+        byte[] second = frame(1, 400);
+        List<byte[]> packets = packetize(0, first);
+        packets.removeIf(packet -> !isParity(packet) && MediaPacket.index(packet) < 2);
+        packets.addAll(packetize(1, second));
+
+        Recorder recorder = new Recorder();
+        JitterBuffer buffer = new JitterBuffer(DELAY, recorder);
+        for (byte[] packet : packets) {
+            buffer.offer(packet, packet.length, 0);
+        }
+        // The complete second frame waits behind the first until the delay is up
+        assertTrue(recorder.frames.isEmpty());
+        buffer.poll(DELAY);
+        assertEquals(1, recorder.lost);
+        assertEquals(1, recorder.frames.size());
+        assertArrayEquals(second, recorder.frames.get(0));
+
+        // Its packets are late now
+        byte[] late = packetize(0, first).get(0);
+        assertTrue(buffer.offer(late, late.length, DELAY));
+        assertEquals(1, recorder.frames.size());
+    }
+
+    private static byte[] frame(int seed, int length) {
+        byte[] frame = new byte[length];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    private static List<byte[]> packetize(int seq, byte[] frame) throws IOException {
+        List<byte[]> packets = new ArrayList<>();
+        new MediaPacket(CHUNK, GROUP).send(42L, seq, frame, 0, frame.length, packet -> {
+            byte[] copy = new byte[packet.remaining()];
+            packet.get(copy);
+            packets.add(copy);
+        });
+        return packets;
+    }
+
+    private static boolean isParity(byte[] packet) {
+        return (MediaPacket.flags(packet) & MediaPacket.PARITY) != 0;
+    }
+}
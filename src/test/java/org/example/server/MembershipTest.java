@@ -0,0 +1,128 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MembershipTest {
+    private static final class Member extends TestConnection {
+        int seenInBroadcast;
+
+        Member() {
+            super(true);
+        }
+    }
+
+    @Test
+    void addAndRemoveAreIdempotent() {
+        Membership members = new Membership();
+        Member member = new Member();
+        assertTrue(members.add(member));
+        assertFalse(members.add(member));
+        assertTrue(members.contains(member));
+        assertEquals(1, members.size());
+        assertTrue(members.remove(member));
+        assertFalse(members.remove(member));
+        assertTrue(members.isEmpty());
+    }
+
+    @Test
+    void freedSlotsAreReusedWithoutLosingMembers() {
+        Membership members = new Membership();
+        List<Member> all = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Member member = new Member();
+            all.add(member);
+            members.add(member);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            members.remove(all.get(i));
+        }
+        for (int i = 0; i < 50; i++) {
+            Member member = new Member();
+            all.add(member);
+            members.add(member);
+        }
+        Set<Connection> visited = new HashSet<>();
+        members.forEach(connection -> assertTrue(visited.add(connection), "visited twice"));
+        assertEquals(100, visited.size());
+        assertEquals(100, members.size());
+    }
+
+    /**
+     * Viewers join and leave at a fixed rate while broadcasts scan the room; every broadcast must
+     * reach each long-lived member exactly once.
+     */
+    @Test
+    void broadcastsReachStableMembersExactlyOnceUnderChurn() throws InterruptedException {
+        int stableCount = 2_000;
+        int churnPerSecond = 5_000;
+        Membership members = new Membership();
+        List<Member> stable = new ArrayList<>();
+        for (int i = 0; i < stableCount; i++) {
+            Member member = new Member();
+            stable.add(member);
+            members.add(member);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong joins = new AtomicLong();
+        Thread churn = new Thread(() -> {
+            List<Member> visitors = new ArrayList<>();
+            long interval = TimeUnit.SECONDS.toNanos(1) / churnPerSecond;
+            long next = System.nanoTime();
+            while (running.get()) {
+                // Join and leave in a shuffled order so freed slots are reused from the middle
+                if (visitors.size() < 500 || (joins.get() & 1) == 0) {
+                    Member member = new Member();
+                    members.add(member);
+                    visitors.add(member);
+                } else {
+                    int victim = (int) ((joins.get() * 7919) % visitors.size());
+                    members.remove(visitors.get(victim));
+                    visitors.set(victim, visitors.get(visitors.size() - 1));
+                    visitors.remove(visitors.size() - 1);
+                }
+                joins.incrementAndGet();
+                next += interval;
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+            visitors.forEach(members::remove);
+        }, "churn");
+
+        long broadcasts = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        churn.start();
+        try {
+            while (System.nanoTime() < deadline) {
+                members.forEach(connection -> ((Member) connection).seenInBroadcast++);
+                for (Member member : stable) {
+                    assertEquals(1, member.seenInBroadcast,
+                            "stable member " + member.id() + " in broadcast " + broadcasts);
+                    member.seenInBroadcast = 0;
+                }
+                broadcasts++;
+            }
+        } finally {
+            running.set(false);
+            churn.join();
+        }
+
+        assertTrue(joins.get() > 1_000, "churn thread barely ran: " + joins.get());
+        int[] counted = new int[1];
+        members.forEach(connection -> counted[0]++);
+        assertEquals(stableCount, members.size());
+        assertEquals(stableCount, counted[0]);
+    }
+}
@@ -0,0 +1,279 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameDecoder;
+import org.example.protocol.FrameType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * An origin and an edge in this JVM, each loaded by a class loader of its own so that they do not
+ * share the server's static state. The edge reaches the origin through a proxy that the test can
+ * cut to drop the upstream links.
+ */
+class RelayTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final List<AutoCloseable> open = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() throws Exception {
+        for (AutoCloseable closeable : open) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void edgeMirrorsRelaysAndRecoversFromALostUpstream() throws Exception {
+        int originPort = startNode(null);
+        Proxy proxy = track(new Proxy(originPort));
+        int edgePort = startNode("127.0.0.1:" + proxy.port());
+
+        Client owner = track(new Client(originPort, "owner"));
+        owner.send(FrameType.CREATE_ROOM, "stage");
+        Client viewer = track(new Client(edgePort, "viewer"));
+        awaitListed(viewer, "stage", true);
+
+        viewer.send(FrameType.JOIN_ROOM, "stage");
+        awaitVideo(owner, viewer);
+        viewer.send(FrameType.CHAT, "hello from the edge");
+        owner.await(FrameType.CHAT, "viewer: hello from the edge");
+        owner.send(FrameType.CHAT, "hello from the origin");
+        viewer.await(FrameType.CHAT, "owner: hello from the origin");
+
+        proxy.cut();
+        awaitListed(viewer, "stage", false);
+        awaitListed(viewer, "stage", true);
+
+        viewer.send(FrameType.JOIN_ROOM, "stage");
+        awaitVideo(owner, viewer);
+        viewer.send(FrameType.CHAT, "back again");
+        owner.await(FrameType.CHAT, "viewer: back again");
+    }
+
+    /** Starts a server on a free port, as an edge of {@code origin} if that is given; returns the port. */
+    private static int startNode(String origin) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Properties saved = (Properties) System.getProperties().clone();
+        try {
+            System.setProperty("server.port", Integer.toString(port));
+            System.setProperty("server.metricsPort", "-1");
+            if (origin != null) {
+                System.setProperty("server.origin", origin);
+            }
+            URL classes = Server.class.getProtectionDomain().getCodeSource().getLocation();
+            ClassLoader loader = new URLClassLoader(new URL[] {classes}, ClassLoader.getPlatformClassLoader());
+            // Initializing Server reads its configuration, so the properties can be put back afterwards
+            Class<?> server = Class.forName(Server.class.getName(), true, loader);
+            Thread thread = new Thread(() -> {
+                try {
+                    server.getMethod("main", String[].class).invoke(null, (Object) new String[] {"virtual"});
+                } catch (ReflectiveOperationException e) {
+                    e.printStackTrace();
+                }
+            }, "node-" + port);
+            thread.setDaemon(true);
+            thread.start();
+        } finally {
+            System.setProperties(saved);
+        }
+        awaitPort(port);
+        return port;
+    }
+
+    private static void awaitPort(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 200);
+                return;
+            } catch (IOException e) {
+                assertTrue(System.nanoTime() < deadline, "server on port " + port + " did not start");
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+        }
+    }
+
+    /** Asks for the room list until {@code room} is in it, or until it is not. */
+    private static void awaitListed(Client client, String room, boolean listed) throws Exception {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (System.nanoTime() < deadline) {
+            client.send(FrameType.ROOM_LIST_REQUEST, "");
+            Frame list = client.poll(frame -> frame.type == FrameType.ROOM_LIST, 500);
+            if (list != null && FrameCodec.decodeNames(list.payload, 8, list.payload.length - 8).contains(room) == listed) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        fail("room " + room + (listed ? " never appeared" : " never went away"));
+    }
+
+    /** Publishes frames from the owner until the viewer receives one. */
+    private static void awaitVideo(Client owner, Client viewer) throws Exception {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, 'e', 'd', 'g', 'e', (byte) 0xFF, (byte) 0xD9};
+        while (System.nanoTime() < deadline) {
+            owner.send(FrameCodec.encode(FrameType.VIDEO_FRAME, jpeg, 0, jpeg.length));
+            if (viewer.poll(frame -> frame.type == FrameType.VIDEO_FRAME, 100) != null) {
+                return;
+            }
+        }
+        fail("no video reached the edge");
+    }
+
+    private <T extends AutoCloseable> T track(T closeable) {
+        open.add(closeable);
+        return closeable;
+    }
+
+    private record Frame(byte type, byte[] payload) {
+        String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** A binary-protocol client that keeps every frame it receives. */
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final OutputStream out;
+        private final BlockingQueue<Frame> received = new LinkedBlockingQueue<>();
+
+        Client(int port, String name) throws IOException {
+            socket = new Socket("127.0.0.1", port);
+            out = socket.getOutputStream();
+            Thread.ofVirtual().start(this::read);
+            send(FrameCodec.preamble());
+            send(FrameType.HELLO, name);
+        }
+
+        void send(byte type, String text) throws IOException {
+            send(FrameCodec.encode(type, text));
+        }
+
+        synchronized void send(byte[] bytes) throws IOException {
+            out.write(bytes);
+            out.flush();
+        }
+
+        /** The first frame matching {@code test}, skipping the others, or null after {@code millis}. */
+        Frame poll(Predicate<Frame> test, long millis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            Frame frame;
+            while ((frame = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                if (test.test(frame)) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        void await(byte type, String text) throws InterruptedException {
+            Frame frame = poll(f -> f.type == type && f.text().equals(text), TimeUnit.NANOSECONDS.toMillis(TIMEOUT_NANOS));
+            assertNotNull(frame, "never received \"" + text + "\"");
+        }
+
+        private void read() {
+            FrameDecoder decoder = new FrameDecoder((type, block, off, len) ->
+                    received.add(new Frame(type, Arrays.copyOfRange(block, off, off + len))));
+            try (InputStream in = socket.getInputStream()) {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    decoder.decode(buf, 0, n);
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /** Forwards connections to a server; {@link #cut} drops every one open so far. */
+    private static final class Proxy implements AutoCloseable {
+        private final ServerSocket listener = new ServerSocket(0);
+        private final int target;
+        private final List<Socket> sockets = new ArrayList<>();
+
+        Proxy(int target) throws IOException {
+            this.target = target;
+            Thread.ofVirtual().start(this::accept);
+        }
+
+        int port() {
+            return listener.getLocalPort();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket downstream = listener.accept();
+                    Socket upstream = new Socket("127.0.0.1", target);
+                    synchronized (this) {
+                        sockets.add(downstream);
+                        sockets.add(upstream);
+                    }
+                    Thread.ofVirtual().start(() -> pump(downstream, upstream));
+                    Thread.ofVirtual().start(() -> pump(upstream, downstream));
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private static void pump(Socket from, Socket to) {
+            try {
+                from.getInputStream().transferTo(to.getOutputStream());
+            } catch (IOException e) {
+                // one side was cut
+            }
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+
+        synchronized void cut() {
+            sockets.forEach(Proxy::closeQuietly);
+            sockets.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            listener.close();
+            cut();
+        }
+
+        private static void closeQuietly(Socket socket) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.server;
+
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RoomJoinTest {
+    private static final int MESSAGES = 300;
+    private static final int BYSTANDERS = 50;
+    private static final String PREFIX = "owner: ";
+
+    /** The numbers of the chat lines a connection was sent, from the join cache and live, in order. */
+    private static List<Integer> lines(TestConnection connection) {
+        List<Integer> lines = new ArrayList<>();
+        for (byte[] frame : connection.sent()) {
+            if (frame[0] == FrameType.CHAT) {
+                String text = new String(frame, FrameCodec.HEADER_LENGTH, frame.length - FrameCodec.HEADER_LENGTH, StandardCharsets.UTF_8);
+                lines.add(Integer.parseInt(text.substring((PREFIX + "line ").length())));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Joins while another thread chats in the room: the cached lines the joiner is sent and the
+     * ones it then gets live must run on without a gap or a repeat up to the last line.
+     */
+    @Test
+    void joinDuringBroadcastsMissesNothing() throws InterruptedException {
+        for (int iteration = 0; iteration < 50; iteration++) {
+            Room room = new Room("join-race-" + iteration, new TestConnection(true));
+            for (int i = 0; i < BYSTANDERS; i++) {
+                room.join(new TestConnection(true));
+            }
+
+            CountDownLatch started = new CountDownLatch(1);
+            Thread broadcaster = new Thread(() -> {
+                byte[] prefix = PREFIX.getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < MESSAGES; i++) {
+                    byte[] text = ("line " + i).getBytes(StandardCharsets.UTF_8);
+                    room.deliverChat(OutboundMessage.chat(prefix, text, 0, text.length));
+                    if (i == MESSAGES / 4) {
+                        started.countDown();
+                    }
+                }
+            }, "broadcaster");
+            broadcaster.start();
+            started.await();
+
+            TestConnection joiner = new TestConnection(true);
+            room.join(joiner);
+            broadcaster.join();
+
+            List<Integer> lines = lines(joiner);
+            assertFalse(lines.isEmpty(), "iteration " + iteration);
+            int first = lines.get(0);
+            for (int i = 0; i < lines.size(); i++) {
+                assertEquals(first + i, lines.get(i), "iteration " + iteration + ", line " + i + " of " + lines);
+            }
+            assertEquals(MESSAGES - 1, lines.get(lines.size() - 1), "iteration " + iteration);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.server;
+
+import org.example.protocol.Compression;
+import org.example.protocol.FrameCodec;
+import org.example.protocol.FrameType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomResumeTest {
+    private static final int MESSAGES = 300;
+    // Below the presence threshold, so every join notice is broadcast straight away
+    private static final int BYSTANDERS = ServerConfig.PRESENCE_THRESHOLD - 10;
+    private static final byte[] PREFIX = "owner: ".getBytes(StandardCharsets.UTF_8);
+
+    private static TestConnection resumable() {
+        TestConnection connection = new TestConnection(true);
+        connection.useResume();
+        return connection;
+    }
+
+    private static boolean isNumbering(byte[] frame) {
+        return frame[0] == FrameType.SEQUENCED && frame.length == FrameCodec.HEADER_LENGTH + 8;
+    }
+
+    /** Sequence numbers of the numbered messages a connection was sent, in order. */
+    private static List<Long> seqs(TestConnection connection) {
+        List<Long> seqs = new ArrayList<>();
+        for (byte[] frame : connection.sent()) {
+            if (frame[0] == FrameType.SEQUENCED && !isNumbering(frame)) {
+                seqs.add(FrameCodec.getLong(frame, FrameCodec.HEADER_LENGTH));
+            }
+        }
+        return seqs;
+    }
+
+    /** Types of the frames a connection was sent, with those inside compressed frames in their place. */
+    private static List<Byte> types(TestConnection connection) throws DataFormatException {
+        List<Byte> types = new ArrayList<>();
+        for (byte[] frame : connection.sent()) {
+            if (frame[0] != FrameType.COMPRESSED) {
+                types.add(frame[0]);
+                continue;
+            }
+            byte[] frames = Compression.inflate(new Inflater(true), frame, FrameCodec.HEADER_LENGTH, frame.length - FrameCodec.HEADER_LENGTH);
+            for (int off = 0; off < frames.length; off += FrameCodec.HEADER_LENGTH + FrameCodec.getInt(frames, off + 1)) {
+                types.add(frames[off]);
+            }
+        }
+        return types;
+    }
+
+    private static long last(List<Long> seqs) {
+        return seqs.isEmpty() ? 0 : seqs.get(seqs.size() - 1);
+    }
+
+    @Test
+    void joinerIsFirstToldWhereTheNumberingIs() {
+        Room room = new Room("resume-numbering", new TestConnection(true));
+        room.broadcast(OutboundMessage.chat(PREFIX, new byte[]{'a'}, 0, 1));
+        room.broadcast(OutboundMessage.chat(PREFIX, new byte[]{'b'}, 0, 1));
+
+        TestConnection joiner = resumable();
+        room.join(joiner);
+        byte[] first = joiner.sent().get(0);
+        assertTrue(isNumbering(first));
+        assertEquals(2, FrameCodec.getLong(first, FrameCodec.HEADER_LENGTH));
+        // Its own join notice comes next
+        assertEquals(List.of(3L), seqs(joiner));
+    }
+
+    @Test
+    void compressedBatchesAreSequencedOnlyForMembersThatResume() throws DataFormatException {
+        Room room = new Room("resume-compressed", new TestConnection(true));
+        TestConnection plain = new TestConnection(true);
+        plain.useCompression();
+        room.join(plain);
+        TestConnection sequenced = resumable();
+        sequenced.useCompression();
+        room.join(sequenced);
+        byte[] text = "the same words, over and over again".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 20; i++) {
+            room.broadcast(OutboundMessage.chat(PREFIX, text, 0, text.length));
+        }
+        // Joining sends what is batched
+        room.join(new TestConnection(true));
+
+        assertTrue(plain.sent().stream().anyMatch(frame -> frame[0] == FrameType.COMPRESSED));
+        assertTrue(types(plain).contains(FrameType.CHAT));
+        assertFalse(types(plain).contains(FrameType.SEQUENCED));
+        assertTrue(sequenced.sent().stream().anyMatch(frame -> frame[0] == FrameType.COMPRESSED));
+        assertTrue(types(sequenced).contains(FrameType.SEQUENCED));
+        assertFalse(types(sequenced).contains(FrameType.CHAT));
+    }
+
+    @Test
+    void replaysWhatWasMissedThenContinuesLive() {
+        Room room = new Room("resume-replay", new TestConnection(true));
+        TestConnection previous = resumable();
+        room.join(previous);
+        room.broadcast(OutboundMessage.chat(PREFIX, new byte[]{'a'}, 0, 1));
+        long lastSeq = last(seqs(previous));
+        room.broadcast(OutboundMessage.chat(PREFIX, new byte[]{'b'}, 0, 1));
+        room.broadcast(OutboundMessage.chat(PREFIX, new byte[]{'c'}, 0, 1));
+
+        TestConnection resumed = resumable();
+        room.resume(resumed, previous, lastSeq);
+        room.broadcast(OutboundMessage.chat(PREFIX, new byte[]{'d'}, 0, 1));
+
+        List<Long> seqs = seqs(resumed);
+        // b, c, the rejoin notice and d
+        assertEquals(List.of(lastSeq + 1, lastSeq + 2, lastSeq + 3, lastSeq + 4), seqs);
+    }
+
+    /**
+     * Resumes while another thread broadcasts to a large room: the resumed connection must get
+     * every message after the one it last saw exactly once and in order, whichever side of the
+     * resume each broadcast fell on.
+     */
+    @Test
+    void resumeDuringBroadcastsDeliversEachMessageOnce() throws InterruptedException {
+        for (int iteration = 0; iteration < 50; iteration++) {
+            Room room = new Room("resume-race-" + iteration, new TestConnection(true));
+            for (int i = 0; i < BYSTANDERS; i++) {
+                room.join(new TestConnection(true));
+            }
+            TestConnection witness = resumable();
+            room.join(witness);
+            TestConnection previous = resumable();
+            room.join(previous);
+
+            CountDownLatch started = new CountDownLatch(1);
+            Thread broadcaster = new Thread(() -> {
+                for (int i = 0; i < MESSAGES; i++) {
+                    byte[] text = ("line " + i).getBytes(StandardCharsets.UTF_8);
+                    room.broadcast(OutboundMessage.chat(PREFIX, text, 0, text.length));
+                    if (i == MESSAGES / 4) {
+                        started.countDown();
+                    }
+                }
+            }, "broadcaster");
+            broadcaster.start();
+            started.await();
+
+            long lastSeq = last(seqs(previous));
+            TestConnection resumed = resumable();
+            room.resume(resumed, previous, lastSeq);
+            broadcaster.join();
+
+            List<Long> seqs = seqs(resumed);
+            assertTrue(lastSeq > 0);
+            for (int i = 0; i < seqs.size(); i++) {
+                assertEquals(lastSeq + 1 + i, seqs.get(i), "iteration " + iteration + ", message " + i + " of " + seqs);
+            }
+            // Up to the last message numbered, which a member there all along also got
+            assertEquals(last(seqs(witness)), last(seqs), "iteration " + iteration);
+        }
+    }
+}
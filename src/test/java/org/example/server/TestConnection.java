@@ -0,0 +1,55 @@
+package org.example.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory stand-in for a socket: messages go through a real {@link OutboundQueue}, and what the
+ * peer would have read is kept in {@link #sent}, in order.
+ */
+class TestConnection extends Connection {
+    private final OutboundQueue queue = new OutboundQueue();
+    // Guarded by this
+    private final List<byte[]> sent = new ArrayList<>();
+    private volatile boolean open = true;
+
+    TestConnection(boolean binary) {
+        if (binary) {
+            useBinaryProtocol();
+        }
+    }
+
+    @Override
+    void send(EncodedMessage message) {
+        if (queue.offer(message) == OutboundQueue.Offer.DROPPED) {
+            return;
+        }
+        byte[] bytes = new byte[message.length()];
+        message.buffer().get(0, bytes);
+        queue.consume(bytes.length);
+        synchronized (this) {
+            sent.add(bytes);
+        }
+    }
+
+    /** Every message written so far, oldest first. */
+    synchronized List<byte[]> sent() {
+        return new ArrayList<>(sent);
+    }
+
+    @Override
+    OutboundQueue outboundQueue() {
+        return queue;
+    }
+
+    @Override
+    boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    void close() {
+        open = false;
+        queue.close();
+    }
+}
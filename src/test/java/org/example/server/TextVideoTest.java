@@ -0,0 +1,61 @@
+package org.example.server;
+
+import org.example.protocol.LineDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextVideoTest {
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, (byte) 0xFF, (byte) 0xD9};
+
+    @Test
+    void textClientsGetVideoOnlyIfTheyAskedForIt() {
+        TestConnection plain = new TestConnection(false);
+        TestConnection framed = new TestConnection(false);
+        new ClientHandler(framed).onLine(LineDecoder.FRAMES_CAPABILITY);
+        assertTrue(framed.acceptsTextFrames());
+
+        OutboundMessage frame = OutboundMessage.video(JPEG, 0, JPEG.length);
+        try {
+            plain.send(frame);
+            framed.send(frame);
+        } finally {
+            frame.release();
+        }
+        assertTrue(plain.sent().isEmpty());
+        assertEquals(1, framed.sent().size());
+        String header = new String(LineDecoder.frameHeader(JPEG.length), StandardCharsets.US_ASCII);
+        assertTrue(new String(framed.sent().get(0), StandardCharsets.US_ASCII).startsWith(header));
+    }
+
+    @Test
+    void chatStartingWithTheFramePrefixIsChat() throws IOException {
+        TestConnection connection = new TestConnection(false);
+        InboundDecoder decoder = new InboundDecoder(connection, new ClientHandler(connection));
+        byte[] input = "alice\nCREATE_ROOM:text-video\nFRAME:12\nnot video\nCLOSE_ROOM:text-video\n"
+                .getBytes(StandardCharsets.UTF_8);
+        decoder.decode(input, 0, input.length);
+
+        assertTrue(connection.isOpen());
+        String received = connection.sent().stream()
+                .map(bytes -> new String(bytes, StandardCharsets.UTF_8))
+                .reduce("", String::concat);
+        assertTrue(received.contains("alice: FRAME:12\n"), received);
+        assertTrue(received.contains("alice: not video\n"), received);
+        connection.close();
+    }
+
+    @Test
+    void namesCannotStartWithTheFramePrefix() {
+        TestConnection connection = new TestConnection(false);
+        ClientHandler handler = new ClientHandler(connection);
+        handler.onLine("FRAME:1");
+        assertEquals("Client", connection.name());
+        handler.onLine("bob");
+        assertEquals("bob", connection.name());
+        connection.close();
+    }
+}
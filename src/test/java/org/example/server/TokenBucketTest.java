@@ -0,0 +1,87 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void noRateMeansNoLimit() {
+        assertNull(TokenBucket.of(0, 20));
+        assertNull(TokenBucket.of(-1, 20));
+    }
+
+    @Test
+    void allowsAFullBurstThenRefuses() {
+        TokenBucket bucket = TokenBucket.of(10, 5);
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(now), "message " + i + " of the burst");
+        }
+        assertFalse(bucket.tryAcquire(now));
+    }
+
+    @Test
+    void refillsAtTheRateUpToTheBurst() {
+        TokenBucket bucket = TokenBucket.of(10, 5);
+        long now = 1_000 * SECOND;
+        while (bucket.tryAcquire(now)) {
+        }
+        // One token every 100 ms
+        assertFalse(bucket.tryAcquire(now + SECOND / 20));
+        assertTrue(bucket.tryAcquire(now + SECOND / 10));
+        assertFalse(bucket.tryAcquire(now + SECOND / 10));
+
+        // A long idle spell refills only as far as the burst
+        long later = now + 60 * SECOND;
+        int taken = 0;
+        while (bucket.tryAcquire(later)) {
+            taken++;
+        }
+        assertEquals(5, taken);
+    }
+
+    @Test
+    void sustainedRateIsNeverRefused() {
+        TokenBucket bucket = TokenBucket.of(10, 1);
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bucket.tryAcquire(now + i * SECOND / 10));
+        }
+    }
+
+    @Test
+    void clientOverItsLimitIsDisconnectedWhenThePolicySaysSo() {
+        TestConnection connection = new TestConnection(false);
+        ClientHandler handler = new ClientHandler(connection, TokenBucket.of(0.01, 3), null, true);
+        handler.onLine("alice");
+        for (int i = 0; i < 3; i++) {
+            handler.onLine("hello " + i);
+            assertTrue(connection.isOpen(), "message " + i + " is within the burst");
+        }
+        handler.onLine("one too many");
+        assertFalse(connection.isOpen());
+    }
+
+    @Test
+    void clientOverItsLimitIsToldOnceAndKeptConnected() {
+        TestConnection connection = new TestConnection(false);
+        ClientHandler handler = new ClientHandler(connection, TokenBucket.of(0.01, 3), null, false);
+        handler.onLine("alice");
+        for (int i = 0; i < 10; i++) {
+            handler.onLine("hello " + i);
+        }
+        assertTrue(connection.isOpen());
+        long warnings = connection.sent().stream()
+                .map(bytes -> new String(bytes, StandardCharsets.UTF_8))
+                .filter(text -> text.contains("too fast"))
+                .count();
+        assertEquals(1, warnings);
+        connection.close();
+    }
+}
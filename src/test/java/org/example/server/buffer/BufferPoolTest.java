@@ -0,0 +1,41 @@
+package org.example.server.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+    @Test
+    void releasedBuffersAreReused() {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        PooledBuffer first = pool.allocate(5000);
+        first.release();
+        PooledBuffer second = pool.allocate(6000);
+        assertEquals(1, pool.allocatedCount());
+        assertEquals(1, pool.reusedCount());
+        assertEquals(6000, second.length());
+        second.release();
+        assertEquals(0, pool.inUse());
+    }
+
+    @Test
+    void leakedBuffersAreCountedButNotReused() throws InterruptedException {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        leak(pool);
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (pool.leakedCount() == 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, pool.leakedCount());
+        assertEquals(0, pool.inUse());
+        assertEquals(0, pool.idleBytes());
+
+        pool.allocate(5000).release();
+        assertEquals(0, pool.reusedCount());
+    }
+
+    private static void leak(BufferPool pool) {
+        pool.allocate(5000);
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.server.history;
+
+import org.example.protocol.FrameCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class ChatLogTest {
+    // Room for four of the lines below per segment
+    private static final int SEGMENT_BYTES = 4 * (Segment.RECORD_OVERHEAD + 10) + 8;
+    private static final long RETAIN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rollsSegmentsAndReadsAcrossThem() throws Exception {
+        ChatLog log = ChatLog.open(directory, SEGMENT_BYTES, Long.MAX_VALUE, RETAIN_MILLIS);
+        append(log, 1, 10);
+        awaitLastSeq(log, 10);
+
+        assertEquals(3, segmentFiles());
+        assertLines(log.since(3, 5), 3, 7);
+        assertLines(log.since(1, 100), 1, 10);
+        assertLines(log.last(2), 9, 10);
+        assertEquals(0, log.since(11, 10).size());
+        log.close();
+    }
+
+    @Test
+    void continuesNumberingAfterReopen() throws Exception {
+        ChatLog log = ChatLog.open(directory, SEGMENT_BYTES, Long.MAX_VALUE, RETAIN_MILLIS);
+        append(log, 1, 6);
+        awaitLastSeq(log, 6);
+        log.close();
+
+        ChatLog reopened = ChatLog.open(directory, SEGMENT_BYTES, Long.MAX_VALUE, RETAIN_MILLIS);
+        awaitLastSeq(reopened, 6);
+        assertLines(reopened.since(1, 100), 1, 6);
+        append(reopened, 7, 9);
+        awaitLastSeq(reopened, 9);
+        assertLines(reopened.since(4, 100), 4, 9);
+        reopened.close();
+    }
+
+    @Test
+    void lastIncludesLinesNotStoredYet() throws Exception {
+        ChatLog log = ChatLog.open(directory, SEGMENT_BYTES, Long.MAX_VALUE, RETAIN_MILLIS);
+        append(log, 1, 3);
+        awaitLastSeq(log, 3);
+        // Read straight after appending, whether or not the chat-log thread has got to them
+        append(log, 4, 10);
+        assertLines(log.last(8), 3, 10);
+        assertLines(log.last(3), 8, 10);
+        awaitLastSeq(log, 10);
+        assertLines(log.last(8), 3, 10);
+        log.close();
+    }
+
+    @Test
+    void dropsOldestSegmentsBeyondTheByteBudget() throws Exception {
+        ChatLog log = ChatLog.open(directory, SEGMENT_BYTES, SEGMENT_BYTES, RETAIN_MILLIS);
+        append(log, 1, 16);
+        awaitLastSeq(log, 16);
+
+        assertEquals(2, segmentFiles());
+        assertLines(log.since(1, 100), 9, 16);
+        log.close();
+    }
+
+    private static void append(ChatLog log, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            byte[] line = line(i);
+            log.append(line, 0, line.length);
+        }
+    }
+
+    private static byte[] line(int i) {
+        return String.format("line %05d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void assertLines(List<ByteBuffer> records, int from, int to) {
+        assertEquals(to - from + 1, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            ByteBuffer record = records.get(i);
+            assertEquals(from + i, record.getLong(FrameCodec.HEADER_LENGTH));
+            byte[] text = new byte[record.limit() - Segment.RECORD_OVERHEAD];
+            record.get(Segment.RECORD_OVERHEAD, text);
+            assertEquals(new String(line(from + i), StandardCharsets.UTF_8), new String(text, StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Appends and recovery run on the chat-log thread. */
+    private static void awaitLastSeq(ChatLog log, long seq) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (log.lastSeq() != seq) {
+            if (System.nanoTime() > deadline) {
+                fail("last seq " + log.lastSeq() + ", expected " + seq);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".log")).count();
+        }
+    }
+}